@@ -1,25 +1,41 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2010-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2010-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
 package org.appcelerator.kroll.annotations.generator;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
@@ -37,6 +53,15 @@ public class KrollBindingGenerator
 	private static final String RUNTIME_RHINO = "rhino";
 	private static final String Kroll_DEFAULT = "org.appcelerator.kroll.annotations.Kroll.DEFAULT";
 
+	// Bump when a change to the generator (rather than a template) changes its output
+	private static final String CACHE_VERSION = "1";
+	private static final String CACHE_INPUTS_KEY = "#inputs";
+	private static final String TEMPLATE_PACKAGE = "org/appcelerator/kroll/annotations/generator/";
+	private static final String[] TEMPLATES = {
+		"ProxyBinding.fm", "ProxyBindingV8.h.fm", "ProxyBindingV8.cpp.fm",
+		"ProxyBindingRhino.java.fm", "KrollGeneratedBindingsRhino.java.fm", "KrollModuleBindingsRhino.java.fm"
+	};
+
 	private String runtime, outPath, moduleId, bindingsClassName;
 	private boolean isModule;
 	private Configuration fmConfig;
@@ -51,7 +76,20 @@ public class KrollBindingGenerator
 	private HashMap<String, Object> tiProxies = new HashMap<String, Object>();
 	private HashMap<String, Object> tiModules = new HashMap<String, Object>();
 
+	private byte[] tiBindingsJson;
+
 	private JSONUtils jsonUtils;
+	private KrollIdSwitchGenerator idSwitchGenerator = new KrollIdSwitchGenerator();
+
+	// Hashes of the inputs of each generated file, from the last run and this one
+	private File cacheFile;
+	private Properties cache = new Properties();
+	private Properties newCache = new Properties();
+	private String templatesHash;
+	private AtomicInteger generatedCount = new AtomicInteger();
+	private AtomicInteger unchangedCount = new AtomicInteger();
+	private AtomicInteger skippedCount = new AtomicInteger();
+	private AtomicInteger errorCount = new AtomicInteger();
 
 	public KrollBindingGenerator(String runtime, String outPath, boolean isModule, String moduleId, String bindingsClassName)
 	{
@@ -64,6 +102,7 @@ public class KrollBindingGenerator
 		this.jsonUtils = new JSONUtils();
 
 		initTemplates();
+		loadCache();
 	}
 
 	protected void initTemplates()
@@ -115,12 +154,159 @@ public class KrollBindingGenerator
 		}
 	}
 
-	protected void saveTypeTemplate(Template template, String outFile, Map<Object, Object> root)
+	protected void loadCache()
+	{
+		templatesHash = hash(readTemplates());
+		cacheFile = new File(outPath, ".kroll-bindings-" + runtime + ".cache");
+		if (!cacheFile.exists()) {
+			return;
+		}
+
+		try {
+			FileInputStream in = new FileInputStream(cacheFile);
+			try {
+				cache.load(in);
+			} finally {
+				in.close();
+			}
+
+		} catch (IOException e) {
+			// regenerate everything
+			cache.clear();
+		}
+	}
+
+	protected void saveCache()
+	{
+		if (errorCount.get() > 0) {
+			newCache.remove(CACHE_INPUTS_KEY);
+		}
+
+		try {
+			FileOutputStream out = new FileOutputStream(cacheFile);
+			try {
+				newCache.store(out, "Generated by KrollBindingGenerator");
+			} finally {
+				out.close();
+			}
+
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		System.out.println(String.format("Bindings: %d generated, %d unchanged, %d skipped",
+			generatedCount.get(), unchangedCount.get(), skippedCount.get()));
+	}
+
+	/**
+	 * Checks the JSON metadata, templates and arguments against the last run, so nothing
+	 * has to be parsed or rendered when none of them changed and every output still exists.
+	 */
+	protected boolean isUpToDate(List<String> jsonPaths)
+		throws IOException, URISyntaxException
+	{
+		String inputsHash = getInputsHash(jsonPaths);
+		newCache.setProperty(CACHE_INPUTS_KEY, inputsHash);
+
+		if (!inputsHash.equals(cache.getProperty(CACHE_INPUTS_KEY))) {
+			return false;
+		}
+		for (Object outFile : cache.keySet()) {
+			if (!CACHE_INPUTS_KEY.equals(outFile) && !new File(outPath, (String) outFile).exists()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected String getInputsHash(List<String> jsonPaths)
+		throws IOException, URISyntaxException
+	{
+		ArrayList<Object> inputs = new ArrayList<Object>();
+		inputs.add(CACHE_VERSION);
+		inputs.add(runtime);
+		inputs.add(isModule);
+		inputs.add(moduleId);
+		inputs.add(bindingsClassName);
+		inputs.add(templatesHash);
+		for (String jsonPath : jsonPaths) {
+			inputs.add(hash(readFile(new File(jsonPath))));
+		}
+		if (isModule) {
+			inputs.add(hash(readTitaniumBindingsJson()));
+		}
+		return hash(canonicalize(inputs));
+	}
+
+	/**
+	 * Returns a hash of everything the templates read while rendering proxyName, which
+	 * is its own metadata, its module and API tree entries, and the name of its parent.
+	 */
+	protected String getProxyHash(String proxyName, Map<Object, Object> proxy)
+	{
+		ArrayList<Object> inputs = new ArrayList<Object>();
+		inputs.add(CACHE_VERSION);
+		inputs.add(runtime);
+		inputs.add(isModule);
+		inputs.add(moduleId);
+		inputs.add(templatesHash);
+		inputs.add(proxy);
+		inputs.add(modules.get(proxyName));
+
+		if (RUNTIME_RHINO.equals(runtime)) {
+			inputs.add(getProxyApiTree(proxy));
+		}
+
+		Object superPackageName = proxy.get("superPackageName");
+		Object superProxyClassName = proxy.get("superProxyClassName");
+		if (superPackageName != null && superProxyClassName != null) {
+			String superName = superPackageName + "." + superProxyClassName;
+			inputs.add(getFullApiName(tiProxies, superName));
+			inputs.add(getFullApiName(proxies, superName));
+		}
+
+		return hash(canonicalize(inputs));
+	}
+
+	private Object getFullApiName(Map<String, Object> proxies, String proxyName)
+	{
+		Map<String, Object> proxy = jsonUtils.getStringMap(proxies, proxyName);
+		if (proxy == null || !proxy.containsKey("proxyAttrs")) {
+			return null;
+		}
+		return jsonUtils.getStringMap(proxy, "proxyAttrs").get("fullAPIName");
+	}
+
+	/**
+	 * Renders template into outFile. Rendering is skipped when inputHash matches the
+	 * last run, and the file is only rewritten when its content changed, so unchanged
+	 * outputs keep their timestamps and aren't recompiled.
+	 * @param inputHash a hash of everything the output depends on, or null to always render.
+	 */
+	protected void saveTypeTemplate(Template template, String outFile, Map<Object, Object> root, String inputHash)
 	{
 		Writer writer = null;
 		try {
 			File file = new File(outPath, outFile);
+			if (inputHash != null) {
+				newCache.setProperty(outFile, inputHash);
+				if (inputHash.equals(cache.getProperty(outFile)) && file.exists()) {
+					skippedCount.incrementAndGet();
+					return;
+				}
+			}
+
+			StringWriter content = new StringWriter();
+			template.process(root, content);
+			String source = content.toString();
+
+			if (file.exists() && source.equals(readText(file))) {
+				unchangedCount.incrementAndGet();
+				return;
+			}
+
 			System.out.println("Generating " + file.getAbsolutePath());
+			generatedCount.incrementAndGet();
 
 			File parent = file.getParentFile();
 			if (!parent.exists()) {
@@ -128,9 +314,12 @@ public class KrollBindingGenerator
 			}
 
 			writer = new FileWriter(file);
-			template.process(root, writer);
+			writer.write(source);
 
 		} catch (Exception e) {
+			// make sure a failed file is rendered again next time
+			newCache.remove(outFile);
+			errorCount.incrementAndGet();
 			e.printStackTrace();
 
 		} finally {
@@ -265,10 +454,13 @@ public class KrollBindingGenerator
 		mergeModules(modules);
 	}
 
-	@SuppressWarnings("unchecked")
-	protected void loadTitaniumBindings()
-		throws ParseException, IOException, URISyntaxException
+	protected byte[] readTitaniumBindingsJson()
+		throws IOException, URISyntaxException
 	{
+		if (tiBindingsJson != null) {
+			return tiBindingsJson;
+		}
+
 		// Load the binding JSON data from the titanium.jar relative to the kroll-apt.jar
 		// where this class is defined in the MobileSDK
 
@@ -285,11 +477,22 @@ public class KrollBindingGenerator
 		JarFile titaniumJar = new JarFile(new File(mobileAndroidDir, "titanium.jar"));
 		ZipEntry jsonEntry = titaniumJar.getEntry("org/appcelerator/titanium/bindings/titanium.json");
 		InputStream jsonStream = titaniumJar.getInputStream(jsonEntry);
+		try {
+			tiBindingsJson = readStream(jsonStream);
+		} finally {
+			jsonStream.close();
+			titaniumJar.close();
+		}
+		return tiBindingsJson;
+	}
 
+	@SuppressWarnings("unchecked")
+	protected void loadTitaniumBindings()
+		throws ParseException, IOException, URISyntaxException
+	{
+		Reader reader = new InputStreamReader(new ByteArrayInputStream(readTitaniumBindingsJson()));
 		Map<String, Object> properties = (Map<String, Object>)
-			JSONValue.parseWithException(new InputStreamReader(jsonStream));
-		jsonStream.close();
-		titaniumJar.close();
+			JSONValue.parseWithException(reader);
 
 		tiProxies.putAll(jsonUtils.getStringMap(properties, "proxies"));
 		tiModules.putAll(jsonUtils.getStringMap(properties, "modules"));
@@ -307,29 +510,46 @@ public class KrollBindingGenerator
 	protected void generateBindings()
 		throws ParseException, IOException
 	{
+		// Proxies render independently of each other, and templates can be shared between threads
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+
 		for (String proxyName : proxies.keySet()) {
 			Map<Object, Object> proxy = jsonUtils.getMap(proxies, proxyName);
 
-			HashMap<Object, Object> root = new HashMap<Object, Object>(proxy);
+			final HashMap<Object, Object> root = new HashMap<Object, Object>(proxy);
 			root.put("allModules", modules);
 			root.put("allProxies", proxies);
 			root.put("moduleId", moduleId);
 
 			root.put("tiProxies", tiProxies);
 			root.put("tiModules", tiModules);
+			root.put("idSwitch", idSwitchGenerator);
+
+			final String proxyHash = getProxyHash(proxyName, proxy);
 
 			if (RUNTIME_V8.equals(runtime)) {
-				String v8ProxyHeader = proxyName + ".h";
-				String v8ProxySource = proxyName + ".cpp";
+				final String v8ProxyHeader = proxyName + ".h";
+				final String v8ProxySource = proxyName + ".cpp";
 	
-				saveTypeTemplate(v8HeaderTemplate, v8ProxyHeader, root);
-				saveTypeTemplate(v8SourceTemplate, v8ProxySource, root);
+				results.add(executor.submit(new Runnable() {
+					public void run()
+					{
+						saveTypeTemplate(v8HeaderTemplate, v8ProxyHeader, root, proxyHash);
+						saveTypeTemplate(v8SourceTemplate, v8ProxySource, root, proxyHash);
+					}
+				}));
 
 			} else if (RUNTIME_RHINO.equals(runtime)) {
 				root.put("apiTree", getProxyApiTree(proxy));
 
-				String rhinoProxySource = proxyName.replace('.', File.separatorChar) + "Prototype.java";
-				saveTypeTemplate(rhinoSourceTemplate, rhinoProxySource, root);
+				final String rhinoProxySource = proxyName.replace('.', File.separatorChar) + "Prototype.java";
+				results.add(executor.submit(new Runnable() {
+					public void run()
+					{
+						saveTypeTemplate(rhinoSourceTemplate, rhinoProxySource, root, proxyHash);
+					}
+				}));
 
 				HashMap<String, String> binding = new HashMap<String, String>();
 				binding.put("class", proxyName);
@@ -339,6 +559,20 @@ public class KrollBindingGenerator
 				rhinoBindings.add(binding);
 			}
 		}
+
+		executor.shutdown();
+		for (Future<?> result : results) {
+			try {
+				result.get();
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+			}
+		}
 	}
 
 	protected void generateRhinoBindings()
@@ -351,12 +585,142 @@ public class KrollBindingGenerator
 			root.put("packageName", moduleId);
 			root.put("className", bindingsClassName);
 
-			saveTypeTemplate(rhinoModuleBindingsTemplate, path + "/" + bindingsClassName + ".java", root);
+			saveTypeTemplate(rhinoModuleBindingsTemplate, path + "/" + bindingsClassName + ".java", root, null);
 
 		} else {
 			saveTypeTemplate(rhinoGeneratedBindingsTemplate,
 				"org/appcelerator/kroll/runtime/rhino/KrollGeneratedBindings.java",
-				root);
+				root, null);
+		}
+	}
+
+	private String readTemplates()
+	{
+		ClassLoader loader = getClass().getClassLoader();
+		StringBuilder templates = new StringBuilder();
+		for (String template : TEMPLATES) {
+			InputStream stream = loader.getResourceAsStream(TEMPLATE_PACKAGE + template);
+			if (stream == null) {
+				continue;
+			}
+			try {
+				templates.append(template).append('\n');
+				templates.append(new String(readStream(stream), "UTF-8"));
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		return templates.toString();
+	}
+
+	/*
+	 * Serializes JSON metadata with sorted keys, so equal data always hashes the same.
+	 */
+	private static String canonicalize(Object value)
+	{
+		StringBuilder builder = new StringBuilder();
+		appendCanonical(builder, value);
+		return builder.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void appendCanonical(StringBuilder builder, Object value)
+	{
+		if (value instanceof Map) {
+			TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+			for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+				sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+			}
+
+			builder.append('{');
+			for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+				builder.append(JSONValue.toJSONString(entry.getKey())).append(':');
+				appendCanonical(builder, entry.getValue());
+				builder.append(',');
+			}
+			builder.append('}');
+
+		} else if (value instanceof List) {
+			builder.append('[');
+			for (Object item : (List<Object>) value) {
+				appendCanonical(builder, item);
+				builder.append(',');
+			}
+			builder.append(']');
+
+		} else {
+			builder.append(JSONValue.toJSONString(value));
+		}
+	}
+
+	private static String hash(String value)
+	{
+		try {
+			return hash(value.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hash(byte[] value)
+	{
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(value);
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+				hex.append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return readStream(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] readStream(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	/*
+	 * Reads a generated file back with the same (default) encoding FileWriter wrote it in.
+	 */
+	private static String readText(File file) throws IOException
+	{
+		Reader reader = new FileReader(file);
+		try {
+			StringBuilder text = new StringBuilder();
+			char[] buffer = new char[8192];
+			int count;
+			while ((count = reader.read(buffer)) != -1) {
+				text.append(buffer, 0, count);
+			}
+			return text.toString();
+		} finally {
+			reader.close();
 		}
 	}
 
@@ -382,9 +746,19 @@ public class KrollBindingGenerator
 
 		KrollBindingGenerator generator = new KrollBindingGenerator(runtime, outDir, isModule, packageName, className);
 
-		// First pass to generate the entire API tree
+		ArrayList<String> jsonPaths = new ArrayList<String>();
 		for (int i = 5; i < args.length; i++) {
-			generator.loadBindings(args[i]);
+			jsonPaths.add(args[i]);
+		}
+
+		if (generator.isUpToDate(jsonPaths)) {
+			System.out.println("Bindings in " + outDir + " are up to date");
+			return;
+		}
+
+		// First pass to generate the entire API tree
+		for (String jsonPath : jsonPaths) {
+			generator.loadBindings(jsonPath);
 		}
 
 		if (isModule) {
@@ -397,6 +771,8 @@ public class KrollBindingGenerator
 		if (RUNTIME_RHINO.equals(runtime)) {
 			generator.generateRhinoBindings();
 		}
+
+		generator.saveCache();
 	}
 
 }
@@ -0,0 +1,164 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.kroll.annotations.generator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNumberModel;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * Generates the body of a Rhino findPrototypeId / findInstanceIdInfo lookup
+ * for a fixed set of names, so generated bindings don't need a separate pass of
+ * Rhino's idswitch tool.
+ *
+ * Like idswitch, the lookup switches on the length of the name and then on the
+ * character that best tells the remaining candidates apart, and only compares
+ * the whole string against the single candidate left. This measured faster than
+ * switching on String.hashCode(), which compiles to a binary search over the hashes.
+ *
+ * The generated code expects the name in a String "s", stores the matched
+ * Id_&lt;name&gt; constant in an int "id", and leaves id unchanged when nothing matches.
+ *
+ * In templates: ${idSwitch(names, indent)}
+ */
+public class KrollIdSwitchGenerator implements TemplateMethodModelEx
+{
+	private static final String CANDIDATE = "candidate";
+
+	@SuppressWarnings("rawtypes")
+	public Object exec(List arguments) throws TemplateModelException
+	{
+		if (arguments.size() < 1 || !(arguments.get(0) instanceof TemplateSequenceModel)) {
+			throw new TemplateModelException("idSwitch requires a sequence of names and an optional indent");
+		}
+
+		TemplateSequenceModel sequence = (TemplateSequenceModel) arguments.get(0);
+		ArrayList<String> names = new ArrayList<String>(sequence.size());
+		for (int i = 0; i < sequence.size(); i++) {
+			names.add(((TemplateScalarModel) sequence.get(i)).getAsString());
+		}
+
+		int indent = 2;
+		if (arguments.size() > 1) {
+			indent = ((TemplateNumberModel) arguments.get(1)).getAsNumber().intValue();
+		}
+
+		return generate(names, indent);
+	}
+
+	public static String generate(List<String> names, int indent)
+	{
+		// Names may be listed more than once, i.e. a dynamic property with a custom accessor
+		ArrayList<String> uniqueNames = new ArrayList<String>(new LinkedHashSet<String>(names));
+		if (uniqueNames.isEmpty()) {
+			return "";
+		}
+
+		TreeMap<Integer, List<String>> byLength = new TreeMap<Integer, List<String>>();
+		for (String name : uniqueNames) {
+			List<String> group = byLength.get(name.length());
+			if (group == null) {
+				group = new ArrayList<String>();
+				byLength.put(name.length(), group);
+			}
+			group.add(name);
+		}
+
+		StringBuilder code = new StringBuilder();
+		line(code, indent, "String " + CANDIDATE + " = null;");
+		line(code, indent, "switch (s.length()) {");
+		for (Map.Entry<Integer, List<String>> entry : byLength.entrySet()) {
+			line(code, indent + 1, "case " + entry.getKey() + ":");
+			generateGroup(code, indent + 2, entry.getValue());
+			line(code, indent + 2, "break;");
+		}
+		line(code, indent, "}");
+		line(code, indent, "if (" + CANDIDATE + " != null && " + CANDIDATE + " != s && !" + CANDIDATE + ".equals(s)) {");
+		line(code, indent + 1, "id = 0;");
+		line(code, indent, "}");
+		return code.toString();
+	}
+
+	/*
+	 * Narrows down a group of names with the same length until a single candidate remains.
+	 */
+	private static void generateGroup(StringBuilder code, int indent, List<String> group)
+	{
+		if (group.size() == 1) {
+			String name = group.get(0);
+			line(code, indent, CANDIDATE + " = \"" + name + "\";");
+			line(code, indent, "id = Id_" + name + ";");
+			return;
+		}
+
+		int index = findBestIndex(group);
+		TreeMap<Character, List<String>> byChar = new TreeMap<Character, List<String>>();
+		for (String name : group) {
+			char c = name.charAt(index);
+			List<String> subGroup = byChar.get(c);
+			if (subGroup == null) {
+				subGroup = new ArrayList<String>();
+				byChar.put(c, subGroup);
+			}
+			subGroup.add(name);
+		}
+
+		line(code, indent, "switch (s.charAt(" + index + ")) {");
+		for (Map.Entry<Character, List<String>> entry : byChar.entrySet()) {
+			line(code, indent + 1, "case " + charLiteral(entry.getKey()) + ":");
+			generateGroup(code, indent + 2, entry.getValue());
+			line(code, indent + 2, "break;");
+		}
+		line(code, indent, "}");
+	}
+
+	/*
+	 * Returns the index of the character with the most distinct values among names
+	 * of equal length, preferring earlier indexes.
+	 */
+	private static int findBestIndex(List<String> group)
+	{
+		int length = group.get(0).length();
+		int bestIndex = 0;
+		int bestCount = 0;
+		for (int i = 0; i < length; i++) {
+			LinkedHashSet<Character> chars = new LinkedHashSet<Character>();
+			for (String name : group) {
+				chars.add(name.charAt(i));
+			}
+			if (chars.size() > bestCount) {
+				bestCount = chars.size();
+				bestIndex = i;
+			}
+		}
+		return bestIndex;
+	}
+
+	private static String charLiteral(char c)
+	{
+		if (c == '\'' || c == '\\') {
+			return "'\\" + c + "'";
+		}
+		return "'" + c + "'";
+	}
+
+	private static void line(StringBuilder code, int indent, String line)
+	{
+		for (int i = 0; i < indent; i++) {
+			code.append('\t');
+		}
+		code.append(line).append('\n');
+	}
+}
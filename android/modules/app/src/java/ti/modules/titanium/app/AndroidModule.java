@@ -6,10 +6,12 @@
  */
 package ti.modules.titanium.app;
 
+import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollModule;
 import org.appcelerator.kroll.KrollRuntime;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiMessenger;
 import org.appcelerator.titanium.TiApplication;
 import org.appcelerator.titanium.TiBaseActivity;
 import org.appcelerator.titanium.TiContext;
@@ -70,5 +72,37 @@ public class AndroidModule extends KrollModule
 			return null;
 		}
 	}
-}
 
+	/**
+	 * @return the latency histograms of blocking calls to the main and runtime threads.
+	 */
+	@Kroll.method
+	public KrollDict getBlockingMessageStats()
+	{
+		Object[] bounds = new Object[TiMessenger.LATENCY_BUCKET_BOUNDS.length];
+		for (int i = 0; i < bounds.length; i++) {
+			bounds[i] = TiMessenger.LATENCY_BUCKET_BOUNDS[i];
+		}
+
+		KrollDict stats = new KrollDict();
+		stats.put("bucketBounds", bounds);
+		stats.put("main", toObjectArray(TiMessenger.getBlockingLatencyHistogram(true)));
+		stats.put("runtime", toObjectArray(TiMessenger.getBlockingLatencyHistogram(false)));
+		return stats;
+	}
+
+	@Kroll.method
+	public void resetBlockingMessageStats()
+	{
+		TiMessenger.resetBlockingLatencyHistograms();
+	}
+
+	private static Object[] toObjectArray(long[] counts)
+	{
+		Object[] result = new Object[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			result[i] = counts[i];
+		}
+		return result;
+	}
+}
@@ -1,24 +1,41 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
 package ti.modules.titanium.database;
 
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.KrollFunction;
 import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.kroll.common.TiConfig;
 import org.appcelerator.titanium.TiApplication;
+import org.appcelerator.titanium.TiBlob;
 import org.appcelerator.titanium.TiContext;
 import org.appcelerator.titanium.util.TiConvert;
 
+import ti.modules.titanium.BufferProxy;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.DatabaseUtils;
 import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 
 @Kroll.proxy(parentModule=DatabaseModule.class)
 public class TiDatabaseProxy extends KrollProxy
@@ -26,10 +43,77 @@ public class TiDatabaseProxy extends KrollProxy
 	private static final String LCAT = "TiDB";
 	private static final boolean DBG = TiConfig.LOGD;
 
+	private static final String PROPERTY_STATEMENT_CACHE_SIZE = "ti.android.database.statementcachesize";
+	private static final int DEFAULT_STATEMENT_CACHE_SIZE = 16;
+	private static final String PROPERTY_WAL = "ti.android.database.wal";
+	private static final String PROPERTY_READERS = "ti.android.database.readers";
+	private static final int DEFAULT_READERS = 2;
+	private static final String PROPERTY_SLOW_STATEMENT_TIME = "ti.android.database.slowstatementtime";
+	private static final int DEFAULT_SLOW_STATEMENT_TIME = 500;
+
+	// How long close waits for queued asynchronous statements, in seconds
+	private static final int CLOSE_TIMEOUT = 10;
+
+	private static final String SQL_CHANGES = "select changes()";
+	private static final String SQL_LAST_INSERT_ROWID = "select last_insert_rowid()";
+	private static final String[] TRANSACTION_KEYWORDS = { "begin", "commit", "end", "rollback", "savepoint", "release" };
+
 	protected SQLiteDatabase db;
 	protected String name;
 	boolean statementLogging, readOnly;
 
+	// Compiled statements of this connection, all access is synchronized on this proxy
+	private TiStatementCache statements;
+
+	private TiQueryStats queryStats = new TiQueryStats();
+	private int slowStatementTime = DEFAULT_SLOW_STATEMENT_TIME;
+
+	// Run executeAsync statements, queries on the readers and everything else in order on the writer
+	private final Object executorLock = new Object();
+	private ExecutorService readers, writer;
+	private volatile boolean walEnabled = false;
+
+	// With write-ahead logging changes() and last_insert_rowid() may run on a reader
+	// connection, so they're read right after each write, guarded by this proxy
+	private long rowsAffected, lastInsertRowId;
+
+	private static class DatabaseThreadFactory implements ThreadFactory
+	{
+		private final String prefix;
+		private AtomicInteger counter = new AtomicInteger();
+
+		DatabaseThreadFactory(String prefix)
+		{
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable runnable)
+		{
+			return new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+		}
+	}
+
+	/**
+	 * Creates cursors for queries with the arguments bound by type, since
+	 * rawQuery only takes strings.
+	 */
+	private static class BindingCursorFactory implements SQLiteDatabase.CursorFactory
+	{
+		private final Object[] args;
+
+		BindingCursorFactory(Object[] args)
+		{
+			this.args = args;
+		}
+
+		@SuppressWarnings("deprecation")
+		public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query)
+		{
+			bindArgs(query, args);
+			return new SQLiteCursor(db, driver, editTable, query);
+		}
+	}
+
 	public TiDatabaseProxy(String name, SQLiteDatabase db)
 	{
 		//super(tiContext);
@@ -38,6 +122,8 @@ public class TiDatabaseProxy extends KrollProxy
 		this.db = db;
 		statementLogging = false;
 		readOnly = false;
+		statements = new TiStatementCache(db, getStatementCacheSize());
+		slowStatementTime = getIntProperty(PROPERTY_SLOW_STATEMENT_TIME, DEFAULT_SLOW_STATEMENT_TIME);
 	}
 
 	public TiDatabaseProxy(TiContext tiContext, String name, SQLiteDatabase db)
@@ -54,6 +140,8 @@ public class TiDatabaseProxy extends KrollProxy
 		this.db = db;
 		statementLogging = false;
 		readOnly = true;
+		statements = new TiStatementCache(db, getStatementCacheSize());
+		slowStatementTime = getIntProperty(PROPERTY_SLOW_STATEMENT_TIME, DEFAULT_SLOW_STATEMENT_TIME);
 	}
 
 	public TiDatabaseProxy(TiContext tiContext, SQLiteDatabase db)
@@ -67,6 +155,10 @@ public class TiDatabaseProxy extends KrollProxy
 			if (DBG) {
 				Log.d(LCAT, "Closing database: " + name);
 			}
+			shutdownExecutors();
+			synchronized (this) {
+				statements.close();
+			}
 			db.close();
 		} else {
 			if (DBG) {
@@ -109,21 +201,14 @@ public class TiDatabaseProxy extends KrollProxy
 
 		TiResultSetProxy rs = null;
 		Cursor c = null;
-		String[] newArgs = null;
-		if (sqlArgs != null) {
-			newArgs = new String[sqlArgs.length];
-			for(int i = 0; i < sqlArgs.length; i++) {
-				newArgs[i] = TiConvert.toString(sqlArgs[i]);
-			}
-		}
+		long start = System.currentTimeMillis();
 		try {
-			String lcSql = sql.toLowerCase().trim(); 
 			// You must use execSQL unless you are expecting a resultset, changes aren't committed
 			// if you don't. Just expecting them on select or pragma may be enough, but
 			// it may need additional tuning. The better solution would be to expose
 			// both types of queries through the Titanium API.
-			if (lcSql.startsWith("select") || lcSql.startsWith("pragma")) {
-				c = db.rawQuery(sql, newArgs);
+			if (isQuery(sql)) {
+				c = query(sql, sqlArgs);
 	 			if (c != null) {
 					// Most non-SELECT statements won't actually return data, but some such as
 					// PRAGMA do. If there are no results, just return null.
@@ -145,7 +230,7 @@ public class TiDatabaseProxy extends KrollProxy
 					rs = new TiResultSetProxy(null); // because iPhone does it this way.
 				}
 			} else {
-				db.execSQL(sql, newArgs);
+				executeWrite(sql, sqlArgs);
 			}
 		} catch (SQLException e) {
 			String msg = "Error executing sql: " + e.getMessage();
@@ -159,10 +244,158 @@ public class TiDatabaseProxy extends KrollProxy
 			}
 			throw e;
 		}
+		recordTime(sql, start);
 
 		return rs;
 	}
 
+	/**
+	 * Runs sql once for every array of arguments in rows, in a single transaction.
+	 * If any row fails, the transaction is rolled back and the error is thrown.
+	 * @return the number of rows affected by each run.
+	 */
+	@Kroll.method
+	public int[] executeBatch(String sql, Object[] rows)
+	{
+		if (isQuery(sql)) {
+			throw new IllegalArgumentException("executeBatch doesn't return results, use execute for queries");
+		}
+
+		if (statementLogging && TiConfig.LOGV) {
+			Log.v(LCAT, "Executing SQL batch of " + rows.length + " rows: " + sql);
+		}
+
+		int[] affected = new int[rows.length];
+		synchronized (this) {
+			db.beginTransaction();
+			try {
+				SQLiteStatement statement = statements.getStatement(sql);
+				try {
+					for (int i = 0; i < rows.length; i++) {
+						Object[] args = rows[i] instanceof Object[] ? (Object[]) rows[i] : new Object[] { rows[i] };
+						statement.clearBindings();
+						bindArgs(statement, args);
+						statement.execute();
+						affected[i] = (int) queryLong(SQL_CHANGES);
+					}
+					if (walEnabled && rows.length > 0) {
+						rowsAffected = affected[rows.length - 1];
+						lastInsertRowId = queryLong(SQL_LAST_INSERT_ROWID);
+					}
+				} finally {
+					releaseStatement(statement);
+				}
+				db.setTransactionSuccessful();
+
+			} catch (SQLException e) {
+				Log.e(LCAT, "Error executing sql batch: " + e.getMessage(), e);
+				throw e;
+
+			} finally {
+				db.endTransaction();
+			}
+		}
+		return affected;
+	}
+
+	/**
+	 * Runs a statement on a background thread and passes the outcome to a callback,
+	 * so slow statements don't hold up the Javascript thread. Queries run on a small
+	 * pool of reader threads and return all their rows, other statements run in order
+	 * on a single writer thread. Write-ahead logging is enabled when available so
+	 * readers don't wait for the writer.
+	 */
+	@Kroll.method
+	//public void executeAsync(String sql, Function callback)
+	//public void executeAsync(String sql, Array args, Function callback)
+	public void executeAsync(Object args[])
+	{
+		if (args.length < 1 || !(args[0] instanceof String)) {
+			throw new IllegalArgumentException("Expected sql string as first argument");
+		}
+
+		final String sql = (String) args[0];
+		Object[] statementArgs = new Object[0];
+		KrollFunction callback = null;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i] instanceof KrollFunction) {
+				callback = (KrollFunction) args[i];
+
+			} else if (args[i] instanceof Object[]) {
+				statementArgs = (Object[]) args[i];
+
+			} else {
+				throw new IllegalArgumentException("Expected an array of arguments and a callback function");
+			}
+		}
+
+		final Object[] sqlArgs = statementArgs;
+		final KrollFunction fCallback = callback;
+		final boolean isQuery = isQuery(sql);
+		final long queued = System.currentTimeMillis();
+
+		Runnable task = new Runnable() {
+			public void run()
+			{
+				long start = System.currentTimeMillis();
+				KrollDict event = new KrollDict();
+				event.put("sql", sql);
+				try {
+					if (isQuery) {
+						Cursor c = query(sql, sqlArgs);
+						try {
+							event.put("fieldNames", c.getColumnNames());
+							event.put("rows", TiResultSetProxy.readRows(c, 0, c.getCount()));
+						} finally {
+							c.close();
+						}
+
+					} else {
+						synchronized (TiDatabaseProxy.this) {
+							executeWrite(sql, sqlArgs);
+							event.put("rowsAffected", getRowsAffected());
+							event.put("lastInsertRowId", getLastInsertRowId());
+						}
+					}
+					event.put("success", true);
+
+				} catch (RuntimeException e) {
+					// SQLException, or IllegalStateException when the database was closed
+					Log.e(LCAT, "Error executing sql: " + e.getMessage(), e);
+					event.put("success", false);
+					event.put("error", e.getMessage());
+				}
+
+				event.put("time", recordTime(sql, start));
+				event.put("queueTime", start - queued);
+				if (fCallback != null) {
+					fCallback.callAsync(getKrollObject(), event);
+				}
+			}
+		};
+
+		ExecutorService executor = getExecutor(isQuery);
+		if (executor == null) {
+			throw new IllegalStateException("Database " + name + " is closed");
+		}
+		executor.execute(task);
+	}
+
+	/**
+	 * @return the time spent running each statement, most expensive first. See {@link TiQueryStats#toArray()}.
+	 */
+	@Kroll.method
+	public Object[] getStatementStats()
+	{
+		return queryStats.toArray();
+	}
+
+	@Kroll.method
+	public void resetStatementStats()
+	{
+		queryStats.reset();
+	}
+
 	@Kroll.getProperty @Kroll.method
 	public String getName() {
 		return name;
@@ -170,12 +403,16 @@ public class TiDatabaseProxy extends KrollProxy
 
 	@Kroll.getProperty @Kroll.method
 	public int getLastInsertRowId() {
-		return (int) DatabaseUtils.longForQuery(db, "select last_insert_rowid()", null);
+		synchronized (this) {
+			return (int) (walEnabled ? lastInsertRowId : queryLong(SQL_LAST_INSERT_ROWID));
+		}
 	}
 
 	@Kroll.getProperty @Kroll.method
 	public int getRowsAffected() {
-		return (int) DatabaseUtils.longForQuery(db, "select changes()", null);
+		synchronized (this) {
+			return (int) (walEnabled ? rowsAffected : queryLong(SQL_CHANGES));
+		}
 	}
 
 	@Kroll.method
@@ -187,14 +424,264 @@ public class TiDatabaseProxy extends KrollProxy
 		
 		if (db.isOpen()) {
 			Log.w(LCAT, "Attempt to remove open database. Closing then removing " + name);
-			db.close();
+			close();
 		}
 		Context ctx = TiApplication.getInstance();
 		if (ctx != null) {
+			// Before Jelly Bean deleteDatabase leaves the write-ahead log behind, and a new
+			// database created under the same name would replay its stale frames
+			String path = ctx.getDatabasePath(name).getPath();
 			ctx.deleteDatabase(name);
+			new File(path + "-wal").delete();
+			new File(path + "-shm").delete();
 		} else {
 			Log.w(LCAT, "Unable to remove database, context has been reclaimed by GC: " + name);
 		}
 	}
 
+	private Cursor query(String sql, Object[] args)
+	{
+		if (args != null && args.length > 0) {
+			return db.rawQueryWithFactory(new BindingCursorFactory(args), sql, null, null);
+		}
+		return db.rawQuery(sql, null);
+	}
+
+	/*
+	 * Runs a statement that doesn't return rows. With write-ahead logging the statement
+	 * and the queries for its changes() and last_insert_rowid() run in one transaction,
+	 * which keeps them on the writer connection.
+	 */
+	private void executeWrite(String sql, Object[] args)
+	{
+		if (!walEnabled) {
+			executeStatement(sql, args);
+			return;
+		}
+
+		synchronized (this) {
+			// The application's own transaction statements can't be nested in ours
+			if (isTransactionStatement(sql)) {
+				executeStatement(sql, args);
+				return;
+			}
+
+			db.beginTransaction();
+			try {
+				executeStatement(sql, args);
+				rowsAffected = queryLong(SQL_CHANGES);
+				lastInsertRowId = queryLong(SQL_LAST_INSERT_ROWID);
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		}
+	}
+
+	private void executeStatement(String sql, Object[] args)
+	{
+		if (args != null && args.length > 0) {
+			// Statements with arguments are the ones run over and over, so they're kept compiled
+			synchronized (this) {
+				SQLiteStatement statement = statements.getStatement(sql);
+				try {
+					bindArgs(statement, args);
+					statement.execute();
+				} finally {
+					releaseStatement(statement);
+				}
+			}
+		} else {
+			db.execSQL(sql);
+		}
+	}
+
+	/*
+	 * Records how long sql took since start, warning about slow statements.
+	 */
+	private long recordTime(String sql, long start)
+	{
+		long time = System.currentTimeMillis() - start;
+		queryStats.record(sql, time);
+		if (time >= slowStatementTime) {
+			Log.w(LCAT, "Slow statement on " + name + " took " + time + "ms: " + sql);
+		}
+		return time;
+	}
+
+	/*
+	 * Returns the reader or writer executor, starting them on first use, or null once closed.
+	 */
+	private ExecutorService getExecutor(boolean reader)
+	{
+		synchronized (executorLock) {
+			if (!db.isOpen()) {
+				return null;
+			}
+			if (writer == null) {
+				enableWriteAheadLogging();
+				// Without write-ahead logging readers block each other anyway
+				int readerCount = walEnabled ? Math.max(1, getIntProperty(PROPERTY_READERS, DEFAULT_READERS)) : 1;
+				readers = Executors.newFixedThreadPool(readerCount, new DatabaseThreadFactory("TiDatabase-" + name + "-reader"));
+				writer = Executors.newSingleThreadExecutor(new DatabaseThreadFactory("TiDatabase-" + name + "-writer"));
+				if (DBG) {
+					Log.d(LCAT, "Started " + readerCount + " readers and a writer for " + name + ", write-ahead logging: " + walEnabled);
+				}
+			}
+			return reader ? readers : writer;
+		}
+	}
+
+	/*
+	 * Lets queued asynchronous statements finish before the database is closed.
+	 */
+	private void shutdownExecutors()
+	{
+		ExecutorService oldReaders, oldWriter;
+		synchronized (executorLock) {
+			oldReaders = readers;
+			oldWriter = writer;
+			readers = writer = null;
+		}
+		if (oldWriter == null) {
+			return;
+		}
+
+		oldReaders.shutdown();
+		oldWriter.shutdown();
+		try {
+			if (!oldReaders.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS)
+				|| !oldWriter.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+				Log.w(LCAT, "Closing " + name + " before queued statements finished");
+			}
+		} catch (InterruptedException e) {
+			Log.w(LCAT, "Interrupted waiting for queued statements of " + name);
+		}
+	}
+
+	/*
+	 * Opt-in, since it switches the database file to WAL for good.
+	 * SQLiteDatabase.enableWriteAheadLogging is only available on Honeycomb and later,
+	 * where it also gives each reader thread its own connection.
+	 */
+	private void enableWriteAheadLogging()
+	{
+		if (readOnly || Build.VERSION.SDK_INT < 11) {
+			return;
+		}
+		TiApplication app = TiApplication.getInstance();
+		if (app != null && !app.getSystemProperties().getBool(PROPERTY_WAL, false)) {
+			return;
+		}
+
+		try {
+			Method enable = SQLiteDatabase.class.getMethod("enableWriteAheadLogging");
+			synchronized (this) {
+				// Keep what the getters report for writes made before the switch
+				rowsAffected = queryLong(SQL_CHANGES);
+				lastInsertRowId = queryLong(SQL_LAST_INSERT_ROWID);
+				walEnabled = Boolean.TRUE.equals(enable.invoke(db));
+			}
+		} catch (Exception e) {
+			Log.w(LCAT, "Unable to enable write-ahead logging for " + name + ": " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Whether sql returns rows, judged by its first keyword without copying the string.
+	 */
+	private static boolean isQuery(String sql)
+	{
+		int start = 0;
+		int length = sql.length();
+		while (start < length && Character.isWhitespace(sql.charAt(start))) {
+			start++;
+		}
+		return sql.regionMatches(true, start, "select", 0, 6) || sql.regionMatches(true, start, "pragma", 0, 6);
+	}
+
+	/*
+	 * Whether sql begins, ends or marks a point in a transaction.
+	 */
+	private static boolean isTransactionStatement(String sql)
+	{
+		int start = 0;
+		int length = sql.length();
+		while (start < length && Character.isWhitespace(sql.charAt(start))) {
+			start++;
+		}
+		for (String keyword : TRANSACTION_KEYWORDS) {
+			if (sql.regionMatches(true, start, keyword, 0, keyword.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Binds args by type: integers and whole numbers as integers, other numbers as reals,
+	 * blobs and buffers as blobs, null as NULL and anything else as text.
+	 */
+	private static void bindArgs(SQLiteProgram program, Object[] args)
+	{
+		for (int i = 0; i < args.length; i++) {
+			int index = i + 1;
+			Object value = args[i];
+			if (value == null) {
+				program.bindNull(index);
+
+			} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+				program.bindLong(index, ((Number) value).longValue());
+
+			} else if (value instanceof Number) {
+				// Javascript numbers are all doubles, so whole ones are bound as the integers they are
+				double number = ((Number) value).doubleValue();
+				if (number == Math.rint(number) && Math.abs(number) <= Long.MAX_VALUE) {
+					program.bindLong(index, (long) number);
+				} else {
+					program.bindDouble(index, number);
+				}
+
+			} else if (value instanceof TiBlob) {
+				program.bindBlob(index, ((TiBlob) value).getBytes());
+
+			} else if (value instanceof BufferProxy) {
+				program.bindBlob(index, ((BufferProxy) value).getBuffer());
+
+			} else {
+				program.bindString(index, TiConvert.toString(value));
+			}
+		}
+	}
+
+	private long queryLong(String sql)
+	{
+		SQLiteStatement statement = statements.getStatement(sql);
+		try {
+			return statement.simpleQueryForLong();
+		} finally {
+			releaseStatement(statement);
+		}
+	}
+
+	private void releaseStatement(SQLiteStatement statement)
+	{
+		if (!statements.isEnabled()) {
+			statement.close();
+		}
+	}
+
+	private static int getStatementCacheSize()
+	{
+		return Math.max(0, getIntProperty(PROPERTY_STATEMENT_CACHE_SIZE, DEFAULT_STATEMENT_CACHE_SIZE));
+	}
+
+	private static int getIntProperty(String property, int defaultValue)
+	{
+		TiApplication app = TiApplication.getInstance();
+		if (app == null) {
+			return defaultValue;
+		}
+		return app.getSystemProperties().getInt(property, defaultValue);
+	}
 }
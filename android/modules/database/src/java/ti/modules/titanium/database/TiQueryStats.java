@@ -0,0 +1,94 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.appcelerator.kroll.KrollDict;
+
+/**
+ * Execution time of the statements run on a database, by SQL, so slow queries
+ * can be found in production. Only the most recently run statements are kept.
+ * Safe to use from any thread.
+ */
+public class TiQueryStats
+{
+	private static final int MAX_STATEMENTS = 100;
+
+	private static class Entry
+	{
+		String sql;
+		int count;
+		long totalTime;
+		long maxTime;
+	}
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+		{
+			return size() > MAX_STATEMENTS;
+		}
+	};
+
+	/**
+	 * Records a run of sql that took time milliseconds.
+	 */
+	public synchronized void record(String sql, long time)
+	{
+		Entry entry = entries.get(sql);
+		if (entry == null) {
+			entry = new Entry();
+			entry.sql = sql;
+			entries.put(sql, entry);
+		}
+		entry.count++;
+		entry.totalTime += time;
+		if (time > entry.maxTime) {
+			entry.maxTime = time;
+		}
+	}
+
+	/**
+	 * @return a dictionary of sql, count, totalTime, maxTime and averageTime per
+	 * statement, ordered by total time with the most expensive statement first.
+	 */
+	public synchronized Object[] toArray()
+	{
+		ArrayList<Entry> sorted = new ArrayList<Entry>(entries.values());
+		Collections.sort(sorted, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b)
+			{
+				return a.totalTime < b.totalTime ? 1 : (a.totalTime > b.totalTime ? -1 : 0);
+			}
+		});
+
+		Object[] result = new Object[sorted.size()];
+		for (int i = 0; i < result.length; i++) {
+			Entry entry = sorted.get(i);
+			KrollDict stats = new KrollDict();
+			stats.put("sql", entry.sql);
+			stats.put("count", entry.count);
+			stats.put("totalTime", entry.totalTime);
+			stats.put("maxTime", entry.maxTime);
+			stats.put("averageTime", (double) entry.totalTime / entry.count);
+			result[i] = stats;
+		}
+		return result;
+	}
+
+	public synchronized void reset()
+	{
+		entries.clear();
+	}
+}
@@ -1,6 +1,6 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
@@ -17,6 +17,7 @@ import org.appcelerator.titanium.util.TiConvert;
 
 import android.database.AbstractWindowedCursor;
 import android.database.Cursor;
+import android.database.CursorWindow;
 import android.database.SQLException;
 import android.os.Build;
 
@@ -259,6 +260,111 @@ public class TiResultSetProxy extends KrollProxy
 		return 0;
 	}
 
+	/**
+	 * Returns up to count rows starting at the current row, as arrays of field values,
+	 * and moves past them. Values have the same types as {@link #field(Object[])} returns
+	 * without a type. Reading many rows in one call avoids a next, isValidRow and field
+	 * call per row and column.
+	 */
+	@Kroll.method
+	public Object[] fetchRows(int count)
+	{
+		if (!isValidRow() || count <= 0) {
+			return new Object[0];
+		}
+		if (rs.isBeforeFirst()) {
+			rs.moveToFirst();
+		}
+
+		int position = rs.getPosition();
+		int available = rs.getCount() - position;
+		if (available < count) {
+			count = available;
+		}
+
+		Object[] rows;
+		try {
+			rows = readRows(rs, position, count);
+		} catch (RuntimeException e) {
+			Log.e(LCAT, "Exception fetching rows: " + e.getMessage(), e);
+			throw e;
+		}
+		rs.moveToPosition(position + count);
+
+		return rows;
+	}
+
+	/**
+	 * Returns the current row and all rows after it, see {@link #fetchRows(int)}.
+	 */
+	@Kroll.method
+	public Object[] fetchAll()
+	{
+		if (!isValidRow()) {
+			return new Object[0];
+		}
+		return fetchRows(rs.getCount() - Math.max(0, rs.getPosition()));
+	}
+
+	/**
+	 * Reads count rows of cursor starting at position into arrays of field values.
+	 * The cursor is left at an unspecified position.
+	 */
+	static Object[] readRows(Cursor cursor, int position, int count)
+	{
+		Object[] rows = new Object[count];
+		int columnCount = cursor.getColumnCount();
+		if (cursor instanceof AbstractWindowedCursor) {
+			readWindowedRows((AbstractWindowedCursor) cursor, position, columnCount, rows);
+
+		} else {
+			// Without a window the type of a value isn't known, so like field() everything is read as text
+			cursor.moveToPosition(position);
+			for (int i = 0; i < count; i++) {
+				Object[] row = new Object[columnCount];
+				for (int column = 0; column < columnCount; column++) {
+					row[column] = cursor.getString(column);
+				}
+				rows[i] = row;
+				cursor.moveToNext();
+			}
+		}
+		return rows;
+	}
+
+	/*
+	 * Reads values straight out of the cursor's window, which the per field path
+	 * does through several position and type checks per value. The cursor is
+	 * only moved to load the next window.
+	 */
+	@SuppressWarnings("deprecation")
+	private static void readWindowedRows(AbstractWindowedCursor cursor, int position, int columnCount, Object[] rows)
+	{
+		CursorWindow window = cursor.getWindow();
+		for (int i = 0; i < rows.length; i++) {
+			int row = position + i;
+			if (window == null || row < window.getStartPosition()
+				|| row >= window.getStartPosition() + window.getNumRows()) {
+				cursor.moveToPosition(row);
+				window = cursor.getWindow();
+			}
+
+			Object[] values = new Object[columnCount];
+			for (int column = 0; column < columnCount; column++) {
+				if (window.isFloat(row, column)) {
+					values[column] = window.getDouble(row, column);
+				} else if (window.isLong(row, column)) {
+					values[column] = window.getLong(row, column);
+				} else if (window.isNull(row, column)) {
+					values[column] = null;
+				} else {
+					values[column] = window.getString(row, column);
+				}
+			}
+			rows[i] = values;
+		}
+	}
+
 	@Kroll.method
 	public boolean isValidRow() 
 	{
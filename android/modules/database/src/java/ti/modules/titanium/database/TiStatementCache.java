@@ -0,0 +1,112 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiConfig;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * The most recently used compiled statements of a single database connection, keyed by SQL.
+ *
+ * Compiling is the expensive part of running a statement, so statements that are run
+ * repeatedly (i.e. the same INSERT for every row of a sync) only get compiled once.
+ * Statements are closed when they are evicted or the cache is closed.
+ * Not thread safe, callers synchronize on the database proxy.
+ */
+public class TiStatementCache
+{
+	private static final String LCAT = "TiStatementCache";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	private final SQLiteDatabase db;
+	private final int maxSize;
+	private int hits = 0;
+	private int misses = 0;
+
+	private final LinkedHashMap<String, SQLiteStatement> statements;
+
+	public TiStatementCache(SQLiteDatabase db, final int maxSize)
+	{
+		this.db = db;
+		this.maxSize = maxSize;
+		statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest)
+			{
+				if (size() > maxSize) {
+					eldest.getValue().close();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the compiled statement for sql with its bindings cleared, compiling it
+	 * when it isn't cached.
+	 */
+	public SQLiteStatement getStatement(String sql)
+	{
+		SQLiteStatement statement = statements.get(sql);
+		if (statement != null) {
+			hits++;
+			statement.clearBindings();
+			return statement;
+		}
+
+		misses++;
+		statement = db.compileStatement(sql);
+		if (maxSize > 0) {
+			statements.put(sql, statement);
+		}
+		return statement;
+	}
+
+	/**
+	 * Returns whether statements are kept. When they aren't, statements returned by
+	 * {@link #getStatement(String)} must be closed by the caller.
+	 */
+	public boolean isEnabled()
+	{
+		return maxSize > 0;
+	}
+
+	public int getHitCount()
+	{
+		return hits;
+	}
+
+	public int getMissCount()
+	{
+		return misses;
+	}
+
+	public int size()
+	{
+		return statements.size();
+	}
+
+	public void close()
+	{
+		if (DBG) {
+			Log.d(LCAT, "Closing " + statements.size() + " statements, " + hits + " hits, " + misses + " misses");
+		}
+		for (SQLiteStatement statement : statements.values()) {
+			statement.close();
+		}
+		statements.clear();
+	}
+}
@@ -0,0 +1,401 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+
+package ti.modules.titanium.geolocation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiConfig;
+import org.appcelerator.titanium.TiApplication;
+import org.appcelerator.titanium.TiProperties;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import ti.modules.titanium.geolocation.TiLocation.GeocodeResponseHandler;
+
+/**
+ * Caches geocoder responses so repeated lookups don't go to the network.
+ *
+ * Reverse lookups are keyed by the geohash cell of the coordinate, so nearby
+ * coordinates (i.e. while walking) share a result, and forward lookups by the
+ * normalized address. Entries expire after a time to live, the least recently
+ * used entries are evicted once the cache is full, and the cache is persisted
+ * to the application's cache directory so it survives restarts.
+ *
+ * Concurrent lookups of the same key are only sent once: later callers are
+ * registered with {@link #addPending(String, GeocodeResponseHandler)} and get
+ * the result of the lookup already in flight.
+ *
+ * The cache can be configured with the following application properties:
+ * <ul>
+ * <li>ti.android.geocode.cachettl - seconds a response is used, 0 disables the cache (default 86400)</li>
+ * <li>ti.android.geocode.cachesize - maximum number of cached responses (default 200)</li>
+ * <li>ti.android.geocode.geohashprecision - geohash characters of a reverse lookup cell,
+ * 7 is a cell of about 150 by 150 meters (default 7)</li>
+ * </ul>
+ */
+public class TiGeocodeCache
+{
+	private static final String TAG = "TiGeocodeCache";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	private static final String PROPERTY_TTL = "ti.android.geocode.cachettl";
+	private static final String PROPERTY_MAX_ENTRIES = "ti.android.geocode.cachesize";
+	private static final String PROPERTY_PRECISION = "ti.android.geocode.geohashprecision";
+
+	private static final int DEFAULT_TTL = 24 * 60 * 60;
+	private static final int DEFAULT_MAX_ENTRIES = 200;
+	private static final int DEFAULT_PRECISION = 7;
+	private static final int MAX_PRECISION = 12;
+
+	private static final String CACHE_FILE = "ti-geocode-cache.json";
+	private static final int CACHE_VERSION = 1;
+
+	private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+	private static class Entry
+	{
+		final String response;
+		final long time;
+
+		Entry(String response, long time)
+		{
+			this.response = response;
+			this.time = time;
+		}
+	}
+
+	private final long ttl;
+	private final int precision;
+	private final File file;
+	private final LinkedHashMap<String, Entry> entries;
+	private final HashMap<String, List<GeocodeResponseHandler>> pending = new HashMap<String, List<GeocodeResponseHandler>>();
+	private boolean loaded = false;
+	private int hits = 0;
+	private int misses = 0;
+	private int joined = 0;
+
+	public TiGeocodeCache()
+	{
+		TiApplication app = TiApplication.getInstance();
+		TiProperties properties = app.getSystemProperties();
+		ttl = Math.max(0, properties.getInt(PROPERTY_TTL, DEFAULT_TTL)) * 1000L;
+		precision = Math.min(MAX_PRECISION, Math.max(1, properties.getInt(PROPERTY_PRECISION, DEFAULT_PRECISION)));
+		file = new File(app.getCacheDir(), CACHE_FILE);
+
+		final int maxEntries = Math.max(1, properties.getInt(PROPERTY_MAX_ENTRIES, DEFAULT_MAX_ENTRIES));
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public boolean isEnabled()
+	{
+		return ttl > 0;
+	}
+
+	public String getReverseKey(double latitude, double longitude)
+	{
+		return "r:" + geohash(latitude, longitude, precision);
+	}
+
+	public String getForwardKey(String address)
+	{
+		return "f:" + normalizeAddress(address);
+	}
+
+	/**
+	 * Returns the cached response for key, or null if there is none or it expired.
+	 * Only looks in memory, see {@link #load()}.
+	 */
+	public synchronized String get(String key)
+	{
+		if (!isEnabled()) {
+			return null;
+		}
+
+		Entry entry = entries.get(key);
+		if (entry != null && System.currentTimeMillis() - entry.time > ttl) {
+			entries.remove(key);
+			entry = null;
+		}
+
+		if (entry != null) {
+			hits++;
+			return entry.response;
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Caches a successful response for key. The cache is saved to disk, so this
+	 * shouldn't be called on the UI or runtime thread.
+	 */
+	public void put(String key, String response)
+	{
+		if (!isEnabled()) {
+			return;
+		}
+
+		synchronized (this) {
+			entries.put(key, new Entry(response, System.currentTimeMillis()));
+		}
+		save();
+	}
+
+	/**
+	 * Registers handler for the result of looking up key.
+	 * @return true if the caller should do the lookup, false if the same lookup is
+	 * already in flight and the handler will get its result.
+	 */
+	public synchronized boolean addPending(String key, GeocodeResponseHandler handler)
+	{
+		List<GeocodeResponseHandler> handlers = pending.get(key);
+		if (handlers != null) {
+			handlers.add(handler);
+			joined++;
+			return false;
+		}
+
+		handlers = new ArrayList<GeocodeResponseHandler>();
+		handlers.add(handler);
+		pending.put(key, handlers);
+		return true;
+	}
+
+	/**
+	 * Returns and forgets the handlers waiting for the lookup of key.
+	 */
+	public synchronized List<GeocodeResponseHandler> removePending(String key)
+	{
+		List<GeocodeResponseHandler> handlers = pending.remove(key);
+		if (handlers == null) {
+			handlers = new ArrayList<GeocodeResponseHandler>();
+		}
+		return handlers;
+	}
+
+	/**
+	 * Reads the entries saved by a previous run, once. Does disk I/O, so it
+	 * shouldn't be called on the UI or runtime thread.
+	 */
+	public void load()
+	{
+		synchronized (this) {
+			if (loaded || !isEnabled()) {
+				return;
+			}
+			loaded = true;
+		}
+		if (!file.exists()) {
+			return;
+		}
+
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(file));
+			StringBuilder json = new StringBuilder();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				json.append(line);
+			}
+
+			JSONObject cache = new JSONObject(json.toString());
+			if (cache.optInt("version") != CACHE_VERSION) {
+				return;
+			}
+
+			JSONArray saved = cache.getJSONArray("entries");
+			long now = System.currentTimeMillis();
+			synchronized (this) {
+				// Saved least recently used first, entries looked up in the meantime stay newer
+				LinkedHashMap<String, Entry> current = new LinkedHashMap<String, Entry>(entries);
+				entries.clear();
+				for (int i = 0; i < saved.length(); i++) {
+					JSONObject entry = saved.getJSONObject(i);
+					long time = entry.getLong("time");
+					if (now - time <= ttl) {
+						entries.put(entry.getString("key"), new Entry(entry.getString("response"), time));
+					}
+				}
+				entries.putAll(current);
+			}
+			if (DBG) {
+				Log.d(TAG, "Loaded " + entries.size() + " geocode responses");
+			}
+
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to read geocode cache: " + e.getMessage());
+
+		} catch (JSONException e) {
+			Log.w(TAG, "Discarding invalid geocode cache: " + e.getMessage());
+			file.delete();
+
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void save()
+	{
+		JSONObject cache = new JSONObject();
+		try {
+			JSONArray saved = new JSONArray();
+			synchronized (this) {
+				for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+					JSONObject json = new JSONObject();
+					json.put("key", entry.getKey());
+					json.put("time", entry.getValue().time);
+					json.put("response", entry.getValue().response);
+					saved.put(json);
+				}
+			}
+			cache.put("version", CACHE_VERSION);
+			cache.put("entries", saved);
+
+		} catch (JSONException e) {
+			Log.e(TAG, "Unable to save geocode cache: " + e.getMessage());
+			return;
+		}
+
+		// Written to a temporary file first so a crash can't leave a truncated cache
+		File tmp = new File(file.getPath() + ".tmp");
+		FileWriter writer = null;
+		try {
+			synchronized (file) {
+				writer = new FileWriter(tmp);
+				writer.write(cache.toString());
+				writer.close();
+				writer = null;
+				if (!tmp.renameTo(file)) {
+					Log.w(TAG, "Unable to replace geocode cache");
+				}
+			}
+
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to save geocode cache: " + e.getMessage());
+
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	public synchronized int getHitCount()
+	{
+		return hits;
+	}
+
+	public synchronized int getMissCount()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return the number of lookups that waited for an identical lookup in flight.
+	 */
+	public synchronized int getJoinedCount()
+	{
+		return joined;
+	}
+
+	/**
+	 * Encodes a coordinate as a geohash of precision characters. Coordinates in the
+	 * same cell share a geohash.
+	 */
+	public static String geohash(double latitude, double longitude, int precision)
+	{
+		double minLatitude = -90, maxLatitude = 90;
+		double minLongitude = -180, maxLongitude = 180;
+		StringBuilder hash = new StringBuilder(precision);
+		boolean isLongitude = true;
+		int bit = 0;
+		int value = 0;
+
+		// Bits alternate between longitude and latitude, each halving the cell
+		while (hash.length() < precision) {
+			if (isLongitude) {
+				double mid = (minLongitude + maxLongitude) / 2;
+				if (longitude >= mid) {
+					value = (value << 1) | 1;
+					minLongitude = mid;
+				} else {
+					value <<= 1;
+					maxLongitude = mid;
+				}
+			} else {
+				double mid = (minLatitude + maxLatitude) / 2;
+				if (latitude >= mid) {
+					value = (value << 1) | 1;
+					minLatitude = mid;
+				} else {
+					value <<= 1;
+					maxLatitude = mid;
+				}
+			}
+			isLongitude = !isLongitude;
+
+			if (++bit == 5) {
+				hash.append(BASE32.charAt(value));
+				bit = 0;
+				value = 0;
+			}
+		}
+		return hash.toString();
+	}
+
+	/**
+	 * Returns address in lower case with runs of whitespace and commas collapsed,
+	 * so trivially different spellings of an address share a cache entry.
+	 */
+	public static String normalizeAddress(String address)
+	{
+		StringBuilder normalized = new StringBuilder(address.length());
+		String lower = address.trim().toLowerCase(Locale.US);
+		for (int i = 0; i < lower.length(); i++) {
+			char c = lower.charAt(i);
+			if (Character.isWhitespace(c) || c == ',') {
+				if (normalized.length() > 0 && normalized.charAt(normalized.length() - 1) != ' ') {
+					normalized.append(' ');
+				}
+				continue;
+			}
+			normalized.append(c);
+		}
+		return normalized.toString().trim();
+	}
+}
@@ -17,8 +17,13 @@ import java.util.Locale;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
@@ -55,6 +60,10 @@ public class TiLocation implements Handler.Callback
 	private static final String TAG = "TiLocation";
 	private static final boolean DBG = TiConfig.LOGD;
 	private static final String BASE_GEO_URL = "http://api.appcelerator.net/p/v1/geo?";
+	private static final String KEY_CACHE_KEY = "cacheKey";
+
+	// Shared by all lookups so the connection to the geocoder is kept alive
+	private static HttpClient httpClient;
 
 	private String mobileId;
 	private String appGuid;
@@ -63,6 +72,7 @@ public class TiLocation implements Handler.Callback
 	private long lastAnalyticsTimestamp = 0;
 	private List<String> knownProviders;
 	private Handler runtimeHandler;
+	private TiGeocodeCache geocodeCache;
 
 
 	public interface GeocodeResponseHandler
@@ -80,6 +90,7 @@ public class TiLocation implements Handler.Callback
 		sessionId = TiPlatformHelper.getSessionId();
 		countryCode = Locale.getDefault().getCountry();
 		runtimeHandler = new Handler(TiMessenger.getRuntimeMessenger().getLooper(), this);
+		geocodeCache = new TiGeocodeCache();
 	}
 
 	public boolean handleMessage(Message msg)
@@ -87,9 +98,30 @@ public class TiLocation implements Handler.Callback
 		if (msg.what == MSG_LOOKUP) {
 			String urlValue = msg.getData().getString(TiC.PROPERTY_URL);
 			String directionValue = msg.getData().getString(TiC.PROPERTY_DIRECTION);
+			String cacheKey = msg.getData().getString(KEY_CACHE_KEY);
+			GeocodeResponseHandler responseHandler = (GeocodeResponseHandler) msg.obj;
+
+			String cachedResponse = geocodeCache.get(cacheKey);
+			if (cachedResponse != null) {
+				if (DBG) {
+					Log.d(TAG, "Using cached geocode response for [" + cacheKey + "]");
+				}
+				ArrayList<GeocodeResponseHandler> handlers = new ArrayList<GeocodeResponseHandler>();
+				handlers.add(responseHandler);
+				deliverGeocodeResponse(directionValue, cachedResponse, handlers);
+				return true;
+			}
+
+			// Identical lookups in flight share the one request
+			if (!geocodeCache.addPending(cacheKey, responseHandler)) {
+				if (DBG) {
+					Log.d(TAG, "Joining geocode lookup in flight for [" + cacheKey + "]");
+				}
+				return true;
+			}
 
 			AsyncTask<Object, Void, Integer> task = getLookUpTask();
-			task.execute(urlValue, directionValue, msg.obj);
+			task.execute(urlValue, directionValue, cacheKey);
 
 			return true;
 		}
@@ -172,6 +204,7 @@ public class TiLocation implements Handler.Callback
 				Message message = runtimeHandler.obtainMessage(MSG_LOOKUP);
 				message.getData().putString(TiC.PROPERTY_DIRECTION, TiC.PROPERTY_FORWARD);
 				message.getData().putString(TiC.PROPERTY_URL, geocoderUrl);
+				message.getData().putString(KEY_CACHE_KEY, geocodeCache.getForwardKey(address));
 
 				message.obj = responseHandler;
 				message.sendToTarget();
@@ -189,6 +222,7 @@ public class TiLocation implements Handler.Callback
 			Message message = runtimeHandler.obtainMessage(MSG_LOOKUP);
 			message.getData().putString(TiC.PROPERTY_DIRECTION, TiC.PROPERTY_REVERSE);
 			message.getData().putString(TiC.PROPERTY_URL, geocoderUrl);
+			message.getData().putString(KEY_CACHE_KEY, geocodeCache.getReverseKey(latitude, longitude));
 
 			message.obj = responseHandler;
 			message.sendToTarget();
@@ -229,60 +263,37 @@ public class TiLocation implements Handler.Callback
 		AsyncTask<Object, Void, Integer> task = new AsyncTask<Object, Void, Integer>() {
 			@Override
 			protected Integer doInBackground(Object... args) {
+				String cacheKey = (String) args[2];
 				try {
 					String url = (String) args[0];
 					String direction = (String) args[1];
-					GeocodeResponseHandler geocodeResponseHandler = (GeocodeResponseHandler) args[2];
 
-					if (DBG) {
-						Log.d(TAG, "GEO URL [" + url + "]");
-					}
-					HttpGet httpGet = new HttpGet(url);
-
-					HttpParams httpParams = new BasicHttpParams();
-					HttpConnectionParams.setConnectionTimeout(httpParams, 5000);
+					// Responses saved by a previous run are only read off the runtime thread
+					geocodeCache.load();
+					String response = geocodeCache.get(cacheKey);
+					boolean cached = response != null;
 
-					HttpClient client = new DefaultHttpClient(httpParams);
-					client.getParams().setBooleanParameter("http.protocol.expect-continue", false);
-					ResponseHandler<String> responseHandler = new BasicResponseHandler();
-					String response = client.execute(httpGet, responseHandler);
-
-					if (DBG) {
-						Log.i(TAG, "received Geo [" + response + "]");
-					}
+					if (!cached) {
+						if (DBG) {
+							Log.d(TAG, "GEO URL [" + url + "]");
+						}
+						HttpGet httpGet = new HttpGet(url);
+						ResponseHandler<String> responseHandler = new BasicResponseHandler();
+						response = getHttpClient().execute(httpGet, responseHandler);
 
-					HashMap<String, Object> event = null;
-					if (response != null) {
-						try {
-							JSONObject jsonObject = new JSONObject(response);
-							if (jsonObject.getBoolean(TiC.PROPERTY_SUCCESS)) {
-								if (direction.equals("forward")) {
-									event = buildForwardGeocodeResponse(jsonObject);
-
-								} else {
-									event = buildReverseGeocodeResponse(jsonObject);
-								}
-
-							} else {
-								event = new KrollDict();
-								KrollDict errorDict = new KrollDict();
-								String errorCode = jsonObject.getString(TiC.ERROR_PROPERTY_ERRORCODE);
-								errorDict.put(TiC.PROPERTY_MESSAGE, "Unable to resolve message: Code (" + errorCode + ")");
-								errorDict.put(TiC.PROPERTY_CODE, errorCode);
-								event.put(TiC.EVENT_PROPERTY_ERROR, errorDict);
-							}
-
-						} catch (JSONException e) {
-							Log.e(TAG, "error converting geo response to JSONObject [" + e.getMessage() + "]", e);
+						if (DBG) {
+							Log.i(TAG, "received Geo [" + response + "]");
 						}
 					}
 
-					if (event != null) {
-						geocodeResponseHandler.handleGeocodeResponse(event);
+					List<GeocodeResponseHandler> handlers = geocodeCache.removePending(cacheKey);
+					if (response != null && deliverGeocodeResponse(direction, response, handlers) && !cached) {
+						geocodeCache.put(cacheKey, response);
 					}
 
 				} catch (Throwable t) {
 					Log.e(TAG, "error retrieving geocode information [" + t.getMessage() + "]", t);
+					geocodeCache.removePending(cacheKey);
 				}
 
 				return -1;
@@ -292,6 +303,63 @@ public class TiLocation implements Handler.Callback
 		return task;
 	}
 
+	/*
+	 * Builds an event from a geocoder response for each handler, since handlers add to it.
+	 * Returns whether the response was successful.
+	 */
+	private boolean deliverGeocodeResponse(String direction, String response, List<GeocodeResponseHandler> handlers)
+	{
+		boolean success = false;
+		try {
+			JSONObject jsonObject = new JSONObject(response);
+			success = jsonObject.getBoolean(TiC.PROPERTY_SUCCESS);
+
+			for (GeocodeResponseHandler geocodeResponseHandler : handlers) {
+				HashMap<String, Object> event = null;
+				if (success) {
+					if (direction.equals("forward")) {
+						event = buildForwardGeocodeResponse(jsonObject);
+
+					} else {
+						event = buildReverseGeocodeResponse(jsonObject);
+					}
+
+				} else {
+					event = new KrollDict();
+					KrollDict errorDict = new KrollDict();
+					String errorCode = jsonObject.getString(TiC.ERROR_PROPERTY_ERRORCODE);
+					errorDict.put(TiC.PROPERTY_MESSAGE, "Unable to resolve message: Code (" + errorCode + ")");
+					errorDict.put(TiC.PROPERTY_CODE, errorCode);
+					event.put(TiC.EVENT_PROPERTY_ERROR, errorDict);
+				}
+
+				geocodeResponseHandler.handleGeocodeResponse(event);
+			}
+
+		} catch (JSONException e) {
+			Log.e(TAG, "error converting geo response to JSONObject [" + e.getMessage() + "]", e);
+			return false;
+		}
+
+		return success;
+	}
+
+	private static synchronized HttpClient getHttpClient()
+	{
+		if (httpClient == null) {
+			HttpParams httpParams = new BasicHttpParams();
+			HttpConnectionParams.setConnectionTimeout(httpParams, 5000);
+			httpParams.setBooleanParameter("http.protocol.expect-continue", false);
+
+			SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+			registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+			httpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(httpParams, registry), httpParams);
+		}
+		return httpClient;
+	}
+
 	private HashMap<String, Object> buildForwardGeocodeResponse(JSONObject jsonResponse)
 		throws JSONException
 	{
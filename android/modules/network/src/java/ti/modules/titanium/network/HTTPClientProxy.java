@@ -15,7 +15,7 @@ import org.appcelerator.titanium.TiContext;
 import ti.modules.titanium.xml.DocumentProxy;
 
 @Kroll.proxy(creatableInModule=NetworkModule.class, propertyAccessors = {
-	"ondatastream", "onerror", "onload",
+	"file", "ondatastream", "onerror", "onload",
 	"onreadystatechange", "onsendstream"
 })
 
@@ -231,6 +231,12 @@ public class NetworkModule extends KrollModule {
 		}
 	}
 	
+	@Kroll.method
+	public KrollDict getHTTPConnectionPoolStats()
+	{
+		return TiHTTPConnectionPool.getInstance().getStats();
+	}
+
 	@Kroll.method @Kroll.topLevel
 	public String encodeURIComponent(String component) {
 		return Uri.encode(component);
@@ -17,22 +17,21 @@ import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHost;
-import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpVersion;
 import org.apache.http.MethodNotSupportedException;
 import org.apache.http.NameValuePair;
 import org.apache.http.ParseException;
@@ -43,13 +42,10 @@ import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.conn.params.ConnManagerParams;
-import org.apache.http.conn.params.ConnPerRouteBean;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.StringEntity;
@@ -60,13 +56,8 @@ import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.DefaultHttpRequestFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultRedirectHandler;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.message.BasicHttpEntityEnclosingRequest;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
@@ -81,6 +72,7 @@ import org.appcelerator.titanium.TiBlob;
 import org.appcelerator.titanium.TiFileProxy;
 import org.appcelerator.titanium.io.TiBaseFile;
 import org.appcelerator.titanium.io.TiFile;
+import org.appcelerator.titanium.io.TiFileFactory;
 import org.appcelerator.titanium.io.TiResourceFile;
 import org.appcelerator.titanium.util.TiConvert;
 import org.appcelerator.titanium.util.TiMimeTypeHelper;
@@ -95,6 +87,7 @@ public class TiHTTPClient
 	private static final boolean DBG = TiConfig.LOGD;
 	private static final int IS_BINARY_THRESHOLD = 30;
 	private static final int DEFAULT_MAX_BUFFER_SIZE = 512 * 1024;
+	private static final int RESPONSE_CHUNK_SIZE = 8 * 1024;
 	private static final String PROPERTY_MAX_BUFFER_SIZE = "ti.android.httpclient.maxbuffersize";
 	private static final int PROTOCOL_DEFAULT_PORT = -1;
 	private static final String ON_READY_STATE_CHANGE = "onreadystatechange";
@@ -102,10 +95,7 @@ public class TiHTTPClient
 	private static final String ON_ERROR = "onerror";
 	private static final String ON_DATA_STREAM = "ondatastream";
 	private static final String ON_SEND_STREAM = "onsendstream";
-
-	private static AtomicInteger httpClientThreadCounter;
-	private static DefaultHttpClient nonValidatingClient;
-	private static DefaultHttpClient validatingClient;
+	private static final String PROPERTY_FILE = "file";
 
 	private DefaultHttpClient client;
 	private KrollProxy proxy;
@@ -115,14 +105,15 @@ public class TiHTTPClient
 	private int status;
 	private String statusText;
 	private boolean connected;
-	private HttpRequest request;
+	private volatile HttpUriRequest request;
 	private HttpResponse response;
 	private String method;
 	private HttpHost host;
-	private LocalResponseHandler handler;
+	private volatile LocalResponseHandler handler;
 	private Credentials credentials;
 	private TiBlob responseData;
-	private OutputStream responseOut;
+	private ResponseBuffer responseBuffer;
+	private FileChannel responseChannel;
 	private String charset;
 	private String contentType;
 	private long maxBufferSize;
@@ -130,8 +121,7 @@ public class TiHTTPClient
 	private HashMap<String, ContentBody> parts;
 	private String data;
 	private boolean needMultipart;
-	private Thread clientThread;
-	private boolean aborted;
+	private volatile boolean aborted;
 	private int timeout = -1;
 	private boolean autoEncodeUrl = true;
 	private boolean autoRedirect = true;
@@ -183,10 +173,36 @@ public class TiHTTPClient
 		}
 	}
 	
+	/**
+	 * Response body buffer that hands out its backing array when it is
+	 * completely filled, avoiding the copy made by toByteArray().
+	 */
+	private static class ResponseBuffer extends ByteArrayOutputStream
+	{
+		public ResponseBuffer(int size)
+		{
+			super(size);
+		}
+
+		public synchronized byte[] getData()
+		{
+			if (count == buf.length) {
+				return buf;
+			}
+			return toByteArray();
+		}
+
+		public synchronized ByteBuffer asByteBuffer()
+		{
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
 	class LocalResponseHandler implements ResponseHandler<String>
 	{
 		public WeakReference<TiHTTPClient> client;
 		public InputStream is;
+		public volatile InputStream entityStream;
 		public HttpEntity entity;
 
 		public LocalResponseHandler(TiHTTPClient client)
@@ -233,10 +249,11 @@ public class TiHTTPClient
 					if (entity.getContentType() != null) {
 						contentType = entity.getContentType().getValue();
 					}
+					entityStream = entity.getContent();
 					if (contentEncoding != null && contentEncoding.getValue().equalsIgnoreCase("gzip")) {
-						is = new GZIPInputStream(entity.getContent());
+						is = new GZIPInputStream(entityStream);
 					} else {
-						is = entity.getContent();
+						is = entityStream;
 					}
 					charset = EntityUtils.getContentCharSet(entity);
 				} else {
@@ -252,7 +269,7 @@ public class TiHTTPClient
 					}
 					int count = 0;
 					long totalSize = 0;
-					byte[] buf = new byte[4096];
+					byte[] buf = new byte[RESPONSE_CHUNK_SIZE];
 					if (DBG) {
 						Log.d(LCAT, "Available: " + is.available());
 					}
@@ -286,52 +303,64 @@ public class TiHTTPClient
 			return clientResponse;
 		}
 
-		private TiFile createFileResponseData(boolean dumpResponseOut) throws IOException
+		private TiBaseFile createFileResponseData(boolean dumpResponseOut) throws IOException
 		{
-			File outFile;
-			TiApplication app = TiApplication.getInstance();
-			if (app != null) {
-				TiTempFileHelper helper = app.getTempFileHelper();
-				outFile = helper.createTempFile("tihttp", "tmp");
-			} else {
-				outFile = File.createTempFile("tihttp", "tmp");
+			TiBaseFile tiFile = getResponseFile();
+			if (tiFile == null) {
+				File outFile;
+				TiApplication app = TiApplication.getInstance();
+				if (app != null) {
+					TiTempFileHelper helper = app.getTempFileHelper();
+					outFile = helper.createTempFile("tihttp", "tmp");
+				} else {
+					outFile = File.createTempFile("tihttp", "tmp");
+				}
+				tiFile = new TiFile(outFile, outFile.getAbsolutePath(), false);
 			}
 
-			TiFile tiFile = new TiFile(outFile, outFile.getAbsolutePath(), false);
+			FileOutputStream fileOut = new FileOutputStream(tiFile.getNativeFile(), false);
+			responseChannel = fileOut.getChannel();
 			if (dumpResponseOut) {
-				ByteArrayOutputStream byteStream = (ByteArrayOutputStream) responseOut;
-				tiFile.write(TiBlob.blobFromData(byteStream.toByteArray()), false);
+				writeFully(responseChannel, responseBuffer.asByteBuffer());
 			}
 
-			responseOut = new FileOutputStream(outFile, dumpResponseOut);
+			responseBuffer = null;
 			responseData = TiBlob.blobFromFile(tiFile, contentType);
 			return tiFile;
 		}
-		
+
 		private void handleEntityData(byte[] data, int size, long totalSize, long contentLength) throws IOException
 		{
-			if (responseOut == null) {
-				if (contentLength > maxBufferSize) {
+			if (responseBuffer == null && responseChannel == null) {
+				if (contentLength > maxBufferSize || getResponseFile() != null) {
 					createFileResponseData(false);
 				} else {
+					// When the length is known the buffer is sized exactly, so the
+					// response blob can wrap it without another copy
 					long streamSize = contentLength > 0 ? contentLength : 512;
-					responseOut = new ByteArrayOutputStream((int)streamSize);
+					responseBuffer = new ResponseBuffer((int)streamSize);
 				}
 			}
-			if (totalSize > maxBufferSize && responseOut instanceof ByteArrayOutputStream) {
-				// Content length may not have been reported, dump the current stream
-				// to a file and re-open as a FileOutputStream w/ append
+			if (totalSize > maxBufferSize && responseBuffer != null) {
+				// Content length may not have been reported, dump the current buffer
+				// to a file and continue writing to the file channel
 				createFileResponseData(true);
 			}
-			
-			responseOut.write(data, 0, size);
+
+			if (responseChannel != null) {
+				writeFully(responseChannel, ByteBuffer.wrap(data, 0, size));
+			} else {
+				responseBuffer.write(data, 0, size);
+			}
+
 			KrollFunction onDataStreamCallback = getCallback(ON_DATA_STREAM);
 			if (onDataStreamCallback != null) {
 				KrollDict o = new KrollDict();
 				o.put("totalCount", contentLength);
 				o.put("totalSize", totalSize);
 				o.put("size", size);
-				
+
+				// the callback is asynchronous so the chunk can't share the read buffer
 				byte[] blobData = new byte[size];
 				System.arraycopy(data, 0, blobData, 0, size);
 
@@ -342,15 +371,24 @@ public class TiHTTPClient
 				onDataStreamCallback.callAsync(proxy.getKrollObject(), o);
 			}
 		}
-		
+
 		private void finishedReceivingEntityData(long contentLength) throws IOException
 		{
-			if (responseOut instanceof ByteArrayOutputStream) {
-				ByteArrayOutputStream byteStream = (ByteArrayOutputStream) responseOut;
-				responseData = TiBlob.blobFromData(byteStream.toByteArray(), contentType);
+			if (responseBuffer != null) {
+				responseData = TiBlob.blobFromData(responseBuffer.getData(), contentType);
+				responseBuffer = null;
+			}
+			if (responseChannel != null) {
+				responseChannel.close();
+				responseChannel = null;
+			}
+		}
+
+		private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+		{
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
 			}
-			responseOut.close();
-			responseOut = null;
 		}
 
 		private void setResponseText(HttpEntity entity) throws IOException, ParseException
@@ -457,9 +495,6 @@ public class TiHTTPClient
 		this.proxy = proxy;
 		this.client = getClient(false);
 
-		if (httpClientThreadCounter == null) {
-			httpClientThreadCounter = new AtomicInteger();
-		}
 		readyState = 0;
 		responseText = "";
 		credentials = null;
@@ -512,6 +547,28 @@ public class TiHTTPClient
 		}
 	}
 
+	/**
+	 * @return the file the response body should be written to, if the "file" property was set.
+	 * The body is then written straight to this file and never buffered in memory.
+	 */
+	protected TiBaseFile getResponseFile()
+	{
+		Object value = proxy.getProperty(PROPERTY_FILE);
+		TiBaseFile file = null;
+		if (value instanceof TiFileProxy) {
+			file = ((TiFileProxy) value).getBaseFile();
+
+		} else if (value instanceof String) {
+			file = TiFileFactory.createTitaniumFile((String) value, false);
+		}
+
+		if (file != null && file.getNativeFile() == null) {
+			Log.w(LCAT, "Unable to write response to a read-only file, buffering response instead");
+			return null;
+		}
+		return file;
+	}
+
 	public boolean validatesSecureCertificate()
 	{
 		if (proxy.hasProperty("validatesSecureCertificate")) {
@@ -653,14 +710,14 @@ public class TiHTTPClient
 		if (readyState > READY_STATE_UNSENT && readyState < READY_STATE_DONE) {
 			aborted = true;
 
-			if (client != null) {
-				client.getConnectionManager().shutdown();
-				client = null;
+			// The connection manager is shared by every client, so only drop the
+			// connection used by this request instead of shutting it down. Aborting
+			// the request works while it waits for a connection, connects, sends or
+			// receives the response.
+			HttpUriRequest currentRequest = request;
+			if (currentRequest != null) {
+				currentRequest.abort();
 			}
-			if (validatingClient != null)
-				validatingClient = null;
-			if (nonValidatingClient != null)
-				nonValidatingClient = null;
 		}
 	}
 
@@ -906,12 +963,16 @@ public class TiHTTPClient
 				String mimeType = blob.getMimeType();
 				File tmpFile = File.createTempFile("tixhr", "." + TiMimeTypeHelper.getFileExtensionFromMimeType(mimeType, "txt"));
 				FileOutputStream fos = new FileOutputStream(tmpFile);
-				fos.write(blob.getBytes());
-				fos.close();
+				try {
+					// Image blobs are encoded straight into the temp file
+					blob.writeTo(fos);
+				} finally {
+					fos.close();
+				}
 				
 				FileBody body = new FileBody(tmpFile, mimeType);
 				parts.put(name, body);
-				return blob.getLength();
+				return (int) tmpFile.length();
 
 			} else {
 				if (value != null) {
@@ -928,42 +989,9 @@ public class TiHTTPClient
 		return 0;
 	}
 
-	protected DefaultHttpClient createClient()
-	{
-		SchemeRegistry registry = new SchemeRegistry();
-		registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-
-		HttpParams params = new BasicHttpParams();
-		ConnManagerParams.setMaxTotalConnections(params, 5);
-		ConnPerRouteBean connPerRoute = new ConnPerRouteBean(5);
-		ConnManagerParams.setMaxConnectionsPerRoute(params, connPerRoute);
-
-		HttpProtocolParams.setUseExpectContinue(params, false);
-		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
-
-		return new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
-	}
-
 	protected DefaultHttpClient getClient(boolean validating)
 	{
-		if (validating) {
-			if (nonValidatingClient != null) {
-				return nonValidatingClient;
-			}
-
-			nonValidatingClient = createClient();
-			nonValidatingClient.getConnectionManager().getSchemeRegistry().register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
-			return nonValidatingClient;
-
-		} else {
-			if (validatingClient != null) {
-				return validatingClient;
-			}
-
-			validatingClient = createClient();
-			validatingClient.getConnectionManager().getSchemeRegistry().register(new Scheme("https", new NonValidatingSSLSocketFactory(), 443));
-			return validatingClient;
-		}
+		return TiHTTPConnectionPool.getInstance().getClient(validating);
 	}
 
 	public void send(Object userData) throws MethodNotSupportedException
@@ -1037,27 +1065,67 @@ public class TiHTTPClient
 			Log.d(LCAT, this.url);
 		}
 
-		request = new DefaultHttpRequestFactory().newHttpRequest(method, this.url);
-		for (String header : headers.keySet()) {
-			request.setHeader(header, headers.get(header));
+		// An invalid URI is reported through onerror by the worker, as it was when
+		// the request line was only parsed while executing the request
+		ProtocolException requestError = null;
+		try {
+			request = createRequest(method, this.url);
+			for (String header : headers.keySet()) {
+				request.setHeader(header, headers.get(header));
+			}
+
+		} catch (URISyntaxException e) {
+			request = null;
+			requestError = new ProtocolException("Invalid request URI: " + this.url, e);
 		}
 
-		clientThread = new Thread(new ClientRunnable(totalLength), "TiHttpClient-" + httpClientThreadCounter.incrementAndGet());
-		clientThread.setPriority(Thread.MIN_PRIORITY);
-		clientThread.start();
+		boolean streaming = proxy.hasProperty(PROPERTY_FILE) || getCallback(ON_DATA_STREAM) != null;
+		TiHTTPConnectionPool.getInstance().execute(new ClientRunnable(totalLength, requestError), streaming);
 
 		if (DBG) {
 			Log.d(LCAT, "Leaving send()");
 		}
 	}
 	
+	/*
+	 * Creates an abortable request for method, which DefaultHttpRequestFactory's requests
+	 * aren't. The factory still decides which methods are supported and carry a body.
+	 */
+	private static HttpUriRequest createRequest(final String method, String url)
+		throws MethodNotSupportedException, URISyntaxException
+	{
+		HttpRequestBase request;
+		if (new DefaultHttpRequestFactory().newHttpRequest(method, url) instanceof HttpEntityEnclosingRequest) {
+			request = new HttpEntityEnclosingRequestBase() {
+				@Override
+				public String getMethod()
+				{
+					return method;
+				}
+			};
+
+		} else {
+			request = new HttpRequestBase() {
+				@Override
+				public String getMethod()
+				{
+					return method;
+				}
+			};
+		}
+		request.setURI(new URI(url));
+		return request;
+	}
+
 	private class ClientRunnable implements Runnable
 	{
 		private double totalLength;
+		private ProtocolException requestError;
 
-		public ClientRunnable(double totalLength)
+		public ClientRunnable(double totalLength, ProtocolException requestError)
 		{
 			this.totalLength = totalLength;
+			this.requestError = requestError;
 		}
 
 		public void run()
@@ -1067,6 +1135,9 @@ public class TiHTTPClient
 				if (DBG) {
 					Log.d(LCAT, "send()");
 				}
+				if (requestError != null) {
+					throw requestError;
+				}
 
 				handler = new LocalResponseHandler(TiHTTPClient.this);
 
@@ -1078,7 +1149,7 @@ public class TiHTTPClient
 					credentials = null;
 				}
 				client.setRedirectHandler(new RedirectHandler());
-				if(request instanceof BasicHttpEntityEnclosingRequest) {
+				if(request instanceof HttpEntityEnclosingRequest) {
 
 					UrlEncodedFormEntity form = null;
 					MultipartEntity mpe = null;
@@ -1167,16 +1238,10 @@ public class TiHTTPClient
 				setReadyState(READY_STATE_DONE);
 
 			} catch(Throwable t) {
-				if (client != null) {
-					if (DBG) {
-						Log.d(LCAT, "clearing the expired and idle connections");
-					}
-					client.getConnectionManager().closeExpiredConnections();
-					client.getConnectionManager().closeIdleConnections(0, TimeUnit.NANOSECONDS);
-
-				} else {
-					Log.d(LCAT, "client is not valid, unable to clear expired and idle connections");
+				if (DBG) {
+					Log.d(LCAT, "clearing the expired and idle connections");
 				}
+				TiHTTPConnectionPool.getInstance().closeIdleConnections();
 
 				String msg = t.getMessage();
 				if (msg == null && t.getCause() != null) {
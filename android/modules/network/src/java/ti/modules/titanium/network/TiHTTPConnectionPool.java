@@ -0,0 +1,299 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.network;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiConfig;
+import org.appcelerator.titanium.TiApplication;
+import org.appcelerator.titanium.TiProperties;
+
+/**
+ * Process wide connection pool and request executor shared by every
+ * {@link TiHTTPClient}. Connections are kept alive and reused between
+ * requests to the same route, and requests are dispatched on a bounded
+ * set of worker threads instead of a new thread per send(). Streaming
+ * requests, which write their response to a file or to ondatastream, run on
+ * a separate bounded set of threads so long downloads can't hold up other
+ * requests. Requests beyond either limit wait for a thread.
+ *
+ * Limits can be configured with the following application properties:
+ * <ul>
+ * <li>ti.android.httpclient.maxconnections - total pooled connections (default 20)</li>
+ * <li>ti.android.httpclient.maxconnectionsperroute - pooled connections per route (default 6)</li>
+ * <li>ti.android.httpclient.maxthreads - concurrent requests (default 8)</li>
+ * <li>ti.android.httpclient.maxstreamingthreads - concurrent streaming requests (default 4)</li>
+ * <li>ti.android.httpclient.idletimeout - seconds an idle connection is kept (default 30)</li>
+ * </ul>
+ */
+public class TiHTTPConnectionPool
+{
+	private static final String LCAT = "TiHTTPConnectionPool";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	private static final String PROPERTY_MAX_CONNECTIONS = "ti.android.httpclient.maxconnections";
+	private static final String PROPERTY_MAX_CONNECTIONS_PER_ROUTE = "ti.android.httpclient.maxconnectionsperroute";
+	private static final String PROPERTY_MAX_THREADS = "ti.android.httpclient.maxthreads";
+	private static final String PROPERTY_MAX_STREAMING_THREADS = "ti.android.httpclient.maxstreamingthreads";
+	private static final String PROPERTY_IDLE_TIMEOUT = "ti.android.httpclient.idletimeout";
+
+	private static final int DEFAULT_MAX_CONNECTIONS = 20;
+	private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 6;
+	private static final int DEFAULT_MAX_THREADS = 8;
+	private static final int DEFAULT_MAX_STREAMING_THREADS = 4;
+	private static final int DEFAULT_IDLE_TIMEOUT = 30;
+
+	private static TiHTTPConnectionPool instance;
+
+	private PooledConnManager validatingManager;
+	private PooledConnManager nonValidatingManager;
+	private DefaultHttpClient validatingClient;
+	private DefaultHttpClient nonValidatingClient;
+	private ThreadPoolExecutor executor;
+	private ThreadPoolExecutor streamingExecutor;
+
+	private int maxConnections;
+	private int maxConnectionsPerRoute;
+	private int idleTimeout;
+
+	private AtomicInteger leased = new AtomicInteger();
+	private AtomicLong created = new AtomicLong();
+	private AtomicLong reused = new AtomicLong();
+
+	/**
+	 * Connection manager that keeps track of how many connections are leased
+	 * and whether a leased connection was reused from the pool.
+	 */
+	private class PooledConnManager extends ThreadSafeClientConnManager
+	{
+		private HttpParams params;
+
+		public PooledConnManager(HttpParams params, SchemeRegistry registry)
+		{
+			super(params, registry);
+			this.params = params;
+		}
+
+		public HttpParams getParams()
+		{
+			return params;
+		}
+
+		@Override
+		public ClientConnectionRequest requestConnection(HttpRoute route, Object state)
+		{
+			final ClientConnectionRequest request = super.requestConnection(route, state);
+			return new ClientConnectionRequest() {
+				public ManagedClientConnection getConnection(long timeout, TimeUnit tunit)
+					throws InterruptedException, ConnectionPoolTimeoutException
+				{
+					ManagedClientConnection connection = request.getConnection(timeout, tunit);
+					leased.incrementAndGet();
+					if (connection.isOpen()) {
+						reused.incrementAndGet();
+
+					} else {
+						created.incrementAndGet();
+					}
+					return connection;
+				}
+
+				public void abortRequest()
+				{
+					request.abortRequest();
+				}
+			};
+		}
+
+		@Override
+		public void releaseConnection(ManagedClientConnection connection, long validDuration, TimeUnit timeUnit)
+		{
+			super.releaseConnection(connection, validDuration, timeUnit);
+			leased.decrementAndGet();
+		}
+	}
+
+	private static class ClientThreadFactory implements ThreadFactory
+	{
+		private final String prefix;
+		private AtomicInteger counter = new AtomicInteger();
+
+		ClientThreadFactory(String prefix)
+		{
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+
+	public static synchronized TiHTTPConnectionPool getInstance()
+	{
+		if (instance == null) {
+			instance = new TiHTTPConnectionPool();
+		}
+		return instance;
+	}
+
+	private TiHTTPConnectionPool()
+	{
+		maxConnections = DEFAULT_MAX_CONNECTIONS;
+		maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+		idleTimeout = DEFAULT_IDLE_TIMEOUT;
+		int maxThreads = DEFAULT_MAX_THREADS;
+		int maxStreamingThreads = DEFAULT_MAX_STREAMING_THREADS;
+
+		TiApplication app = TiApplication.getInstance();
+		if (app != null) {
+			TiProperties properties = app.getSystemProperties();
+			maxConnections = properties.getInt(PROPERTY_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+			maxConnectionsPerRoute = properties.getInt(PROPERTY_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+			maxThreads = Math.max(1, properties.getInt(PROPERTY_MAX_THREADS, DEFAULT_MAX_THREADS));
+			maxStreamingThreads = Math.max(1, properties.getInt(PROPERTY_MAX_STREAMING_THREADS, DEFAULT_MAX_STREAMING_THREADS));
+			idleTimeout = properties.getInt(PROPERTY_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+		}
+
+		executor = new ThreadPoolExecutor(maxThreads, maxThreads, idleTimeout, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ClientThreadFactory("TiHttpClient"));
+		streamingExecutor = new ThreadPoolExecutor(maxStreamingThreads, maxStreamingThreads, idleTimeout, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ClientThreadFactory("TiHttpClient-streaming"));
+
+		if (DBG) {
+			Log.d(LCAT, "Created HTTP connection pool, maxConnections=" + maxConnections
+				+ ", maxConnectionsPerRoute=" + maxConnectionsPerRoute + ", maxThreads=" + maxThreads
+				+ ", maxStreamingThreads=" + maxStreamingThreads);
+		}
+	}
+
+	/**
+	 * @param validating whether https certificates should be validated.
+	 * @return the shared client for the given certificate policy.
+	 */
+	public synchronized DefaultHttpClient getClient(boolean validating)
+	{
+		if (validating) {
+			if (validatingClient == null) {
+				validatingManager = createConnManager(SSLSocketFactory.getSocketFactory());
+				validatingClient = new DefaultHttpClient(validatingManager, validatingManager.getParams());
+			}
+			return validatingClient;
+
+		} else {
+			if (nonValidatingClient == null) {
+				nonValidatingManager = createConnManager(new NonValidatingSSLSocketFactory());
+				nonValidatingClient = new DefaultHttpClient(nonValidatingManager, nonValidatingManager.getParams());
+			}
+			return nonValidatingClient;
+		}
+	}
+
+	/**
+	 * Queues a request to run on one of the pool's worker threads.
+	 * @param streaming whether the request streams its response, and so may run for long.
+	 */
+	public void execute(Runnable request, boolean streaming)
+	{
+		(streaming ? streamingExecutor : executor).execute(request);
+	}
+
+	/**
+	 * @return the executor used to dispatch requests that don't stream their response.
+	 */
+	public ExecutorService getExecutor()
+	{
+		return executor;
+	}
+
+	/**
+	 * Closes expired connections, and those that have been idle longer than the idle timeout.
+	 */
+	public synchronized void closeIdleConnections()
+	{
+		if (validatingManager != null) {
+			validatingManager.closeExpiredConnections();
+			validatingManager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+		}
+		if (nonValidatingManager != null) {
+			nonValidatingManager.closeExpiredConnections();
+			nonValidatingManager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * @return a snapshot of the pool statistics.
+	 */
+	public synchronized KrollDict getStats()
+	{
+		int pooled = 0;
+		if (validatingManager != null) {
+			pooled += validatingManager.getConnectionsInPool();
+		}
+		if (nonValidatingManager != null) {
+			pooled += nonValidatingManager.getConnectionsInPool();
+		}
+
+		int leasedCount = leased.get();
+
+		KrollDict stats = new KrollDict();
+		stats.put("leased", leasedCount);
+		stats.put("available", Math.max(0, pooled - leasedCount));
+		stats.put("created", created.get());
+		stats.put("reused", reused.get());
+		stats.put("activeRequests", executor.getActiveCount() + streamingExecutor.getActiveCount());
+		stats.put("queuedRequests", executor.getQueue().size() + streamingExecutor.getQueue().size());
+		stats.put("threads", executor.getPoolSize() + streamingExecutor.getPoolSize());
+		stats.put("maxConnections", maxConnections);
+		stats.put("maxConnectionsPerRoute", maxConnectionsPerRoute);
+		return stats;
+	}
+
+	private PooledConnManager createConnManager(SocketFactory sslSocketFactory)
+	{
+		SchemeRegistry registry = new SchemeRegistry();
+		registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		registry.register(new Scheme("https", sslSocketFactory, 443));
+
+		HttpParams params = new BasicHttpParams();
+		ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+		ConnPerRouteBean connPerRoute = new ConnPerRouteBean(maxConnectionsPerRoute);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, connPerRoute);
+
+		HttpProtocolParams.setUseExpectContinue(params, false);
+		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+
+		return new PooledConnManager(params, registry);
+	}
+}
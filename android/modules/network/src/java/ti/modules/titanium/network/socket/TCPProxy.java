@@ -13,6 +13,11 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollFunction;
@@ -42,6 +47,12 @@ public class TCPProxy extends KrollProxy implements TiStream
 	private int state = 0;
 	private InputStream inputStream = null;
 
+	// Non-blocking mode, all channels are serviced by the shared TiSocketSelector thread.
+	private boolean nonBlocking = false;
+	private SocketChannel socketChannel = null;
+	private ServerSocketChannel serverChannel = null;
+	private final LinkedList<ByteBuffer> pendingWrites = new LinkedList<ByteBuffer>();
+
 
 	public TCPProxy()
 	{
@@ -61,6 +72,7 @@ public class TCPProxy extends KrollProxy implements TiStream
 			Object host = getProperty("host");
 			Object port = getProperty("port");
 			if((host != null) && (port != null)) {
+				nonBlocking = TiConvert.toBoolean(getProperty("nonBlocking"));
 				new ConnectedSocketThread().start();
 
 			} else {
@@ -79,7 +91,15 @@ public class TCPProxy extends KrollProxy implements TiStream
 			Object port = getProperty("port");
 			Object listenQueueSize = getProperty("listenQueueSize");
 
+			nonBlocking = TiConvert.toBoolean(getProperty("nonBlocking"));
+
 			try {
+				if (nonBlocking) {
+					listenNonBlocking(port, listenQueueSize);
+					state = SocketModule.LISTENING;
+					return;
+				}
+
 				if ((port != null) && (listenQueueSize != null)) {
 					serverSocket = new ServerSocket(TiConvert.toInt(port), TiConvert.toInt(listenQueueSize));
 
@@ -113,9 +133,37 @@ public class TCPProxy extends KrollProxy implements TiStream
 
 		this.acceptOptions = acceptOptions;
 		accepting = true;
+
+		if (serverChannel != null) {
+			TiSocketSelector.getInstance().addInterest(serverChannel, SelectionKey.OP_ACCEPT);
+		}
+	}
+
+	private void listenNonBlocking(Object port, Object listenQueueSize) throws IOException
+	{
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverSocket = serverChannel.socket();
+
+		InetSocketAddress address = port != null ? new InetSocketAddress(TiConvert.toInt(port)) : null;
+		if (listenQueueSize != null) {
+			serverSocket.bind(address, TiConvert.toInt(listenQueueSize));
+
+		} else {
+			serverSocket.bind(address);
+		}
+
+		// Interest in OP_ACCEPT is only added while accept() is pending
+		TiSocketSelector.getInstance().register(serverChannel, 0, new ChannelHandler(), 0);
 	}
 
 	private void closeSocket() throws IOException {
+		synchronized (pendingWrites) {
+			pendingWrites.clear();
+			socketChannel = null;
+			serverChannel = null;
+		}
+
 		if (clientSocket != null) {
 			clientSocket.close();
 			clientSocket = null;
@@ -176,6 +224,18 @@ public class TCPProxy extends KrollProxy implements TiStream
 		setSocketProperty("accepted", accepted);
 	}
 
+	@Kroll.setProperty @Kroll.method
+	public void setReadable(KrollFunction readable)
+	{
+		setSocketProperty("readable", readable);
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setNonBlocking(boolean nonBlocking)
+	{
+		setSocketProperty("nonBlocking", nonBlocking);
+	}
+
 	private void setSocketProperty(String propertyName, Object propertyValue)
 	{
 		if ((state != SocketModule.LISTENING) && (state != SocketModule.CONNECTED)) {
@@ -205,6 +265,35 @@ public class TCPProxy extends KrollProxy implements TiStream
 			Object timeoutProperty = getProperty("timeout");
 
 			try {
+				if (nonBlocking) {
+					// Only name resolution and starting the connect happen on this thread,
+					// the selector finishes the connection.
+					InetSocketAddress address = new InetSocketAddress(host, TiConvert.toInt(getProperty("port")));
+					if (address.isUnresolved()) {
+						throw new UnknownHostException(host);
+					}
+
+					SocketChannel channel = SocketChannel.open();
+					channel.configureBlocking(false);
+					socketChannel = channel;
+					clientSocket = channel.socket();
+
+					long deadline = 0;
+					if (timeoutProperty != null) {
+						deadline = System.currentTimeMillis() + TiConvert.toInt(timeoutProperty);
+					}
+
+					TiSocketSelector selector = TiSocketSelector.getInstance();
+					if (channel.connect(address)) {
+						selector.register(channel, SelectionKey.OP_READ, new ChannelHandler(), 0);
+						updateState(SocketModule.CONNECTED, "connected", buildConnectedCallbackArgs());
+
+					} else {
+						selector.register(channel, SelectionKey.OP_CONNECT, new ChannelHandler(), deadline);
+					}
+					return;
+				}
+
 				if (timeoutProperty != null) {
 					int timeout = TiConvert.toInt(timeoutProperty);
 
@@ -246,15 +335,7 @@ public class TCPProxy extends KrollProxy implements TiStream
 						acceptedTcpProxy.setProperty("host", acceptedTcpProxy.clientSocket.getInetAddress().getHostAddress());
 						acceptedTcpProxy.setProperty("port", acceptedTcpProxy.clientSocket.getPort());
 
-						Object optionValue;
-						if((optionValue = acceptOptions.get("timeout")) != null) {
-							acceptedTcpProxy.setProperty("timeout", TiConvert.toInt(optionValue));
-						}
-						if((optionValue = acceptOptions.get("error")) != null) {
-							if(optionValue instanceof KrollFunction) {
-								acceptedTcpProxy.setProperty("error", (KrollFunction) optionValue);
-							}
-						}
+						applyAcceptOptions(acceptedTcpProxy);
 
 						acceptedTcpProxy.state = SocketModule.CONNECTED;
 
@@ -287,6 +368,188 @@ public class TCPProxy extends KrollProxy implements TiStream
 		}
 	}
 
+	/**
+	 * Handles readiness for this proxy's channel on the selector thread.
+	 */
+	private class ChannelHandler implements TiSocketSelector.Handler
+	{
+		public void onReady(SelectionKey key, int readyOps)
+		{
+			if ((readyOps & SelectionKey.OP_CONNECT) != 0) {
+				finishConnect(key);
+			}
+			if ((readyOps & SelectionKey.OP_ACCEPT) != 0) {
+				acceptChannel();
+			}
+			if ((readyOps & SelectionKey.OP_WRITE) != 0) {
+				flushPendingWrites();
+			}
+			if ((readyOps & SelectionKey.OP_READ) != 0) {
+				Object callback = getProperty("readable");
+				if (callback instanceof KrollFunction) {
+					((KrollFunction) callback).callAsync(getKrollObject(), buildConnectedCallbackArgs());
+				}
+			}
+		}
+
+		public void onTimeout(SelectionKey key)
+		{
+			key.cancel();
+			updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs("Unable to connect, timed out", 0));
+		}
+	}
+
+	private void finishConnect(SelectionKey key)
+	{
+		SocketChannel channel = (SocketChannel) key.channel();
+		try {
+			channel.finishConnect();
+			((TiSocketSelector.Registration) key.attachment()).deadline = 0;
+			key.interestOps(SelectionKey.OP_READ);
+			updateState(SocketModule.CONNECTED, "connected", buildConnectedCallbackArgs());
+
+		} catch (IOException e) {
+			e.printStackTrace();
+			key.cancel();
+			updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs("Unable to connect, IO error", 0));
+		}
+	}
+
+	private void acceptChannel()
+	{
+		ServerSocketChannel server = serverChannel;
+		if (server == null || !accepting) {
+			return;
+		}
+
+		try {
+			SocketChannel channel = server.accept();
+			if (channel == null) {
+				TiSocketSelector.getInstance().addInterest(server, SelectionKey.OP_ACCEPT);
+				return;
+			}
+			channel.configureBlocking(false);
+
+			TCPProxy acceptedTcpProxy = new TCPProxy();
+			acceptedTcpProxy.nonBlocking = true;
+			acceptedTcpProxy.socketChannel = channel;
+			acceptedTcpProxy.clientSocket = channel.socket();
+			acceptedTcpProxy.setProperty("host", acceptedTcpProxy.clientSocket.getInetAddress().getHostAddress());
+			acceptedTcpProxy.setProperty("port", acceptedTcpProxy.clientSocket.getPort());
+			acceptedTcpProxy.setProperty("nonBlocking", true);
+			applyAcceptOptions(acceptedTcpProxy);
+			acceptedTcpProxy.state = SocketModule.CONNECTED;
+
+			TiSocketSelector.getInstance().register(channel, SelectionKey.OP_READ, acceptedTcpProxy.new ChannelHandler(), 0);
+
+			accepting = false;
+			Object callback = getProperty("accepted");
+			if (callback instanceof KrollFunction) {
+				((KrollFunction) callback).callAsync(getKrollObject(), buildAcceptedCallbackArgs(acceptedTcpProxy));
+			}
+
+		} catch (IOException e) {
+			if (state == SocketModule.LISTENING) {
+				e.printStackTrace();
+				updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs("Unable to accept new connection, IO error", 0));
+			}
+		}
+	}
+
+	private void applyAcceptOptions(TCPProxy acceptedTcpProxy)
+	{
+		Object optionValue;
+		if((optionValue = acceptOptions.get("timeout")) != null) {
+			acceptedTcpProxy.setProperty("timeout", TiConvert.toInt(optionValue));
+		}
+		if((optionValue = acceptOptions.get("error")) != null) {
+			if(optionValue instanceof KrollFunction) {
+				acceptedTcpProxy.setProperty("error", (KrollFunction) optionValue);
+			}
+		}
+		if((optionValue = acceptOptions.get("readable")) != null) {
+			if(optionValue instanceof KrollFunction) {
+				acceptedTcpProxy.setProperty("readable", (KrollFunction) optionValue);
+			}
+		}
+	}
+
+	private int readNonBlocking(BufferProxy bufferProxy, int offset, int length) throws IOException
+	{
+		ByteBuffer buffer = bufferProxy.getByteBuffer();
+		if ((offset + length) > buffer.limit()) {
+			length = buffer.limit() - offset;
+		}
+		buffer.limit(offset + length);
+		buffer.position(offset);
+
+		int bytesRead = socketChannel.read(buffer);
+		if (bytesRead != -1) {
+			// Ask to be told about the next data once this read has been serviced
+			TiSocketSelector.getInstance().addInterest(socketChannel, SelectionKey.OP_READ);
+		}
+		return bytesRead;
+	}
+
+	private int writeNonBlocking(BufferProxy bufferProxy, int offset, int length) throws IOException
+	{
+		ByteBuffer buffer = bufferProxy.getByteBuffer();
+		if ((offset + length) > buffer.limit()) {
+			length = buffer.limit() - offset;
+		}
+		buffer.limit(offset + length);
+		buffer.position(offset);
+
+		synchronized (pendingWrites) {
+			SocketChannel channel = socketChannel;
+			if (channel == null) {
+				throw new IOException("Unable to write to socket, channel closed");
+			}
+
+			if (pendingWrites.isEmpty()) {
+				channel.write(buffer);
+			}
+
+			if (buffer.hasRemaining()) {
+				// The caller may reuse its buffer, so keep a copy of what the socket didn't take yet
+				ByteBuffer remaining = ByteBuffer.allocate(buffer.remaining());
+				remaining.put(buffer);
+				remaining.flip();
+				pendingWrites.add(remaining);
+				TiSocketSelector.getInstance().addInterest(channel, SelectionKey.OP_WRITE);
+			}
+		}
+
+		return length;
+	}
+
+	private void flushPendingWrites()
+	{
+		synchronized (pendingWrites) {
+			SocketChannel channel = socketChannel;
+			if (channel == null) {
+				return;
+			}
+
+			try {
+				while (!pendingWrites.isEmpty()) {
+					ByteBuffer buffer = pendingWrites.getFirst();
+					channel.write(buffer);
+					if (buffer.hasRemaining()) {
+						TiSocketSelector.getInstance().addInterest(channel, SelectionKey.OP_WRITE);
+						return;
+					}
+					pendingWrites.removeFirst();
+				}
+
+			} catch (IOException e) {
+				e.printStackTrace();
+				pendingWrites.clear();
+				updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs("Unable to write to socket, IO error", 0));
+			}
+		}
+	}
+
 	private KrollDict buildConnectedCallbackArgs()
 	{
 		KrollDict callbackArgs = new KrollDict();
@@ -398,11 +661,15 @@ public class TCPProxy extends KrollProxy implements TiStream
 			throw new IllegalArgumentException("Invalid number of arguments");
 		}
 
-		if (inputStream == null) {
+		if (!nonBlocking && inputStream == null) {
 			inputStream = clientSocket.getInputStream();
 		}
 
 		try {
+			if (nonBlocking) {
+				return readNonBlocking(bufferProxy, offset, length);
+			}
+
 			return TiStreamHelper.read(inputStream, bufferProxy, offset, length);
 
 		} catch (IOException e) {
@@ -463,6 +730,10 @@ public class TCPProxy extends KrollProxy implements TiStream
 		}
 
 		try {
+			if (nonBlocking) {
+				return writeNonBlocking(bufferProxy, offset, length);
+			}
+
 			return TiStreamHelper.write(clientSocket.getOutputStream(), bufferProxy, offset, length);
 
 		} catch (IOException e) {
@@ -0,0 +1,220 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+
+package ti.modules.titanium.network.socket;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiConfig;
+
+/**
+ * A single I/O thread that multiplexes every non-blocking TCP socket.
+ *
+ * Registration and interest changes are queued and applied on the selector
+ * thread, since changing a key while another thread is blocked in select()
+ * can block on some implementations. Handlers are called on the selector
+ * thread and must not block.
+ */
+class TiSocketSelector implements Runnable
+{
+	private static final String LCAT = "TiSocketSelector";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	// How often pending connect timeouts are checked when the selector is idle.
+	private static final long SELECT_TIMEOUT = 1000;
+
+	interface Handler
+	{
+		/**
+		 * Called when the channel is ready for one or more of its interest ops.
+		 * @param readyOps the ready operations, see {@link SelectionKey#readyOps()}.
+		 */
+		void onReady(SelectionKey key, int readyOps);
+
+		/**
+		 * Called when the deadline passed to {@link TiSocketSelector#register} expires
+		 * before the handler cleared it.
+		 */
+		void onTimeout(SelectionKey key);
+	}
+
+	/**
+	 * Attached to every key so the selector can look up the handler and deadline.
+	 */
+	static class Registration
+	{
+		final Handler handler;
+		volatile long deadline;
+
+		Registration(Handler handler, long deadline)
+		{
+			this.handler = handler;
+			this.deadline = deadline;
+		}
+	}
+
+	private static TiSocketSelector instance;
+
+	private Selector selector;
+	private Thread thread;
+	private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+
+	static synchronized TiSocketSelector getInstance() throws IOException
+	{
+		if (instance == null) {
+			instance = new TiSocketSelector();
+		}
+		return instance;
+	}
+
+	private TiSocketSelector() throws IOException
+	{
+		selector = Selector.open();
+		thread = new Thread(this, "TiSocketSelector");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Registers a non-blocking channel.
+	 * @param deadline time in milliseconds at which {@link Handler#onTimeout} is called, or 0 for none.
+	 */
+	void register(final SelectableChannel channel, final int ops, final Handler handler, final long deadline)
+	{
+		post(new Runnable() {
+			public void run()
+			{
+				try {
+					channel.register(selector, ops, new Registration(handler, deadline));
+
+				} catch (ClosedChannelException e) {
+					Log.w(LCAT, "Unable to register closed channel");
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds ops to the interest set of a registered channel.
+	 */
+	void addInterest(final SelectableChannel channel, final int ops)
+	{
+		post(new Runnable() {
+			public void run()
+			{
+				SelectionKey key = channel.keyFor(selector);
+				try {
+					if (key != null && key.isValid()) {
+						key.interestOps(key.interestOps() | ops);
+					}
+
+				} catch (CancelledKeyException e) {
+					// channel was closed in the meantime
+				}
+			}
+		});
+	}
+
+	private void post(Runnable task)
+	{
+		pendingTasks.offer(task);
+		selector.wakeup();
+	}
+
+	public void run()
+	{
+		while (true) {
+			try {
+				Runnable task;
+				while ((task = pendingTasks.poll()) != null) {
+					runTask(task);
+				}
+
+				selector.select(SELECT_TIMEOUT);
+
+				Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+				while (selected.hasNext()) {
+					SelectionKey key = selected.next();
+					selected.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+
+					int readyOps = key.readyOps();
+					// Stop watching the ready ops until the handler asks for them again,
+					// otherwise level triggered readiness spins while JS catches up.
+					key.interestOps(key.interestOps() & ~readyOps);
+					dispatch(key, readyOps);
+				}
+
+				checkTimeouts();
+
+			} catch (IOException e) {
+				Log.e(LCAT, "Selector failed", e);
+
+			} catch (CancelledKeyException e) {
+				if (DBG) {
+					Log.d(LCAT, "Key cancelled during dispatch");
+				}
+			}
+		}
+	}
+
+	/*
+	 * Exceptions from tasks and handlers are logged, since an uncaught one would
+	 * end the thread and with it every non-blocking socket of the application.
+	 */
+	private void runTask(Runnable task)
+	{
+		try {
+			task.run();
+
+		} catch (RuntimeException e) {
+			Log.e(LCAT, "Selector task failed", e);
+		}
+	}
+
+	private void dispatch(SelectionKey key, int readyOps)
+	{
+		Registration registration = (Registration) key.attachment();
+		try {
+			registration.handler.onReady(key, readyOps);
+
+		} catch (RuntimeException e) {
+			Log.e(LCAT, "Socket handler failed", e);
+		}
+	}
+
+	private void checkTimeouts()
+	{
+		long now = System.currentTimeMillis();
+		for (SelectionKey key : selector.keys()) {
+			if (!key.isValid()) {
+				continue;
+			}
+
+			Registration registration = (Registration) key.attachment();
+			if (registration.deadline > 0 && registration.deadline <= now) {
+				registration.deadline = 0;
+				try {
+					registration.handler.onTimeout(key);
+
+				} catch (RuntimeException e) {
+					Log.e(LCAT, "Socket timeout handler failed", e);
+				}
+			}
+		}
+	}
+}
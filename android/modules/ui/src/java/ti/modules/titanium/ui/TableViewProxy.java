@@ -1,6 +1,6 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
@@ -28,6 +28,7 @@ import android.app.Activity;
 import android.os.Message;
 
 @Kroll.proxy(creatableInModule = UIModule.class, propertyAccessors = { 
+	TiC.PROPERTY_FILTER_ANCHORED,
 	TiC.PROPERTY_FILTER_ATTRIBUTE,
 	TiC.PROPERTY_FILTER_CASE_INSENSITIVE,
 	TiC.PROPERTY_HEADER_TITLE,
@@ -52,6 +53,7 @@ public class TableViewProxy extends TiViewProxy
 	private static final int MSG_INSERT_ROW = TiViewProxy.MSG_LAST_ID + 5005;
 	private static final int MSG_APPEND_ROW = TiViewProxy.MSG_LAST_ID + 5006;
 	private static final int MSG_SCROLL_TO_TOP = TiViewProxy.MSG_LAST_ID + 5007;
+	private static final int MSG_UPDATE_ROW = TiViewProxy.MSG_LAST_ID + 5008;
 
 	public static final String CLASSNAME_DEFAULT = "__default__";
 	public static final String CLASSNAME_HEADER = "__header__";
@@ -132,31 +134,46 @@ public class TableViewProxy extends TiViewProxy
 
 	@Kroll.method
 	public void updateRow(Object row, Object data, @Kroll.argument(optional = true) KrollDict options)
+	{
+		if (TiApplication.isUIThread()) {
+			handleUpdateRow(row, data);
+			return;
+		}
+
+		TiMessenger.sendBlockingMainMessage(getMainHandler().obtainMessage(MSG_UPDATE_ROW), new Object[] { row, data });
+	}
+
+	private void handleUpdateRow(Object row, Object data)
 	{
 		TableViewSectionProxy sectionProxy = null;
+		int index = -1;
 		int rowIndex = -1;
 		if (row instanceof Number) {
 			RowResult rr = new RowResult();
-			rowIndex = ((Number) row).intValue();
-			locateIndex(rowIndex, rr);
-			sectionProxy = rr.section;
+			index = ((Number) row).intValue();
+			if (locateIndex(index, rr)) {
+				sectionProxy = rr.section;
+				rowIndex = rr.rowIndexInSection;
+			}
 		} else if (row instanceof TableViewRowProxy) {
 			ArrayList<TableViewSectionProxy> sections = getSectionsArray();
+			int rowCount = 0;
 			sectionLoop: for (int i = 0; i < sections.size(); i++) {
 				ArrayList<TableViewRowProxy> rows = sections.get(i).rows;
 				for (int j = 0; j < rows.size(); j++) {
 					if (rows.get(j) == row) {
 						sectionProxy = sections.get(i);
+						index = rowCount + j;
 						rowIndex = j;
 						break sectionLoop;
 					}
 				}
+				rowCount += rows.size();
 			}
 		}
 		if (sectionProxy != null) {
 			sectionProxy.updateRowAt(rowIndex, rowProxyFor(data));
-			getTableView().setModelDirty();
-			updateView();
+			getTableView().rowUpdated(index);
 		}
 	}
 
@@ -186,7 +203,15 @@ public class TableViewProxy extends TiViewProxy
 		ArrayList<TableViewSectionProxy> sections = getSectionsArray();
 		if (sections.size() == 0) {
 			processData(rowList);
+			getTableView().setModelDirty();
+			updateView();
+
 		} else {
+			int sectionCount = sections.size();
+			TableViewSectionProxy section = sections.get(sectionCount - 1);
+			int indexInSection = section.rows.size();
+			int index = getRowCount();
+
 			for (int i = 0; i < rowList.length; i++) {
 				TableViewRowProxy rowProxy = rowProxyFor(rowList[i]);
 
@@ -198,10 +223,16 @@ public class TableViewProxy extends TiViewProxy
 				rowProxy.setProperty(TiC.PROPERTY_SECTION, addedToSection);
 				rowProxy.setProperty(TiC.PROPERTY_PARENT, addedToSection);
 			}
-		}
 
-		getTableView().setModelDirty();
-		updateView();
+			if (sections.size() == sectionCount) {
+				// All rows went to the last section, so only they need to be added to the view
+				getTableView().rowsInserted(index, sectionCount - 1, indexInSection, section.rows.size() - indexInSection);
+
+			} else {
+				getTableView().setModelDirty();
+				updateView();
+			}
+		}
 	}
 
 	@Kroll.method
@@ -224,8 +255,7 @@ public class TableViewProxy extends TiViewProxy
 		RowResult rr = new RowResult();
 		if (locateIndex(index, rr)) {
 			rr.section.removeRowAt(rr.rowIndexInSection);
-			getTableView().setModelDirty();
-			updateView();
+			getTableView().rowsRemoved(index, 1);
 		} else {
 			throw new IllegalStateException("Index out of range. Non-existent row at " + index);
 		}
@@ -281,6 +311,7 @@ public class TableViewProxy extends TiViewProxy
 			if (locateIndex(index, rr)) {
 				TableViewRowProxy rowProxy = rowProxyFor(data);
 				rr.section.insertRowAt(rr.rowIndexInSection, rowProxy);
+				getTableView().rowsInserted(index, rr.sectionIndex, rr.rowIndexInSection, 1);
 			} else {
 				throw new IllegalStateException("Index out of range. Non-existent row at " + index);
 			}
@@ -288,9 +319,9 @@ public class TableViewProxy extends TiViewProxy
 			// Add first row.
 			Object[] args = { rowProxyFor(data) };
 			processData(args);
+			getTableView().setModelDirty();
+			updateView();
 		}
-		getTableView().setModelDirty();
-		updateView();
 	}
 
 	@Kroll.method
@@ -316,8 +347,7 @@ public class TableViewProxy extends TiViewProxy
 			// TODO check for section
 			TableViewRowProxy rowProxy = rowProxyFor(data);
 			rr.section.insertRowAt(rr.rowIndexInSection + 1, rowProxy);
-			getTableView().setModelDirty();
-			updateView();
+			getTableView().rowsInserted(index + 1, rr.sectionIndex, rr.rowIndexInSection + 1, 1);
 		} else {
 			throw new IllegalStateException("Index out of range. Non-existent row at " + index);
 		}
@@ -473,18 +503,28 @@ public class TableViewProxy extends TiViewProxy
 		return rowProxy;
 	}
 
+	private int getRowCount()
+	{
+		int rowCount = 0;
+		for (TableViewSectionProxy section : getSectionsArray()) {
+			rowCount += section.rows.size();
+		}
+		return rowCount;
+	}
+
 	private boolean locateIndex(int index, RowResult rowResult)
 	{
 		boolean found = false;
 		int rowCount = 0;
 		int sectionIndex = 0;
 
-		for (TableViewSectionProxy section : getSections()) {
-			int sectionRowCount = (int) section.getRowCount();
+		// Use the live lists, getSections() and getRows() copy them for Javascript
+		for (TableViewSectionProxy section : getSectionsArray()) {
+			int sectionRowCount = section.rows.size();
 			if (sectionRowCount + rowCount > index) {
 				rowResult.section = section;
 				rowResult.sectionIndex = sectionIndex;
-				rowResult.row = section.getRows()[index - rowCount];
+				rowResult.row = section.rows.get(index - rowCount);
 				rowResult.rowIndexInSection = index - rowCount;
 				found = true;
 				break;
@@ -498,6 +538,17 @@ public class TableViewProxy extends TiViewProxy
 		return found;
 	}
 
+	/**
+	 * Lets the table know a property of one of its rows changed. Can be called from any thread.
+	 */
+	public void rowPropertyChanged(String name)
+	{
+		TiUIView view = peekView();
+		if (view instanceof TiUITableView) {
+			((TiUITableView) view).rowPropertyChanged(name);
+		}
+	}
+
 	public void updateView()
 	{
 		if (TiApplication.isUIThread()) {
@@ -574,6 +625,12 @@ public class TableViewProxy extends TiViewProxy
 		} else if (msg.what == MSG_SCROLL_TO_TOP) {
 			getTableView().scrollToTop(msg.arg1);
 			return true;
+		} else if (msg.what == MSG_UPDATE_ROW) {
+			AsyncResult result = (AsyncResult) msg.obj;
+			Object[] args = (Object[]) result.getArg();
+			handleUpdateRow(args[0], args[1]);
+			result.setResult(null);
+			return true;
 		}
 
 		return super.handleMessage(msg);
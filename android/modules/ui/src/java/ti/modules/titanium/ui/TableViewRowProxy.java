@@ -194,6 +194,7 @@ public class TableViewRowProxy extends TiViewProxy
 		super.firePropertyChanged(name, oldValue, newValue);
 		TableViewProxy table = getTable();
 		if (table != null) {
+			table.rowPropertyChanged(name);
 			table.updateView();
 		}
 	}
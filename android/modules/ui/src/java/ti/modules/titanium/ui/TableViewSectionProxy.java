@@ -53,6 +53,11 @@ public class TableViewSectionProxy extends TiViewProxy
 		return rows.toArray(new TableViewRowProxy[rows.size()]);
 	}
 
+	public ArrayList<TableViewRowProxy> getRowsArray()
+	{
+		return rows;
+	}
+
 	@Kroll.getProperty @Kroll.method
 	public double getRowCount() {
 		return rows.size();
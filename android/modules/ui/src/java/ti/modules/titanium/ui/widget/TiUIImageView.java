@@ -40,6 +40,7 @@ import ti.modules.titanium.ui.ImageViewProxy;
 import ti.modules.titanium.ui.widget.TiImageView.OnSizeChangeListener;
 import android.app.Activity;
 import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
@@ -948,7 +949,13 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 			Drawable drawable = view.getImageDrawable();
 			if (drawable != null && drawable instanceof BitmapDrawable) {
 				Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
-				return bitmap == null ? null : TiBlob.blobFromImage(bitmap);
+				if (bitmap == null) {
+					return null;
+				}
+				// The blob keeps the bitmap until it's encoded, and the view recycles
+				// its bitmap when the image changes, so give the blob its own copy.
+				Config config = bitmap.getConfig();
+				return TiBlob.blobFromImage(bitmap.copy(config != null ? config : Config.ARGB_8888, false));
 			}
 		}
 
@@ -1,6 +1,6 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
@@ -71,6 +71,29 @@ public class TiUITableView extends TiUIView
 		tableView.dataSetChanged();
 	}
 
+	public void rowsInserted(int index, int sectionIndex, int indexInSection, int count)
+	{
+		tableView.rowsInserted(index, sectionIndex, indexInSection, count);
+	}
+
+	public void rowsRemoved(int index, int count)
+	{
+		tableView.rowsRemoved(index, count);
+	}
+
+	public void rowUpdated(int index)
+	{
+		tableView.rowUpdated(index);
+	}
+
+	public void rowPropertyChanged(String name)
+	{
+		TiTableView view = tableView;
+		if (view != null) {
+			view.rowPropertyChanged(name);
+		}
+	}
+
 	public void scrollToIndex(final int index)
 	{
 		tableView.getListView().setSelection(index);
@@ -156,6 +179,10 @@ public class TiUITableView extends TiUIView
 			filterCaseInsensitive = TiConvert.toBoolean(d, TiC.PROPERTY_FILTER_CASE_INSENSITIVE);
 		}
 		tableView.setFilterCaseInsensitive(filterCaseInsensitive);
+
+		if (d.containsKey(TiC.PROPERTY_FILTER_ANCHORED)) {
+			tableView.setFilterAnchored(TiConvert.toBoolean(d, TiC.PROPERTY_FILTER_ANCHORED));
+		}
 		super.processProperties(d);
 	}
 
@@ -193,6 +220,15 @@ public class TiUITableView extends TiUIView
 		}
 		if (key.equals(TiC.PROPERTY_SEPARATOR_COLOR)) {
 			tableView.setSeparatorColor(TiConvert.toString(newValue));
+		} else if (key.equals(TiC.PROPERTY_FILTER_ATTRIBUTE)) {
+			tableView.setFilterAttribute(TiConvert.toString(newValue));
+			tableView.refilter();
+		} else if (key.equals(TiC.PROPERTY_FILTER_CASE_INSENSITIVE)) {
+			tableView.setFilterCaseInsensitive(TiConvert.toBoolean(newValue));
+			tableView.refilter();
+		} else if (key.equals(TiC.PROPERTY_FILTER_ANCHORED)) {
+			tableView.setFilterAnchored(TiConvert.toBoolean(newValue));
+			tableView.refilter();
 		} else {
 			super.propertyChanged(key, oldValue, newValue, proxy);
 		}
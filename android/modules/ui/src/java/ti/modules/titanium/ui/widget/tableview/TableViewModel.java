@@ -1,6 +1,6 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
@@ -42,10 +42,15 @@ public class TableViewModel
 		public String className;
 		public TiViewProxy proxy;
 		public Object rowData;
+
+		// Maintained by TableViewSearchIndex
+		String searchText;
+		int searchGeneration = -1;
 	}
 	private TableViewProxy proxy;
 
 	private boolean dirty;
+	private int modCount = 0;
 
 	private ArrayList<Item> viewModel;
 
@@ -93,6 +98,16 @@ public class TableViewModel
 		return newItem;
 	}
 
+	private Item itemForRow(int index, int sectionIndex, int indexInSection, TableViewRowProxy row) {
+		Item item = new Item(index);
+		item.sectionIndex = sectionIndex;
+		item.indexInSection = indexInSection;
+		item.proxy = row;
+		item.rowData = row.getProperties().get("rowData");
+		item.className = classNameForRow(row);
+		return item;
+	}
+
 	public int getRowCount() {
 		if (viewModel == null) {
 			return 0;
@@ -108,6 +123,7 @@ public class TableViewModel
 	public ArrayList<Item> getViewModel()
 	{
 		if (dirty) {
+			modCount++;
 			viewModel = new ArrayList<Item>();
 			int sectionIndex = 0;
 			int indexInSection = 0;
@@ -131,14 +147,7 @@ public class TableViewModel
 						}
 					}
 					for (TableViewRowProxy row : section.getRows()) {
-						Item item = new Item(index);
-						item.sectionIndex = sectionIndex;
-						item.indexInSection = indexInSection;
-						item.proxy = row;
-						item.rowData = row.getProperties().get("rowData");
-						item.className = classNameForRow(row);
-
-						viewModel.add(item);
+						viewModel.add(itemForRow(index, sectionIndex, indexInSection, row));
 						index++;
 						indexInSection++;
 					}
@@ -173,6 +182,131 @@ public class TableViewModel
 		return position;
 	}
 
+	/**
+	 * Returns the view position of the row at index, or -1 if there is no such row.
+	 * Items are ordered by index, and headers and footers share the index of the row
+	 * that follows them, so the row is the last item with an index of at most index.
+	 */
+	public int getRowPosition(int index) {
+		if (viewModel == null || dirty || index < 0) {
+			return -1;
+		}
+
+		int low = 0;
+		int high = viewModel.size() - 1;
+		int position = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (viewModel.get(mid).index <= index) {
+				position = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		if (position >= 0) {
+			Item item = viewModel.get(position);
+			if (item.index == index && item.proxy instanceof TableViewRowProxy) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds items for rows that were inserted into a section, instead of rebuilding the model.
+	 * @param index the table index of the first inserted row.
+	 * @param sectionIndex the index of the section the rows were inserted into.
+	 * @param indexInSection the index of the first inserted row within its section.
+	 * @param count the number of inserted rows.
+	 * @return the view position of the first new item, or -1 if the model has to be rebuilt.
+	 */
+	public int insertRows(int index, int sectionIndex, int indexInSection, int count) {
+		if (viewModel == null || dirty || count <= 0) {
+			return -1;
+		}
+
+		// Insert after the previous row of the section, or before the row that was first in it
+		int neighbour = getRowPosition(indexInSection > 0 ? index - 1 : index);
+		if (neighbour < 0 || viewModel.get(neighbour).sectionIndex != sectionIndex) {
+			// i.e. the section was empty, or the structure of the table changed
+			return -1;
+		}
+		int position = indexInSection > 0 ? neighbour + 1 : neighbour;
+
+		ArrayList<TableViewRowProxy> rows = getSection(sectionIndex).getRowsArray();
+		ArrayList<Item> items = new ArrayList<Item>(count);
+		for (int i = 0; i < count; i++) {
+			items.add(itemForRow(index + i, sectionIndex, indexInSection + i, rows.get(indexInSection + i)));
+		}
+		viewModel.addAll(position, items);
+		shiftItems(position + count, sectionIndex, count);
+		modCount++;
+
+		return position;
+	}
+
+	/**
+	 * Removes the items of rows that were removed from a section, instead of rebuilding the model.
+	 * @param index the table index of the first removed row.
+	 * @param count the number of removed rows, which must all belong to the same section.
+	 * @return the view position of the first removed item, or -1 if the model has to be rebuilt.
+	 */
+	public int removeRows(int index, int count) {
+		int position = getRowPosition(index);
+		if (position < 0 || count <= 0 || position + count > viewModel.size()) {
+			return -1;
+		}
+
+		int sectionIndex = viewModel.get(position).sectionIndex;
+		Item last = viewModel.get(position + count - 1);
+		if (last.index != index + count - 1 || last.sectionIndex != sectionIndex) {
+			return -1;
+		}
+
+		viewModel.subList(position, position + count).clear();
+		shiftItems(position, sectionIndex, -count);
+		modCount++;
+
+		return position;
+	}
+
+	/**
+	 * Refreshes the item of a row that was replaced within its section.
+	 * @return the view position of the row, or -1 if the model has to be rebuilt.
+	 */
+	public int updateRow(int index) {
+		int position = getRowPosition(index);
+		if (position < 0) {
+			return -1;
+		}
+
+		Item item = viewModel.get(position);
+		ArrayList<TableViewRowProxy> rows = getSection(item.sectionIndex).getRowsArray();
+		if (item.indexInSection >= rows.size()) {
+			return -1;
+		}
+		viewModel.set(position, itemForRow(index, item.sectionIndex, item.indexInSection, rows.get(item.indexInSection)));
+		modCount++;
+
+		return position;
+	}
+
+	/*
+	 * Moves the items from position on by delta rows, after rows were added or removed before them.
+	 */
+	private void shiftItems(int position, int sectionIndex, int delta) {
+		int size = viewModel.size();
+		for (int i = position; i < size; i++) {
+			Item item = viewModel.get(i);
+			item.index += delta;
+			if (item.sectionIndex == sectionIndex && item.proxy instanceof TableViewRowProxy) {
+				item.indexInSection += delta;
+			}
+		}
+	}
+
 	public int getRowHeight(int position, int defaultHeight) {
 		int rowHeight = defaultHeight;
 
@@ -188,4 +322,11 @@ public class TableViewModel
 	public void setDirty() {
 		dirty = true;
 	}
+
+	/**
+	 * Returns a count that changes whenever items are added, removed or replaced.
+	 */
+	public int getModCount() {
+		return modCount;
+	}
 }
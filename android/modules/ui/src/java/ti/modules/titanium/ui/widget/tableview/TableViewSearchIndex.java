@@ -0,0 +1,293 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.ui.widget.tableview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appcelerator.titanium.util.TiConvert;
+
+import ti.modules.titanium.ui.widget.tableview.TableViewModel.Item;
+
+/**
+ * The normalized filter attribute of every item in a table, so searching doesn't
+ * have to read and convert row properties on every keystroke.
+ *
+ * Texts are computed on the UI thread, once per item, and captured in immutable
+ * snapshots that can be searched on the shared filter thread. Items whose texts are
+ * still valid are reused, so after rows change only the new rows are read again.
+ */
+public class TableViewSearchIndex
+{
+	private static ExecutorService filterExecutor;
+
+	private String attribute;
+	private boolean caseInsensitive = true;
+	private boolean anchored = false;
+
+	// Bumped when texts computed so far can no longer be used. Can be bumped from any thread.
+	private AtomicInteger generation = new AtomicInteger();
+	private Snapshot snapshot;
+
+	/**
+	 * The search texts of a table at one point, by view model position.
+	 */
+	public static class Snapshot
+	{
+		final int modCount;
+		final int generation;
+		final boolean anchored;
+		final String[] texts;
+
+		// Positions ordered by text, built on first use by anchored searches
+		private Integer[] sortedPositions;
+
+		// The last search, so a longer filter only has to check its matches
+		private String lastFilter;
+		private int[] lastResult;
+
+		Snapshot(int modCount, int generation, boolean anchored, String[] texts)
+		{
+			this.modCount = modCount;
+			this.generation = generation;
+			this.anchored = anchored;
+			this.texts = texts;
+		}
+
+		/**
+		 * Returns the view model positions of the items that match filter, in order.
+		 * Items without the filter attribute always match. Safe to call from any thread.
+		 */
+		public synchronized int[] search(String filter)
+		{
+			int[] result;
+			if (lastFilter != null && filter.startsWith(lastFilter)) {
+				// Typing narrows the results down, so only the previous matches can still match
+				result = searchPositions(filter, lastResult);
+
+			} else if (anchored) {
+				result = searchSorted(filter);
+
+			} else {
+				result = searchPositions(filter, null);
+			}
+
+			lastFilter = filter;
+			lastResult = result;
+			return result;
+		}
+
+		private int[] searchPositions(String filter, int[] positions)
+		{
+			int count = positions != null ? positions.length : texts.length;
+			int[] matches = new int[count];
+			int matchCount = 0;
+			for (int i = 0; i < count; i++) {
+				int position = positions != null ? positions[i] : i;
+				if (TableViewSearchIndex.matches(texts[position], filter, anchored)) {
+					matches[matchCount++] = position;
+				}
+			}
+			return trim(matches, matchCount);
+		}
+
+		/*
+		 * Texts starting with filter are adjacent in sorted order, so they're found by binary search.
+		 */
+		private int[] searchSorted(String filter)
+		{
+			if (sortedPositions == null) {
+				sortedPositions = new Integer[texts.length];
+				for (int i = 0; i < texts.length; i++) {
+					sortedPositions[i] = i;
+				}
+				Arrays.sort(sortedPositions, new Comparator<Integer>() {
+					public int compare(Integer a, Integer b)
+					{
+						return compareTexts(texts[a], texts[b]);
+					}
+				});
+			}
+
+			// Items without a text sort first and are always kept
+			int low = 0;
+			int high = sortedPositions.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (compareTexts(texts[sortedPositions[mid]], filter) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			int[] matches = new int[sortedPositions.length];
+			int matchCount = 0;
+			for (int i = 0; i < sortedPositions.length && texts[sortedPositions[i]] == null; i++) {
+				matches[matchCount++] = sortedPositions[i];
+			}
+			for (int i = low; i < sortedPositions.length && texts[sortedPositions[i]].startsWith(filter); i++) {
+				matches[matchCount++] = sortedPositions[i];
+			}
+
+			int[] result = trim(matches, matchCount);
+			Arrays.sort(result);
+			return result;
+		}
+
+		private static int compareTexts(String a, String b)
+		{
+			if (a == null) {
+				return b == null ? 0 : -1;
+			}
+			if (b == null) {
+				return 1;
+			}
+			return a.compareTo(b);
+		}
+
+		private static int[] trim(int[] values, int length)
+		{
+			if (length == values.length) {
+				return values;
+			}
+			int[] trimmed = new int[length];
+			System.arraycopy(values, 0, trimmed, 0, length);
+			return trimmed;
+		}
+	}
+
+	public void setAttribute(String attribute)
+	{
+		if (attribute == null ? this.attribute != null : !attribute.equals(this.attribute)) {
+			this.attribute = attribute;
+			invalidate();
+		}
+	}
+
+	public void setCaseInsensitive(boolean caseInsensitive)
+	{
+		if (this.caseInsensitive != caseInsensitive) {
+			this.caseInsensitive = caseInsensitive;
+			invalidate();
+		}
+	}
+
+	public void setAnchored(boolean anchored)
+	{
+		this.anchored = anchored;
+	}
+
+	public boolean isAnchored()
+	{
+		return anchored;
+	}
+
+	/**
+	 * Drops all computed texts, i.e. after the filter attribute of a row changed.
+	 * Can be called from any thread.
+	 */
+	public void invalidate()
+	{
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * Returns filter text normalized the same way as the indexed texts.
+	 */
+	public String normalize(String text)
+	{
+		if (text != null && caseInsensitive) {
+			return text.toLowerCase();
+		}
+		return text;
+	}
+
+	/**
+	 * Returns the normalized search text of item, or null if its row doesn't have the
+	 * filter attribute. Must be called on the UI thread.
+	 */
+	public String getText(Item item)
+	{
+		return getText(item, generation.get());
+	}
+
+	private String getText(Item item, int currentGeneration)
+	{
+		if (item.searchGeneration != currentGeneration) {
+			item.searchText = null;
+			if (attribute != null && item.proxy != null && item.proxy.hasProperty(attribute)) {
+				item.searchText = normalize(TiConvert.toString(item.proxy.getProperty(attribute)));
+			}
+			item.searchGeneration = currentGeneration;
+		}
+		return item.searchText;
+	}
+
+	/**
+	 * Returns whether item matches the normalized filter. Must be called on the UI thread.
+	 */
+	public boolean matches(Item item, String filter)
+	{
+		return matches(getText(item), filter, anchored);
+	}
+
+	static boolean matches(String text, String filter, boolean anchored)
+	{
+		if (text == null) {
+			return true;
+		}
+		return anchored ? text.startsWith(filter) : text.indexOf(filter) >= 0;
+	}
+
+	/**
+	 * Returns the texts of the current items of model, reusing the last snapshot when
+	 * neither the model nor the index changed since. Must be called on the UI thread.
+	 */
+	public Snapshot getSnapshot(TableViewModel model)
+	{
+		ArrayList<Item> items = model.getViewModel();
+		int modCount = model.getModCount();
+		int currentGeneration = generation.get();
+		if (snapshot != null && snapshot.modCount == modCount && snapshot.generation == currentGeneration
+			&& snapshot.anchored == anchored) {
+			return snapshot;
+		}
+
+		String[] texts = new String[items.size()];
+		for (int i = 0; i < texts.length; i++) {
+			texts[i] = getText(items.get(i), currentGeneration);
+		}
+		snapshot = new Snapshot(modCount, currentGeneration, anchored, texts);
+		return snapshot;
+	}
+
+	/**
+	 * Runs a search on the filter thread shared by all tables. Searches run one at a time in order.
+	 */
+	public static void execute(Runnable search)
+	{
+		synchronized (TableViewSearchIndex.class) {
+			if (filterExecutor == null) {
+				filterExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, "TiTableViewFilter");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+		}
+		filterExecutor.execute(search);
+	}
+}
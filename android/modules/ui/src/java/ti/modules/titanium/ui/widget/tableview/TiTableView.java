@@ -1,6 +1,6 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
@@ -14,6 +14,7 @@ import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.kroll.common.TiConfig;
+import org.appcelerator.titanium.TiApplication;
 import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.TiContext;
 import org.appcelerator.titanium.proxy.TiViewProxy;
@@ -29,6 +30,8 @@ import ti.modules.titanium.ui.widget.tableview.TableViewModel.Item;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
@@ -62,9 +65,13 @@ public class TiTableView extends FrameLayout
 
 	private String filterAttribute;
 	private String filterText;
+	private TableViewSearchIndex searchIndex;
+	private Handler mainHandler;
+
+	// Identifies the latest filterBy, so results of earlier ones are dropped
+	private volatile int filterRequest = 0;
 
 	private TableViewProxy proxy;
-	private boolean filterCaseInsensitive = true;
 	private TiTableViewSelector selector;
 
 	public interface OnItemClickedListener {
@@ -77,12 +84,16 @@ public class TiTableView extends FrameLayout
 
 	class TTVListAdapter extends BaseAdapter {
 		TableViewModel viewModel;
+		// View model positions of the items that pass the filter. Unused when not filtered,
+		// since every item is shown in order then.
 		ArrayList<Integer> index;
+		private int count;
 		private boolean filtered;
+		private String filter;
 
 		TTVListAdapter(TableViewModel viewModel) {
 			this.viewModel = viewModel;
-			this.index = new ArrayList<Integer>(viewModel.getRowCount());
+			this.index = new ArrayList<Integer>();
 			reIndexItems();
 		}
 
@@ -97,53 +108,135 @@ public class TiTableView extends FrameLayout
 
 		public void reIndexItems() {
 			ArrayList<Item> items = viewModel.getViewModel();
-			int count = items.size();
+			if (isFilterActive()) {
+				String filter = searchIndex.normalize(filterText);
+				setFilterResult(filter, searchIndex.getSnapshot(viewModel).search(filter));
+
+			} else {
+				// Class names are registered as items are first shown, in getItemViewType
+				index.clear();
+				filtered = false;
+				filter = null;
+				count = items.size();
+			}
+		}
+
+		/**
+		 * Shows only the view model positions in result, which were found for filter.
+		 */
+		public void setFilterResult(String filter, int[] result) {
 			index.clear();
+			index.ensureCapacity(result.length);
+			for (int position : result) {
+				index.add(position);
+			}
+			this.filter = filter;
+			filtered = true;
+			count = index.size();
+		}
 
-			filtered = false;
-			if (filterAttribute != null && filterText != null && filterAttribute.length() > 0 && filterText.length() > 0) {
-				filtered = true;
-				String filter = filterText;
-				if (filterCaseInsensitive) {
-					filter = filterText.toLowerCase();
-				}
-				for(int i = 0; i < count; i++) {
-					boolean keep = true;
-					Item item = items.get(i);
-					registerClassName(item.className);
-					if (item.proxy.hasProperty(filterAttribute)) {
-						String t = TiConvert.toString(item.proxy.getProperty(filterAttribute));
-						if (filterCaseInsensitive) {
-							t = t.toLowerCase();
-						}
-						if(t.indexOf(filter) < 0) {
-							keep = false;
-						}
-					}
-					if (keep) {
-						index.add(i);
-					}
+		protected boolean matchesFilter(Item item) {
+			return searchIndex.matches(item, filter);
+		}
+
+		/*
+		 * Returns the index of the first filtered item at or after the view model position.
+		 */
+		private int findIndex(int position) {
+			int low = 0;
+			int high = index.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (index.get(mid) < position) {
+					low = mid + 1;
+				} else {
+					high = mid;
 				}
-			} else {
-				for(int i = 0; i < count; i++) {
-					Item item = items.get(i);
-					registerClassName(item.className);
-					index.add(i);
+			}
+			return low;
+		}
+
+		/**
+		 * Patches the index after count items were inserted into the view model at position.
+		 */
+		public void itemsInserted(int position, int count) {
+			if (!filtered) {
+				this.count += count;
+				return;
+			}
+
+			int i = findIndex(position);
+			for (int j = i; j < index.size(); j++) {
+				index.set(j, index.get(j) + count);
+			}
+
+			ArrayList<Item> items = viewModel.getViewModel();
+			ArrayList<Integer> kept = new ArrayList<Integer>();
+			for (int p = position; p < position + count; p++) {
+				Item item = items.get(p);
+				registerClassName(item.className);
+				if (matchesFilter(item)) {
+					kept.add(p);
 				}
 			}
+			index.addAll(i, kept);
+			this.count = index.size();
+		}
+
+		/**
+		 * Patches the index after count items were removed from the view model at position.
+		 */
+		public void itemsRemoved(int position, int count) {
+			if (!filtered) {
+				this.count -= count;
+				return;
+			}
+
+			int i = findIndex(position);
+			int end = findIndex(position + count);
+			index.subList(i, end).clear();
+			for (int j = i; j < index.size(); j++) {
+				index.set(j, index.get(j) - count);
+			}
+			this.count = index.size();
+		}
+
+		/**
+		 * Patches the index after the item at position was replaced.
+		 * @return the adapter position of the item, or -1 if it's filtered out.
+		 */
+		public int itemChanged(int position) {
+			Item item = viewModel.getViewModel().get(position);
+			registerClassName(item.className);
+			if (!filtered) {
+				return position;
+			}
+
+			int i = findIndex(position);
+			boolean listed = i < index.size() && index.get(i) == position;
+			boolean keep = matchesFilter(item);
+			if (keep && !listed) {
+				index.add(i, position);
+			} else if (!keep && listed) {
+				index.remove(i);
+			}
+			count = index.size();
+			return keep ? i : -1;
 		}
 
 		public int getCount() {
-			//return viewModel.getViewModel().length();
-			return index.size();
+			return count;
 		}
 
 		public Object getItem(int position) {
-			if (position >= index.size()) {
+			if (position >= count) {
 				return null;
 			}
 
-			return viewModel.getViewModel().get(index.get(position));
+			if (filtered) {
+				return viewModel.getViewModel().get(index.get(position));
+			}
+			return viewModel.getViewModel().get(position);
 		}
 
 		public long getItemId(int position) {
@@ -243,6 +336,13 @@ public class TiTableView extends FrameLayout
 			super.notifyDataSetChanged();
 		}
 
+		/**
+		 * Notifies the list of changes that were already patched into the index.
+		 */
+		public void notifyItemsChanged() {
+			super.notifyDataSetChanged();
+		}
+
 		public boolean isFiltered() {
 			return filtered;
 		}
@@ -260,6 +360,8 @@ public class TiTableView extends FrameLayout
 		rowTypes.put(TableViewProxy.CLASSNAME_DEFAULT, rowTypeCounter.incrementAndGet());
 
 		this.viewModel = new TableViewModel(proxy);
+		this.searchIndex = new TableViewSearchIndex();
+		this.mainHandler = new Handler(Looper.getMainLooper());
 		this.listView = new ListView(getContext());
 		listView.setId(TI_TABLE_VIEW_ID);
 
@@ -374,7 +476,7 @@ public class TiTableView extends FrameLayout
 	}
 	
 	protected Item getItemAtPosition(int position) {
-		return viewModel.getViewModel().get(adapter.index.get(position));
+		return (Item) adapter.getItem(position);
 	}
 
 	protected boolean rowClicked(TiBaseTableViewItem rowView, int position, boolean longClick) {
@@ -436,6 +538,81 @@ public class TiTableView extends FrameLayout
 		}
 	}
 
+	/**
+	 * Updates the list after count rows were inserted into a section. Only the new rows
+	 * are added to the model and index, falling back to a rebuild when the model can't be
+	 * patched (i.e. a new section was started).
+	 * @param index the table index of the first inserted row.
+	 */
+	public void rowsInserted(int index, int sectionIndex, int indexInSection, int count) {
+		if (adapter == null) {
+			return;
+		}
+
+		int position = viewModel.insertRows(index, sectionIndex, indexInSection, count);
+		if (position < 0) {
+			viewModel.setDirty();
+			dataSetChanged();
+			return;
+		}
+
+		adapter.itemsInserted(position, count);
+		adapter.notifyItemsChanged();
+	}
+
+	/**
+	 * Updates the list after count rows of a single section were removed.
+	 * @param index the table index of the first removed row.
+	 */
+	public void rowsRemoved(int index, int count) {
+		if (adapter == null) {
+			return;
+		}
+
+		int position = viewModel.removeRows(index, count);
+		if (position < 0) {
+			viewModel.setDirty();
+			dataSetChanged();
+			return;
+		}
+
+		adapter.itemsRemoved(position, count);
+		adapter.notifyItemsChanged();
+	}
+
+	/**
+	 * Updates the list after the row at index was replaced. The list is only laid
+	 * out again when the row is on screen, otherwise it is shown once scrolled to.
+	 */
+	public void rowUpdated(int index) {
+		if (adapter == null) {
+			return;
+		}
+
+		int position = viewModel.updateRow(index);
+		if (position < 0) {
+			viewModel.setDirty();
+			dataSetChanged();
+			return;
+		}
+
+		int countBefore = adapter.getCount();
+		int adapterPosition = adapter.itemChanged(position);
+		if (adapter.getCount() != countBefore || isPositionVisible(adapterPosition)) {
+			adapter.notifyItemsChanged();
+		}
+	}
+
+	private boolean isPositionVisible(int adapterPosition) {
+		if (adapterPosition < 0 || listView.getChildCount() == 0) {
+			return false;
+		}
+
+		// List positions include header views
+		int position = adapterPosition + listView.getHeaderViewsCount();
+		return position >= listView.getFirstVisiblePosition() && position <= listView.getLastVisiblePosition();
+	}
+
 	public void setOnItemClickListener(OnItemClickedListener listener) {
 		this.itemClickListener = listener;
 	}
@@ -460,27 +637,99 @@ public class TiTableView extends FrameLayout
 		return listView;
 	}
 
+	/**
+	 * Filters the rows by text. The search runs on a background thread against the
+	 * search index, and the rows shown are only swapped once it's done, so typing
+	 * doesn't block the UI thread. Results of searches that were overtaken by a
+	 * later filterBy are dropped.
+	 */
 	@Override
-	public void filterBy(String text) {
-		filterText = text;
-		if (adapter != null) {
-			proxy.getActivity().runOnUiThread(new Runnable() {
+	public void filterBy(final String text) {
+		if (!TiApplication.isUIThread()) {
+			mainHandler.post(new Runnable() {
 				public void run() {
-					dataSetChanged();
+					filterBy(text);
 				}
 			});
+			return;
+		}
+
+		filterText = text;
+		final int request = ++filterRequest;
+		if (adapter == null) {
+			return;
+		}
+		if (!isFilterActive()) {
+			dataSetChanged();
+			return;
 		}
+
+		final String filter = searchIndex.normalize(text);
+		final TableViewSearchIndex.Snapshot snapshot = searchIndex.getSnapshot(viewModel);
+		TableViewSearchIndex.execute(new Runnable() {
+			public void run() {
+				if (request != filterRequest) {
+					return;
+				}
+
+				final int[] result = snapshot.search(filter);
+				mainHandler.post(new Runnable() {
+					public void run() {
+						if (request != filterRequest || adapter == null) {
+							return;
+						}
+						if (searchIndex.getSnapshot(viewModel) != snapshot) {
+							// Rows changed while searching
+							filterBy(filterText);
+							return;
+						}
+						adapter.setFilterResult(filter, result);
+						adapter.notifyItemsChanged();
+					}
+				});
+			}
+		});
+	}
+
+	protected boolean isFilterActive() {
+		return filterAttribute != null && filterText != null && filterAttribute.length() > 0 && filterText.length() > 0;
 	}
 
 	public void setFilterAttribute(String filterAttribute) {
 		this.filterAttribute = filterAttribute;
+		searchIndex.setAttribute(filterAttribute);
 	}
 
 	public void setFilterCaseInsensitive(boolean filterCaseInsensitive) {
-		this.filterCaseInsensitive  = filterCaseInsensitive;
+		searchIndex.setCaseInsensitive(filterCaseInsensitive);
+	}
+
+	/**
+	 * Sets whether rows only match when their filter attribute starts with the search
+	 * text. Anchored searches look the text up in a sorted index.
+	 */
+	public void setFilterAnchored(boolean filterAnchored) {
+		searchIndex.setAnchored(filterAnchored);
+	}
+
+	/**
+	 * Runs the current search again, i.e. after the filter settings changed.
+	 */
+	public void refilter() {
+		filterBy(filterText);
+	}
+
+	/**
+	 * Called when a property of a row changed, from any thread.
+	 */
+	public void rowPropertyChanged(String name) {
+		if (name != null && name.equals(filterAttribute)) {
+			searchIndex.invalidate();
+		}
 	}
 
 	public void release() {
+		filterRequest++;
 		adapter = null;
 		if (listView != null) {
 			listView.setAdapter(null);
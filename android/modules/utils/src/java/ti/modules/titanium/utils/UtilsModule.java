@@ -6,6 +6,8 @@
  */
 package ti.modules.titanium.utils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -67,6 +69,18 @@ public class UtilsModule extends KrollModule
 	@Kroll.method
 	public TiBlob base64decode(Object obj)
 	{
+		if (obj instanceof TiBlob) {
+			TiBlob blob = (TiBlob) obj;
+			// Decode straight from the blob's stream instead of going through a String
+			ByteArrayOutputStream out = new ByteArrayOutputStream(blob.getLength() * 3 / 4);
+			try {
+				blob.writeBase64Decoded(out);
+				return TiBlob.blobFromData(out.toByteArray());
+			} catch (IOException e) {
+				Log.e(TAG, "Unable to decode blob: " + e.getMessage(), e);
+				return null;
+			}
+		}
 		String data = convertToString(obj);
 		if (data != null) {
 			try {
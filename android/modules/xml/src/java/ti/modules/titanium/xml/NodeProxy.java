@@ -1,6 +1,6 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
@@ -69,7 +69,13 @@ public class NodeProxy extends KrollProxy
 			return null;
 		}
 
-		NodeProxy proxy;
+		// Reuse the live proxy of the node, so walking a document doesn't allocate a proxy per access
+		NodeProxyCache cache = NodeProxyCache.getInstance();
+		NodeProxy proxy = cache.get(node);
+		if (proxy != null) {
+			return proxy;
+		}
+
 		switch (node.getNodeType()) {
 			case Node.ATTRIBUTE_NODE:
 				proxy = new AttrProxy((Attr)node);
@@ -112,6 +118,7 @@ public class NodeProxy extends KrollProxy
 				break;
 		}
 
+		cache.put(node, proxy);
 		return proxy;
 	}
 
@@ -122,9 +129,8 @@ public class NodeProxy extends KrollProxy
 
 	public static NodeProxy removeProxyForNode(Node node) 
 	{
-		// if we're here then a proxy was never generated for this node
-		// just return a temporary wrapper in this case
-		return new NodeProxy(node);
+		// a removed node keeps its proxy, so Javascript still sees the same object
+		return getNodeProxy(node);
 	}
 
 	public static NodeProxy removeProxyForNode(TiContext tiContext, Node node)
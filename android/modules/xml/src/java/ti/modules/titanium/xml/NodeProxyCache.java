@@ -0,0 +1,118 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.xml;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+import org.w3c.dom.Node;
+
+/**
+ * Maps DOM nodes to the proxy created for them, so that walking a document twice
+ * returns the same proxies instead of allocating new ones.
+ *
+ * Nodes are compared by identity, and both nodes and proxies are only weakly
+ * referenced: a proxy holds on to its node, so a strong reference to either would
+ * keep a whole document alive once Javascript no longer uses it.
+ */
+public class NodeProxyCache
+{
+	private static final NodeProxyCache instance = new NodeProxyCache();
+
+	private final HashMap<NodeKey, WeakReference<NodeProxy>> proxies = new HashMap<NodeKey, WeakReference<NodeProxy>>();
+	private final ReferenceQueue<Node> collectedNodes = new ReferenceQueue<Node>();
+	private int hits = 0;
+	private int misses = 0;
+
+	private static class NodeKey extends WeakReference<Node>
+	{
+		private final int hash;
+
+		NodeKey(Node node, ReferenceQueue<Node> queue)
+		{
+			super(node, queue);
+			hash = System.identityHashCode(node);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof NodeKey)) {
+				return false;
+			}
+			Node node = get();
+			return node != null && node == ((NodeKey) o).get();
+		}
+	}
+
+	public static NodeProxyCache getInstance()
+	{
+		return instance;
+	}
+
+	/**
+	 * Returns the live proxy for node, or null if there isn't one.
+	 */
+	public synchronized NodeProxy get(Node node)
+	{
+		expungeCollectedNodes();
+
+		WeakReference<NodeProxy> ref = proxies.get(new NodeKey(node, null));
+		NodeProxy proxy = ref != null ? ref.get() : null;
+		if (proxy != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return proxy;
+	}
+
+	public synchronized void put(Node node, NodeProxy proxy)
+	{
+		expungeCollectedNodes();
+		proxies.put(new NodeKey(node, collectedNodes), new WeakReference<NodeProxy>(proxy));
+	}
+
+	public synchronized int getHitCount()
+	{
+		return hits;
+	}
+
+	public synchronized int getMissCount()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return the number of nodes with a cached proxy, including proxies that were
+	 * collected but not yet expunged.
+	 */
+	public synchronized int size()
+	{
+		expungeCollectedNodes();
+		return proxies.size();
+	}
+
+	private void expungeCollectedNodes()
+	{
+		Reference<? extends Node> ref;
+		while ((ref = collectedNodes.poll()) != null) {
+			proxies.remove(ref);
+		}
+	}
+}
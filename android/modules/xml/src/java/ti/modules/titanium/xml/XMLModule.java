@@ -1,6 +1,6 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
@@ -9,11 +9,16 @@ package ti.modules.titanium.xml;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollModule;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.Log;
@@ -30,18 +35,25 @@ import android.util.Xml;
 @Kroll.module
 public class XMLModule extends KrollModule {
 
-	private static DocumentBuilder builder;
 	private static final String LCAT = "XMLModule";
-	
-	static {
-		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			factory.setNamespaceAware(true);
-			builder = factory.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			Log.e(LCAT, "Error finding DOM implementation", e);
+
+	// DocumentBuilder isn't thread safe, so each thread parsing documents gets its own
+	private static final ThreadLocal<DocumentBuilder> builder = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue()
+		{
+			try {
+				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+				factory.setNamespaceAware(true);
+				return factory.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				Log.e(LCAT, "Error finding DOM implementation", e);
+				return null;
+			}
 		}
-	}
+	};
+
+	private static ExecutorService streamExecutor;
 
 	public XMLModule()
 	{
@@ -75,9 +87,10 @@ public class XMLModule extends KrollModule {
 	public static DocumentProxy parse(String xml, String encoding)
 		throws SAXException, IOException
 	{
-		if (builder != null) {
+		DocumentBuilder documentBuilder = builder.get();
+		if (documentBuilder != null) {
 			try {
-				return new DocumentProxy(builder.parse(new ByteArrayInputStream(xml.getBytes(encoding))));
+				return new DocumentProxy(documentBuilder.parse(new ByteArrayInputStream(xml.getBytes(encoding))));
 			} catch (SAXException e) {
 				Log.e(LCAT, "Error parsing XML", e);
 				throw e;
@@ -95,6 +108,54 @@ public class XMLModule extends KrollModule {
 		return XMLModule.parse(xml, encoding);
 	}
 
+	/**
+	 * Parses XML from a string, blob or stream, delivering batches of events to the
+	 * options' onevents callback instead of building a document. See {@link XMLStreamParser}.
+	 */
+	@Kroll.method
+	public void parseStream(KrollDict options)
+	{
+		XMLStreamParser parser = new XMLStreamParser(getKrollObject(), options);
+		if (options.optBoolean("async", true)) {
+			getStreamExecutor().execute(parser);
+
+		} else {
+			parser.run();
+		}
+	}
+
+	private static synchronized ExecutorService getStreamExecutor()
+	{
+		if (streamExecutor == null) {
+			streamExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private AtomicInteger counter = new AtomicInteger();
+
+				public Thread newThread(Runnable runnable)
+				{
+					return new Thread(runnable, "TiXMLStream-" + counter.incrementAndGet());
+				}
+			});
+		}
+		return streamExecutor;
+	}
+
+	/**
+	 * @return hit, miss and size counters of the node proxy and XPath expression caches.
+	 */
+	@Kroll.method
+	public KrollDict getCacheStats()
+	{
+		NodeProxyCache nodeProxies = NodeProxyCache.getInstance();
+		KrollDict stats = new KrollDict();
+		stats.put("nodeProxyHits", nodeProxies.getHitCount());
+		stats.put("nodeProxyMisses", nodeProxies.getMissCount());
+		stats.put("nodeProxyCacheSize", nodeProxies.size());
+		stats.put("xpathHits", XPathUtil.getCacheHitCount());
+		stats.put("xpathMisses", XPathUtil.getCacheMissCount());
+		stats.put("xpathCacheSize", XPathUtil.getCacheSize());
+		return stats;
+	}
+
 	@Kroll.method
 	public String serializeToString(NodeProxy node)
 	{
@@ -0,0 +1,282 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.KrollFunction;
+import org.appcelerator.kroll.KrollObject;
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiConfig;
+import org.appcelerator.titanium.TiBlob;
+import org.appcelerator.titanium.io.TiStream;
+import org.appcelerator.titanium.util.TiConvert;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import ti.modules.titanium.BufferProxy;
+import android.util.Xml;
+
+/**
+ * Parses XML with a pull parser and hands start element, end element and text events
+ * to Javascript in batches, without building a DOM.
+ *
+ * Only the current batch of events is held in memory, and a batch is delivered with a
+ * synchronous call so parsing doesn't get ahead of the application. Memory use is
+ * therefore bounded by the batch size, whatever the size of the document.
+ */
+public class XMLStreamParser implements Runnable
+{
+	private static final String LCAT = "XMLStreamParser";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	public static final String EVENT_START = "start";
+	public static final String EVENT_END = "end";
+	public static final String EVENT_TEXT = "text";
+
+	private static final int DEFAULT_BATCH_SIZE = 100;
+	private static final int READ_CHUNK_SIZE = 8192;
+
+	private final KrollObject krollObject;
+	private final Object source;
+	private final String encoding;
+	private final int batchSize;
+	private final boolean ignoreWhitespace;
+	private final HashSet<String> elements;
+	private final KrollFunction onEvents;
+	private final KrollFunction onComplete;
+	private final KrollFunction onError;
+
+	private ArrayList<KrollDict> batch;
+	private int eventCount = 0;
+	private boolean cancelled = false;
+
+	/**
+	 * Reads a {@link TiStream} through a single reused buffer.
+	 */
+	private static class TiStreamInputStream extends InputStream
+	{
+		private final TiStream stream;
+		private final BufferProxy buffer = new BufferProxy(READ_CHUNK_SIZE);
+
+		TiStreamInputStream(TiStream stream)
+		{
+			this.stream = stream;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] single = new byte[1];
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int offset, int length) throws IOException
+		{
+			if (length == 0) {
+				return 0;
+			}
+
+			int count = stream.read(new Object[] { buffer, 0, Math.min(length, READ_CHUNK_SIZE) });
+			if (count > 0) {
+				buffer.getByteBuffer().get(b, offset, count);
+			}
+			return count;
+		}
+	}
+
+	public XMLStreamParser(KrollObject krollObject, KrollDict options)
+	{
+		this.krollObject = krollObject;
+		source = options.get("source");
+		encoding = options.optString("encoding", null);
+		batchSize = Math.max(1, options.optInt("batchSize", DEFAULT_BATCH_SIZE));
+		ignoreWhitespace = options.optBoolean("ignoreWhitespace", true);
+
+		if (options.containsKey("elements") && options.get("elements") instanceof Object[]) {
+			elements = new HashSet<String>();
+			for (String element : TiConvert.toStringArray((Object[]) options.get("elements"))) {
+				elements.add(element);
+			}
+		} else {
+			elements = null;
+		}
+
+		onEvents = getFunction(options, "onevents");
+		onComplete = getFunction(options, "oncomplete");
+		onError = getFunction(options, "onerror");
+
+		if (source == null) {
+			throw new IllegalArgumentException("source is required");
+		}
+		if (onEvents == null) {
+			throw new IllegalArgumentException("onevents is required");
+		}
+	}
+
+	public void run()
+	{
+		InputStream in = null;
+		try {
+			in = openSource();
+			XmlPullParser parser = Xml.newPullParser();
+			parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+			parser.setInput(in, encoding);
+			parse(parser);
+
+			if (!cancelled) {
+				flush();
+			}
+			if (DBG) {
+				Log.d(LCAT, "Parsed " + eventCount + " events" + (cancelled ? ", cancelled" : ""));
+			}
+			if (onComplete != null) {
+				KrollDict event = new KrollDict();
+				event.put("eventCount", eventCount);
+				event.put("cancelled", cancelled);
+				onComplete.call(krollObject, event);
+			}
+
+		} catch (Exception e) {
+			Log.e(LCAT, "Error parsing XML stream", e);
+			if (onError != null) {
+				KrollDict event = new KrollDict();
+				event.put("error", e.getMessage());
+				event.put("eventCount", eventCount);
+				onError.call(krollObject, event);
+			}
+
+		} finally {
+			// Streams passed in by the application are left open, like Ti.Stream.pump does
+			if (in != null && !(source instanceof TiStream)) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void parse(XmlPullParser parser) throws XmlPullParserException, IOException
+	{
+		batch = new ArrayList<KrollDict>(batchSize);
+
+		// Depth inside elements the application asked for, text is only reported in there
+		int selectedDepth = elements == null ? 1 : 0;
+
+		int type = parser.getEventType();
+		while (type != XmlPullParser.END_DOCUMENT && !cancelled) {
+			switch (type) {
+				case XmlPullParser.START_TAG:
+					if (selectedDepth > 0 || elements.contains(parser.getName())) {
+						if (elements != null) {
+							selectedDepth++;
+						}
+						addEvent(createStartEvent(parser));
+					}
+					break;
+
+				case XmlPullParser.END_TAG:
+					if (selectedDepth > 0) {
+						if (elements != null) {
+							selectedDepth--;
+						}
+						KrollDict event = new KrollDict();
+						event.put("type", EVENT_END);
+						event.put("name", parser.getName());
+						addEvent(event);
+					}
+					break;
+
+				case XmlPullParser.TEXT:
+					if (selectedDepth > 0 && !(ignoreWhitespace && parser.isWhitespace())) {
+						KrollDict event = new KrollDict();
+						event.put("type", EVENT_TEXT);
+						event.put("text", parser.getText());
+						addEvent(event);
+					}
+					break;
+			}
+			type = parser.next();
+		}
+	}
+
+	private KrollDict createStartEvent(XmlPullParser parser)
+	{
+		KrollDict attributes = new KrollDict();
+		int count = parser.getAttributeCount();
+		for (int i = 0; i < count; i++) {
+			attributes.put(parser.getAttributeName(i), parser.getAttributeValue(i));
+		}
+
+		KrollDict event = new KrollDict();
+		event.put("type", EVENT_START);
+		event.put("name", parser.getName());
+		event.put("namespace", parser.getNamespace());
+		event.put("depth", parser.getDepth());
+		event.put("attributes", attributes);
+		return event;
+	}
+
+	private void addEvent(KrollDict event)
+	{
+		batch.add(event);
+		eventCount++;
+		if (batch.size() >= batchSize) {
+			flush();
+		}
+	}
+
+	/*
+	 * Delivers the pending events. Returning false from onevents stops the parse.
+	 */
+	private void flush()
+	{
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		KrollDict event = new KrollDict();
+		event.put("events", batch.toArray());
+		batch.clear();
+
+		Object result = onEvents.call(krollObject, event);
+		if (result instanceof Boolean && !((Boolean) result).booleanValue()) {
+			cancelled = true;
+		}
+	}
+
+	private InputStream openSource() throws UnsupportedEncodingException
+	{
+		if (source instanceof TiStream) {
+			return new TiStreamInputStream((TiStream) source);
+		}
+
+		if (source instanceof TiBlob) {
+			TiBlob blob = (TiBlob) source;
+			InputStream in = blob.getInputStream();
+			return in != null ? in : new ByteArrayInputStream(blob.getBytes());
+		}
+
+		String xml = TiConvert.toString(source);
+		return new ByteArrayInputStream(xml.getBytes(encoding != null ? encoding : "UTF-8"));
+	}
+
+	private static KrollFunction getFunction(KrollDict options, String name)
+	{
+		Object value = options.get(name);
+		return value instanceof KrollFunction ? (KrollFunction) value : null;
+	}
+}
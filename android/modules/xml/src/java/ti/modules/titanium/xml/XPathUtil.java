@@ -1,13 +1,15 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
 package ti.modules.titanium.xml;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.appcelerator.kroll.common.Log;
 import org.jaxen.JaxenException;
@@ -17,18 +19,77 @@ import org.jaxen.dom.DOMXPath;
 public class XPathUtil {
 
 	private static final String LCAT = "XPath";
-	
+
+	// Compiled expressions don't depend on the context node, so they are reused across documents
+	private static final int MAX_CACHED_EXPRESSIONS = 64;
+
+	private static int hits = 0;
+	private static int misses = 0;
+
+	private static final Map<String, XPath> expressions = new LinkedHashMap<String, XPath>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, XPath> eldest)
+		{
+			return size() > MAX_CACHED_EXPRESSIONS;
+		}
+	};
+
 	public static XPathNodeListProxy evaluate(NodeProxy start, String xpathExpr)
 	{
 		try {
-			XPath xpath = new DOMXPath(xpathExpr);
+			XPath xpath = getXPath(xpathExpr);
 			List nodes= xpath.selectNodes(start.getNode());
-			
+
 			return new XPathNodeListProxy(nodes);
 		} catch (JaxenException e) {
 			Log.e(LCAT, "Exception selecting nodes in XPath ("+xpathExpr+")", e);
 		}
-		
+
 		return new XPathNodeListProxy(new ArrayList());
 	}
+
+	/**
+	 * Returns the compiled form of xpathExpr, compiling it when it isn't cached.
+	 * Expressions that fail to compile are not cached.
+	 */
+	public static XPath getXPath(String xpathExpr) throws JaxenException
+	{
+		synchronized (expressions) {
+			XPath xpath = expressions.get(xpathExpr);
+			if (xpath != null) {
+				hits++;
+				return xpath;
+			}
+			misses++;
+		}
+
+		XPath xpath = new DOMXPath(xpathExpr);
+		synchronized (expressions) {
+			expressions.put(xpathExpr, xpath);
+		}
+		return xpath;
+	}
+
+	public static int getCacheHitCount()
+	{
+		synchronized (expressions) {
+			return hits;
+		}
+	}
+
+	public static int getCacheMissCount()
+	{
+		synchronized (expressions) {
+			return misses;
+		}
+	}
+
+	public static int getCacheSize()
+	{
+		synchronized (expressions) {
+			return expressions.size();
+		}
+	}
 }
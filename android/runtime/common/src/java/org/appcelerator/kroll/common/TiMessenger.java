@@ -6,10 +6,11 @@
  */
 package org.appcelerator.kroll.common;
 
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.appcelerator.kroll.KrollRuntime;
 
@@ -75,7 +76,17 @@ public class TiMessenger implements Handler.Callback
 		}
 	};
 
-	protected ArrayBlockingQueue<Message> messageQueue = new ArrayBlockingQueue<Message>(10);
+	/**
+	 * Upper bounds (exclusive, in milliseconds) of the blocking message latency histogram buckets.
+	 * The last bucket collects every call that took longer than the last bound.
+	 */
+	public static final int[] LATENCY_BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 250, 500 };
+
+	private static final AtomicLongArray mainLatencyHistogram = new AtomicLongArray(LATENCY_BUCKET_BOUNDS.length + 1);
+	private static final AtomicLongArray runtimeLatencyHistogram = new AtomicLongArray(LATENCY_BUCKET_BOUNDS.length + 1);
+
+	protected LinkedBlockingQueue<Message> messageQueue = new LinkedBlockingQueue<Message>();
+	protected final Object blockingLock = new Object();
 	protected CountDownLatch blockingLatch;
 	protected AtomicInteger blockingMessageCount = new AtomicInteger(0);
 	protected Handler.Callback callback;
@@ -85,6 +96,81 @@ public class TiMessenger implements Handler.Callback
 
 	public static final int DEFAULT_TIMEOUT = 50;
 
+	/**
+	 * Returns a snapshot of the latency histogram for blocking messages sent to the main
+	 * or runtime thread. Bucket i counts calls faster than {@link #LATENCY_BUCKET_BOUNDS}[i]
+	 * milliseconds, the last bucket counts everything slower.
+	 * @param main true for messages sent to the main thread, false for the runtime thread.
+	 * @return the per-bucket call counts.
+	 */
+	public static long[] getBlockingLatencyHistogram(boolean main)
+	{
+		AtomicLongArray histogram = main ? mainLatencyHistogram : runtimeLatencyHistogram;
+		long[] counts = new long[histogram.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = histogram.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Clears both blocking message latency histograms.
+	 */
+	public static void resetBlockingLatencyHistograms()
+	{
+		for (int i = 0; i < mainLatencyHistogram.length(); i++) {
+			mainLatencyHistogram.set(i, 0);
+			runtimeLatencyHistogram.set(i, 0);
+		}
+	}
+
+	/**
+	 * Logs both blocking message latency histograms at debug level.
+	 */
+	public static void logBlockingLatencyHistograms()
+	{
+		Log.d(TAG, "Blocking main message latency: " + formatHistogram(getBlockingLatencyHistogram(true)));
+		Log.d(TAG, "Blocking runtime message latency: " + formatHistogram(getBlockingLatencyHistogram(false)));
+	}
+
+	private static String formatHistogram(long[] counts)
+	{
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < counts.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			if (i < LATENCY_BUCKET_BOUNDS.length) {
+				builder.append("<").append(LATENCY_BUCKET_BOUNDS[i]).append("ms=");
+			} else {
+				builder.append(">=").append(LATENCY_BUCKET_BOUNDS[i - 1]).append("ms=");
+			}
+			builder.append(counts[i]);
+		}
+		return builder.toString();
+	}
+
+	private static void recordLatency(TiMessenger targetMessenger, long elapsedNanos)
+	{
+		AtomicLongArray histogram;
+		if (targetMessenger == mainMessenger) {
+			histogram = mainLatencyHistogram;
+
+		} else if (targetMessenger == runtimeMessenger) {
+			histogram = runtimeLatencyHistogram;
+
+		} else {
+			return;
+		}
+
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		int bucket = 0;
+		while (bucket < LATENCY_BUCKET_BOUNDS.length && elapsedMillis >= LATENCY_BUCKET_BOUNDS[bucket]) {
+			bucket++;
+		}
+		histogram.incrementAndGet(bucket);
+	}
+
 
 	public static TiMessenger getMessenger()
 	{
@@ -134,7 +220,7 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue},
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue},
 	 * and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult. The blocking is done on the Main thread.
 	 * @param message  the message to send.
@@ -147,7 +233,7 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue},
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue},
 	 * and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult. The blocking is done on the Main thread.
 	 * @param message   the message to send.
@@ -161,7 +247,7 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue}, 
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue}, 
 	 * and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult. The blocking is done on the KrollRuntime thread.
 	 * @param message  the message to send.
@@ -174,7 +260,7 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue}, 
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue}, 
 	 * and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult. The blocking is done on the KrollRuntime thread.
 	 * @param message   the message to send.
@@ -209,7 +295,7 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue}, and dispatch messages on the current
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue}, and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult.
 	 * @param message The message to send.
 	 * @param targetMessenger The TiMessenger to send it to.
@@ -223,16 +309,18 @@ public class TiMessenger implements Handler.Callback
 			@Override
 			public Object getResult()
 			{
-				int timeout = 0;
 				try {
-					// TODO: create a multi-semaphore condition
-					// here so we don't unnecessarily poll
-					while (!tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
-						if (messageQueue.size() == 0) {
-							timeout = 50;
-
-						} else {
-							dispatchPendingMessages();
+					// Wake up on whichever comes first: the result being set,
+					// or a new message being queued to this messenger
+					while (!tryAcquire()) {
+						if (dispatchMessage()) {
+							continue;
+						}
+
+						synchronized (blockingLock) {
+							if (availablePermits() == 0 && messageQueue.isEmpty()) {
+								blockingLock.wait();
+							}
 						}
 					}
 
@@ -249,12 +337,17 @@ public class TiMessenger implements Handler.Callback
 			}
 
 			@Override
-			public void setResult(Object result)
+			public void release()
 			{
-				super.setResult(result);
+				super.release();
+				synchronized (blockingLock) {
+					blockingLock.notifyAll();
+				}
 			}
 		};
 
+		long startTime = System.nanoTime();
+
 		blockingMessageCount.incrementAndGet();
 		message.obj = wrappedAsyncResult;
 		targetMessenger.sendMessage(message);
@@ -263,6 +356,8 @@ public class TiMessenger implements Handler.Callback
 		blockingMessageCount.decrementAndGet();
 		dispatchPendingMessages();
 
+		recordLatency(targetMessenger, System.nanoTime() - startTime);
+
 		return messageResult;
 	}
 
@@ -295,12 +390,9 @@ public class TiMessenger implements Handler.Callback
 
 		} else {
 			if (isBlocking()) {
-				try {
-					messageQueue.put(message);
-
-				} catch (InterruptedException e) {
-					Log.w(TAG, "interrupted trying to put new message, sending to handler", e);
-					message.sendToTarget();
+				messageQueue.offer(message);
+				synchronized (blockingLock) {
+					blockingLock.notifyAll();
 				}
 
 			} else {
@@ -0,0 +1,275 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.kroll.runtime.rhino;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.IdScriptableObject;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Desktop benchmark for the property and method dispatch of generated proxy bindings.
+ *
+ * Every property get or set and every method call on a proxy starts by resolving
+ * the name to an ID in the generated findInstanceIdInfo / findPrototypeId lookups,
+ * once for each prototype in the chain. For each binding this measures, in the
+ * style of a JMH average time benchmark (warmup iterations, then measured
+ * iterations reported as mean and standard deviation):
+ * <ul>
+ * <li>property: resolving the binding's own properties, as done by get and set</li>
+ * <li>method: resolving the binding's own methods, as done by a call</li>
+ * <li>miss: resolving names declared by other bindings, as done for every prototype
+ * a lookup passes on its way up the chain</li>
+ * </ul>
+ *
+ * Usage: java -cp js.jar:android.jar:classes KrollBindingBenchmark [-w warmups] [-i iterations]
+ * (generated-classes-dir | prototype-class)...
+ * or the benchmark.kroll.rhino.bindings ant target.
+ */
+public class KrollBindingBenchmark
+{
+	private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+	private static final int DEFAULT_ITERATIONS = 10;
+
+	// Lookups per measured iteration
+	private static final int OPERATIONS = 500000;
+
+	// Used as misses when only a single binding is benchmarked
+	private static final String[] COMMON_NAMES = {
+		"addEventListener", "removeEventListener", "fireEvent", "toString", "valueOf",
+		"apiName", "length", "id", "width", "height"
+	};
+
+	private static int sink = 0;
+
+	private static class Binding
+	{
+		String name;
+		IdScriptableObject prototype;
+		List<String> properties = new ArrayList<String>();
+		List<String> methods = new ArrayList<String>();
+		Set<String> names = new HashSet<String>();
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int warmups = DEFAULT_WARMUP_ITERATIONS;
+		int iterations = DEFAULT_ITERATIONS;
+		List<String> classNames = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-w") && i + 1 < args.length) {
+				warmups = Integer.parseInt(args[++i]);
+
+			} else if (args[i].equals("-i") && i + 1 < args.length) {
+				iterations = Integer.parseInt(args[++i]);
+
+			} else {
+				File file = new File(args[i]);
+				if (file.isDirectory()) {
+					findPrototypeClasses(file, "", classNames);
+				} else {
+					classNames.add(args[i]);
+				}
+			}
+		}
+
+		if (classNames.isEmpty()) {
+			System.err.println("usage: KrollBindingBenchmark [-w warmups] [-i iterations] (generated-classes-dir | prototype-class)...");
+			System.exit(1);
+		}
+
+		Context context = Context.enter();
+		try {
+			ScriptableObject scope = context.initStandardObjects();
+
+			List<Binding> bindings = new ArrayList<Binding>();
+			for (String className : classNames) {
+				try {
+					bindings.add(loadBinding(className, scope));
+
+				} catch (Throwable t) {
+					System.out.println("skipping " + className + ": " + t);
+				}
+			}
+
+			System.out.println(String.format("%d bindings, %d warmup and %d measured iterations of %d lookups, ns/op",
+				bindings.size(), warmups, iterations, OPERATIONS));
+			System.out.println(String.format("%-50s %18s %18s %18s", "binding", "property", "method", "miss"));
+
+			for (Binding binding : bindings) {
+				List<String> misses = new ArrayList<String>();
+				for (Binding other : bindings) {
+					for (String name : other.names) {
+						if (!binding.names.contains(name) && !misses.contains(name)) {
+							misses.add(name);
+						}
+					}
+				}
+				if (misses.isEmpty()) {
+					for (String name : COMMON_NAMES) {
+						if (!binding.names.contains(name)) {
+							misses.add(name);
+						}
+					}
+				}
+
+				System.out.println(String.format("%-50s %18s %18s %18s", binding.name,
+					measure(binding.prototype, binding.properties, warmups, iterations),
+					measure(binding.prototype, binding.methods, warmups, iterations),
+					measure(binding.prototype, misses, warmups, iterations)));
+			}
+
+			// Keeps the lookups from being optimized away
+			if (sink == 42) {
+				System.out.println();
+			}
+
+		} finally {
+			Context.exit();
+		}
+	}
+
+	private static void findPrototypeClasses(File dir, String packageName, List<String> classNames)
+	{
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				findPrototypeClasses(file, packageName + name + ".", classNames);
+
+			} else if (name.endsWith("Prototype.class") && name.indexOf('$') == -1) {
+				classNames.add(packageName + name.substring(0, name.length() - ".class".length()));
+			}
+		}
+	}
+
+	private static Binding loadBinding(String className, ScriptableObject scope) throws Exception
+	{
+		Class<?> prototypeClass = Class.forName(className);
+		Binding binding = new Binding();
+		binding.name = prototypeClass.getSimpleName();
+		binding.prototype = (IdScriptableObject) prototypeClass.newInstance();
+		binding.prototype.setParentScope(scope);
+		binding.prototype.exportAsJSClass(getStaticInt(prototypeClass, "MAX_PROTOTYPE_ID"), scope, false);
+
+		Method findInstanceIdInfo = findMethod(prototypeClass, "findInstanceIdInfo");
+
+		// Generated bindings declare an Id_<name> constant for every property and method
+		for (Field field : prototypeClass.getDeclaredFields()) {
+			String fieldName = field.getName();
+			if (!fieldName.startsWith("Id_") || !Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+
+			String name = fieldName.substring(3);
+			if (!binding.names.add(name)) {
+				continue;
+			}
+
+			int info = ((Integer) findInstanceIdInfo.invoke(binding.prototype, name)).intValue();
+			if (info != 0) {
+				binding.properties.add(name);
+			} else {
+				binding.methods.add(name);
+			}
+		}
+		return binding;
+	}
+
+	private static String measure(IdScriptableObject prototype, List<String> names, int warmups, int iterations)
+	{
+		if (names.isEmpty()) {
+			return "-";
+		}
+
+		// Copy the names so lookups don't benefit from identity checks against the binding's literals
+		String[] lookups = new String[names.size()];
+		for (int i = 0; i < lookups.length; i++) {
+			lookups[i] = new String(names.get(i));
+		}
+
+		for (int i = 0; i < warmups; i++) {
+			run(prototype, lookups);
+		}
+
+		double[] results = new double[iterations];
+		double total = 0;
+		for (int i = 0; i < iterations; i++) {
+			results[i] = run(prototype, lookups);
+			total += results[i];
+		}
+
+		double mean = total / iterations;
+		double variance = 0;
+		for (double result : results) {
+			variance += (result - mean) * (result - mean);
+		}
+		double deviation = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+		return String.format("%7.2f +- %6.2f", mean, deviation);
+	}
+
+	/*
+	 * Returns the average time of a lookup in nanoseconds.
+	 */
+	private static double run(IdScriptableObject prototype, String[] names)
+	{
+		int found = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < OPERATIONS; i++) {
+			if (prototype.has(names[i % names.length], prototype)) {
+				found++;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		sink += found;
+		return (double) elapsed / OPERATIONS;
+	}
+
+	private static int getStaticInt(Class<?> type, String name) throws Exception
+	{
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			try {
+				Field field = c.getDeclaredField(name);
+				field.setAccessible(true);
+				return field.getInt(null);
+
+			} catch (NoSuchFieldException e) {
+				// keep looking in the super class
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+
+	private static Method findMethod(Class<?> type, String name) throws NoSuchMethodException
+	{
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			try {
+				Method method = c.getDeclaredMethod(name, String.class);
+				method.setAccessible(true);
+				return method;
+
+			} catch (NoSuchMethodException e) {
+				// keep looking in the super class
+			}
+		}
+		throw new NoSuchMethodException(name);
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.kroll.runtime.rhino;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Desktop benchmark for running application scripts through Rhino.
+ *
+ * For each script it reports the average time per run of:
+ * <ul>
+ * <li>interpreted: parse, compile and run with the interpreter (the device default)</li>
+ * <li>compiled: parse, compile to JVM classes and run (optimization level 9)</li>
+ * <li>cold cache: first run through an empty {@link KrollScriptCache}</li>
+ * <li>warm cache: load from a populated on-disk cache, as after an app restart, and run</li>
+ * <li>interpreted exec and compiled exec: running an already compiled script</li>
+ * </ul>
+ *
+ * Usage: java -cp js.jar:android.jar:classes KrollScriptBenchmark [-n iterations] script.js...
+ * or the benchmark.kroll.rhino.scripts ant target.
+ */
+public class KrollScriptBenchmark
+{
+	private static final int DEFAULT_ITERATIONS = 50;
+
+	private interface Run
+	{
+		void run(Context context) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int iterations = DEFAULT_ITERATIONS;
+		int first = 0;
+		if (args.length > 1 && args[0].equals("-n")) {
+			iterations = Integer.parseInt(args[1]);
+			first = 2;
+		}
+
+		if (args.length <= first) {
+			System.err.println("usage: KrollScriptBenchmark [-n iterations] script.js...");
+			System.exit(1);
+		}
+
+		for (int i = first; i < args.length; i++) {
+			benchmark(new File(args[i]), iterations);
+		}
+	}
+
+	private static void benchmark(File file, int iterations) throws Exception
+	{
+		final String source = readFile(file);
+		final String filename = file.getName();
+
+		final File cacheDir = new File(System.getProperty("java.io.tmpdir"), "kroll-script-benchmark");
+		final KrollScriptCache coldCache = new KrollScriptCache(cacheDir);
+		coldCache.clear();
+
+		System.out.println(filename + " (" + source.length() + " chars, " + iterations + " iterations)");
+
+		report("interpreted", time(-1, iterations, new Run() {
+			public void run(Context context)
+			{
+				context.evaluateString(context.initStandardObjects(), source, filename, 1, null);
+			}
+		}));
+
+		report("compiled", time(9, iterations, new Run() {
+			public void run(Context context)
+			{
+				context.evaluateString(context.initStandardObjects(), source, filename, 1, null);
+			}
+		}));
+
+		report("cold cache", time(-1, iterations, new Run() {
+			public void run(Context context)
+			{
+				// compile, persist and run
+				coldCache.clear();
+				coldCache.getScript(context, source, filename).exec(context, context.initStandardObjects());
+			}
+		}));
+
+		// A new cache instance has nothing in memory, so every lookup is served from disk
+		report("warm cache", time(-1, iterations, new Run() {
+			public void run(Context context)
+			{
+				KrollScriptCache warmCache = new KrollScriptCache(cacheDir);
+				warmCache.getScript(context, source, filename).exec(context, context.initStandardObjects());
+			}
+		}));
+
+		report("interpreted exec", timeExec(-1, iterations, source, filename));
+		report("compiled exec", timeExec(9, iterations, source, filename));
+
+		coldCache.clear();
+		System.out.println();
+	}
+
+	private static double timeExec(int optimizationLevel, int iterations, String source, String filename) throws Exception
+	{
+		Context context = Context.enter();
+		try {
+			context.setOptimizationLevel(optimizationLevel);
+			final Script script = context.compileString(source, filename, 1, null);
+
+			return time(optimizationLevel, iterations, new Run() {
+				public void run(Context context)
+				{
+					script.exec(context, context.initStandardObjects());
+				}
+			});
+
+		} finally {
+			Context.exit();
+		}
+	}
+
+	private static double time(int optimizationLevel, int iterations, Run run) throws Exception
+	{
+		Context context = Context.enter();
+		try {
+			context.setOptimizationLevel(optimizationLevel);
+
+			// warm up the JIT before measuring
+			run.run(context);
+
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				run.run(context);
+			}
+			return (System.nanoTime() - start) / 1000000.0 / iterations;
+
+		} finally {
+			Context.exit();
+		}
+	}
+
+	private static void report(String name, double millis)
+	{
+		System.out.println(String.format("  %-18s %10.3f ms", name, millis));
+	}
+
+	private static String readFile(File file) throws IOException
+	{
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			StringBuilder builder = new StringBuilder();
+			char[] buffer = new char[8192];
+			int count;
+			while ((count = reader.read(buffer)) != -1) {
+				builder.append(buffer, 0, count);
+			}
+			return builder.toString();
+
+		} finally {
+			reader.close();
+		}
+	}
+}
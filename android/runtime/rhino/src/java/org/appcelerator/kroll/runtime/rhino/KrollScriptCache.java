@@ -0,0 +1,344 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.kroll.runtime.rhino;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+import android.util.Log;
+
+/**
+ * Caches compiled scripts in memory and on disk, keyed by a hash of the source.
+ *
+ * Scripts compiled for Rhino's interpreter are plain serializable bytecode, so a
+ * warm start can load them from disk without parsing or compiling the source.
+ * Scripts compiled to JVM classes (optimization level 0 and up) are only cached
+ * in memory, since their generated classes can't be written out this way.
+ *
+ * Every distinct evaluated source gets its own file, so the files on disk are
+ * bounded by count and size. The least recently used files are deleted first,
+ * using the modification time, which is updated on every read, across runs.
+ */
+public class KrollScriptCache
+{
+	private static final String TAG = "KrollScriptCache";
+
+	private static final int MAX_MEMORY_ENTRIES = 64;
+	private static final String CACHE_VERSION = "1";
+	private static final int MAX_DISK_ENTRIES = 256;
+	private static final long MAX_DISK_SIZE = 4 * 1024 * 1024;
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private File cacheDir;
+	// File sizes by key in least recently used order, listed from disk on first use
+	private LinkedHashMap<String, Long> diskEntries = null;
+	private long diskSize = 0;
+	private int hits = 0;
+	private int diskHits = 0;
+	private int misses = 0;
+
+	private final Map<String, Script> scripts = new LinkedHashMap<String, Script>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Script> eldest)
+		{
+			return size() > MAX_MEMORY_ENTRIES;
+		}
+	};
+
+	/**
+	 * @param cacheDir the directory compiled scripts are persisted to, or null to only cache in memory.
+	 */
+	public KrollScriptCache(File cacheDir)
+	{
+		this.cacheDir = cacheDir;
+		if (cacheDir != null && !cacheDir.exists()) {
+			cacheDir.mkdirs();
+		}
+	}
+
+	/**
+	 * Returns the compiled form of source, compiling it with context when it isn't cached.
+	 */
+	public Script getScript(Context context, String source, String filename)
+	{
+		String key = getKey(context, source, filename);
+
+		Script script;
+		synchronized (scripts) {
+			script = scripts.get(key);
+		}
+		if (script != null) {
+			hits++;
+			return script;
+		}
+
+		script = readScript(key);
+		if (script != null) {
+			diskHits++;
+			touchDiskEntry(key);
+
+		} else {
+			misses++;
+			script = context.compileString(source, filename, 1, null);
+			writeScript(key, script);
+		}
+
+		synchronized (scripts) {
+			scripts.put(key, script);
+		}
+		return script;
+	}
+
+	/**
+	 * Drops all cached scripts from memory and disk.
+	 */
+	public void clear()
+	{
+		synchronized (scripts) {
+			scripts.clear();
+		}
+
+		if (cacheDir != null) {
+			synchronized (this) {
+				File[] files = cacheDir.listFiles();
+				if (files != null) {
+					for (File file : files) {
+						file.delete();
+					}
+				}
+				diskEntries = null;
+				diskSize = 0;
+			}
+		}
+	}
+
+	public int getHitCount()
+	{
+		return hits;
+	}
+
+	public int getDiskHitCount()
+	{
+		return diskHits;
+	}
+
+	public int getMissCount()
+	{
+		return misses;
+	}
+
+	protected String getKey(Context context, String source, String filename)
+	{
+		try {
+			// The file name is compiled into the script for stack traces, and the
+			// bytecode format can change with the Rhino build or optimization level.
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(CACHE_VERSION.getBytes("UTF-8"));
+			digest.update(context.getImplementationVersion().getBytes("UTF-8"));
+			digest.update((byte) context.getOptimizationLevel());
+			digest.update(filename.getBytes("UTF-8"));
+			digest.update((byte) 0);
+			digest.update(source.getBytes("UTF-8"));
+
+			byte[] hash = digest.digest();
+			StringBuilder key = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				key.append(Character.forDigit((b >> 4) & 0xF, 16));
+				key.append(Character.forDigit(b & 0xF, 16));
+			}
+			return key.toString();
+
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private Script readScript(String key)
+	{
+		if (cacheDir == null) {
+			return null;
+		}
+
+		File file = new File(cacheDir, key);
+		if (!file.exists()) {
+			return null;
+		}
+
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			return (Script) in.readObject();
+
+		} catch (Exception e) {
+			// A truncated or stale entry is simply recompiled
+			Log.w(TAG, "Unable to read cached script " + key + ": " + e.getMessage());
+			removeDiskEntry(key);
+			return null;
+
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void writeScript(String key, Script script)
+	{
+		if (cacheDir == null || !(script instanceof Serializable) || isGeneratedClass(script)) {
+			return;
+		}
+
+		File file = new File(cacheDir, key);
+		File tempFile = new File(cacheDir, key + TEMP_SUFFIX);
+		ObjectOutputStream out = null;
+		try {
+			out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeObject(script);
+			out.close();
+			out = null;
+
+			if (tempFile.renameTo(file)) {
+				addDiskEntry(key, file.length());
+			} else {
+				tempFile.delete();
+			}
+
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to cache script " + key + ": " + e.getMessage());
+			tempFile.delete();
+
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/*
+	 * Marks a file read from disk as most recently used.
+	 */
+	private synchronized void touchDiskEntry(String key)
+	{
+		loadDiskEntries();
+		if (diskEntries.get(key) != null) {
+			new File(cacheDir, key).setLastModified(System.currentTimeMillis());
+		}
+	}
+
+	private synchronized void addDiskEntry(String key, long size)
+	{
+		loadDiskEntries();
+		Long previous = diskEntries.put(key, size);
+		if (previous != null) {
+			diskSize -= previous;
+		}
+		diskSize += size;
+
+		Iterator<Map.Entry<String, Long>> iterator = diskEntries.entrySet().iterator();
+		while ((diskSize > MAX_DISK_SIZE || diskEntries.size() > MAX_DISK_ENTRIES) && iterator.hasNext()) {
+			Map.Entry<String, Long> eldest = iterator.next();
+			if (eldest.getKey().equals(key)) {
+				break;
+			}
+			iterator.remove();
+			diskSize -= eldest.getValue();
+			new File(cacheDir, eldest.getKey()).delete();
+		}
+	}
+
+	private synchronized void removeDiskEntry(String key)
+	{
+		loadDiskEntries();
+		Long size = diskEntries.remove(key);
+		if (size != null) {
+			diskSize -= size;
+		}
+		new File(cacheDir, key).delete();
+	}
+
+	/*
+	 * Lists the cached files oldest first, deleting temporary files left by an interrupted write.
+	 */
+	private void loadDiskEntries()
+	{
+		if (diskEntries != null) {
+			return;
+		}
+
+		diskEntries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+		diskSize = 0;
+		File[] files = cacheDir.listFiles();
+		if (files == null) {
+			return;
+		}
+
+		final long[] modified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			modified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
+			{
+				long diff = modified[a] - modified[b];
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+
+		for (Integer i : order) {
+			File file = files[i];
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				file.delete();
+				continue;
+			}
+			long size = file.length();
+			diskEntries.put(file.getName(), size);
+			diskSize += size;
+		}
+	}
+
+	/*
+	 * Scripts compiled to JVM classes are instances of a generated class that
+	 * only exists in the class loader that defined it.
+	 */
+	private static boolean isGeneratedClass(Script script)
+	{
+		return !script.getClass().getName().startsWith("org.mozilla.javascript.");
+	}
+}
@@ -6,6 +6,9 @@
  */
 package org.appcelerator.kroll.runtime.rhino;
 
+import java.io.File;
+
+import org.appcelerator.kroll.KrollApplication;
 import org.appcelerator.kroll.KrollProxySupport;
 import org.appcelerator.kroll.KrollRuntime;
 import org.appcelerator.kroll.common.TiJSErrorDialog;
@@ -26,12 +29,14 @@ public class RhinoRuntime extends KrollRuntime implements ErrorReporter
 {
 	private static final String TAG = "RhinoRuntime";
 	private static final String NAME = "rhino";
+	private static final String SCRIPT_CACHE_DIR = "rhino-scripts";
 
 	private Scriptable globalScope;
 	private Scriptable globalKrollObject;
 	private Scriptable moduleObject;
 	private Function runModuleFunction;
 	private Context context;
+	private KrollScriptCache scriptCache;
 	private static ErrorReporter errorReporter;
 
 	@Override
@@ -41,6 +46,12 @@ public class RhinoRuntime extends KrollRuntime implements ErrorReporter
 		context.setOptimizationLevel(-1);
 		context.setErrorReporter(getErrorReporter());
 
+		KrollApplication app = getKrollApplication();
+		if (app != null && app.isScriptCacheEnabled()) {
+			File cacheDir = new File(((android.content.Context) app).getCacheDir(), SCRIPT_CACHE_DIR);
+			scriptCache = new KrollScriptCache(cacheDir);
+		}
+
 		try {
 			globalScope = context.initStandardObjects();
 			bootstrap(context, globalScope);
@@ -58,6 +69,7 @@ public class RhinoRuntime extends KrollRuntime implements ErrorReporter
 		moduleObject = null;
 		runModuleFunction = null;
 		errorReporter = null;
+		scriptCache = null;
 
 		EventEmitter.dispose();
 		KrollBindings.dispose();
@@ -98,7 +110,7 @@ public class RhinoRuntime extends KrollRuntime implements ErrorReporter
 		Context context = enterContext();
 
 		try {
-			Object result = context.evaluateString(globalScope, source, filename, 1, null);
+			Object result = evaluateString(context, globalScope, source, filename);
 			return TypeConverter.jsObjectToJavaObject(result, globalScope);
 
 		} catch (Exception e) {
@@ -138,6 +150,19 @@ public class RhinoRuntime extends KrollRuntime implements ErrorReporter
 		return ContextFactory.getGlobal().enterContext(context);
 	}
 
+	/**
+	 * Evaluates source in scope, using the compiled script cache when it is enabled.
+	 */
+	public static Object evaluateString(Context context, Scriptable scope, String source, String filename)
+	{
+		KrollScriptCache cache = ((RhinoRuntime) getInstance()).scriptCache;
+		if (cache == null) {
+			return context.evaluateString(scope, source, filename, 1, null);
+		}
+
+		return cache.getScript(context, source, filename).exec(context, scope);
+	}
+
 	public static Scriptable getGlobalScope()
 	{
 		return ((RhinoRuntime) getInstance()).globalScope;
@@ -74,7 +74,7 @@ public class ScriptsModule extends ScriptableObject
 				return evaluator.evaluateString(scope, source, path);
 			}
 
-			return context.evaluateString(scope, source, path, 1, null);
+			return RhinoRuntime.evaluateString(context, scope, source, path);
 
 		} catch (Throwable throwable) {
 			if (displayError) {
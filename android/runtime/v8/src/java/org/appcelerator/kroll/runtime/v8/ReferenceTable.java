@@ -1,12 +1,55 @@
 package org.appcelerator.kroll.runtime.v8;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
 
+/**
+ * Holds the Java objects referenced from V8 when global JNI references
+ * are not available (i.e. on the emulator).
+ *
+ * References are stored in a slot array indexed directly by key. Slots
+ * released by {@link #destroyReference(int)} are kept on a free list and
+ * handed out again by {@link #createReference(Object)}. Key 0 is never used
+ * since the native side treats it as "no reference".
+ *
+ * This table is only accessed from the KrollRuntime thread, so no locking
+ * is performed. The counters may be read from any thread for diagnostics.
+ */
 public final class ReferenceTable
 {
-	private static HashMap<Integer, Object> references = new HashMap<Integer, Object>();
-	private static int lastKey = 1;
+	private static final int INITIAL_CAPACITY = 256;
+	private static final int NO_SLOT = -1;
+
+	// slots[key] holds either the object (strong), a KeyedWeakReference (weak) or null.
+	private static Object[] slots = new Object[INITIAL_CAPACITY];
+
+	// Whether each key is held by the native side. A live slot may still be null
+	// once its weak reference has been cleared, so this is tracked separately.
+	private static boolean[] live = new boolean[INITIAL_CAPACITY];
+
+	// Next free slot for each free slot, forming a singly linked free list.
+	private static int[] nextFree = new int[INITIAL_CAPACITY];
+	private static int freeHead = NO_SLOT;
+
+	// The highest key handed out so far, slots above it have never been used.
+	private static int lastKey = 0;
+
+	private static final ReferenceQueue<Object> clearedQueue = new ReferenceQueue<Object>();
+
+	private static volatile int liveCount = 0;
+	private static volatile int weakCount = 0;
+	private static volatile int clearedCount = 0;
+
+	private static final class KeyedWeakReference extends WeakReference<Object>
+	{
+		final int key;
+
+		KeyedWeakReference(Object referent, int key)
+		{
+			super(referent, clearedQueue);
+			this.key = key;
+		}
+	}
 
 	/*
 	 * Creates a new reference.
@@ -15,8 +58,24 @@ public final class ReferenceTable
 	 */
 	public static int createReference(Object object)
 	{
-		int key = lastKey++;
-		references.put(key, object);
+		sweepClearedReferences();
+
+		int key;
+		if (freeHead != NO_SLOT) {
+			key = freeHead;
+			freeHead = nextFree[key];
+			nextFree[key] = NO_SLOT;
+
+		} else {
+			key = ++lastKey;
+			if (key >= slots.length) {
+				grow(key + 1);
+			}
+		}
+
+		slots[key] = object;
+		live[key] = true;
+		liveCount++;
 		return key;
 	}
 
@@ -26,7 +85,21 @@ public final class ReferenceTable
 	 */
 	public static void destroyReference(int key)
 	{
-		references.remove(key);
+		// Destroying a key twice must not put it on the free list twice
+		if (!isValidKey(key) || !live[key]) {
+			return;
+		}
+
+		Object ref = slots[key];
+		if (ref instanceof KeyedWeakReference) {
+			weakCount--;
+		}
+
+		slots[key] = null;
+		live[key] = false;
+		nextFree[key] = freeHead;
+		freeHead = key;
+		liveCount--;
 	}
 
 	/*
@@ -36,8 +109,17 @@ public final class ReferenceTable
 	 */
 	public static void makeWeakReference(int key)
 	{
-		Object ref = references.get(key);
-		references.put(key, new WeakReference<Object>(ref));
+		if (!isValidKey(key)) {
+			return;
+		}
+
+		Object ref = slots[key];
+		if (ref == null || ref instanceof KeyedWeakReference) {
+			return;
+		}
+
+		slots[key] = new KeyedWeakReference(ref, key);
+		weakCount++;
 	}
 
 	/*
@@ -49,10 +131,15 @@ public final class ReferenceTable
 	 */
 	public static Object clearWeakReference(int key)
 	{
-		Object ref = references.get(key);
-		if (ref instanceof WeakReference) {
-			ref = ((WeakReference<?>)ref).get();
-			references.put(key, ref);
+		if (!isValidKey(key)) {
+			return null;
+		}
+
+		Object ref = slots[key];
+		if (ref instanceof KeyedWeakReference) {
+			ref = ((KeyedWeakReference) ref).get();
+			slots[key] = ref;
+			weakCount--;
 		}
 		return ref;
 	}
@@ -64,10 +151,82 @@ public final class ReferenceTable
 	 */
 	public static Object getReference(int key)
 	{
-		Object ref = references.get(key);
-		if (ref instanceof WeakReference) {
-			ref = ((WeakReference<?>)ref).get();
+		if (!isValidKey(key)) {
+			return null;
+		}
+
+		Object ref = slots[key];
+		if (ref instanceof KeyedWeakReference) {
+			ref = ((KeyedWeakReference) ref).get();
 		}
 		return ref;
 	}
+
+	/**
+	 * @return the number of keys currently held by the native side, strong or weak.
+	 */
+	public static int getLiveReferenceCount()
+	{
+		return liveCount;
+	}
+
+	/**
+	 * @return the number of live keys that are currently weak.
+	 */
+	public static int getWeakReferenceCount()
+	{
+		return weakCount;
+	}
+
+	/**
+	 * @return the total number of weak references whose object has been collected.
+	 */
+	public static int getClearedReferenceCount()
+	{
+		return clearedCount;
+	}
+
+	/*
+	 * Drops weak references whose referent has been collected. The key
+	 * stays reserved until the native side calls destroyReference(), so
+	 * only the dead WeakReference is released here.
+	 */
+	private static void sweepClearedReferences()
+	{
+		KeyedWeakReference ref;
+		while ((ref = (KeyedWeakReference) clearedQueue.poll()) != null) {
+			int key = ref.key;
+			// The key may have been destroyed, or reused, since the reference was queued
+			if (isValidKey(key) && slots[key] == ref) {
+				slots[key] = null;
+				weakCount--;
+				clearedCount++;
+			}
+		}
+	}
+
+	private static boolean isValidKey(int key)
+	{
+		return key > 0 && key <= lastKey;
+	}
+
+	private static void grow(int minCapacity)
+	{
+		int capacity = slots.length;
+		while (capacity < minCapacity) {
+			capacity <<= 1;
+		}
+
+		Object[] newSlots = new Object[capacity];
+		System.arraycopy(slots, 0, newSlots, 0, slots.length);
+		slots = newSlots;
+
+		boolean[] newLive = new boolean[capacity];
+		System.arraycopy(live, 0, newLive, 0, live.length);
+		live = newLive;
+
+		int[] newNextFree = new int[capacity];
+		System.arraycopy(nextFree, 0, newNextFree, 0, nextFree.length);
+		nextFree = newNextFree;
+	}
 }
@@ -11,8 +11,10 @@ import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.AsyncResult;
@@ -57,11 +59,20 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport
 	protected static final int MSG_SET_PROPERTY = KrollObject.MSG_LAST_ID + 106;
 	protected static final int MSG_FIRE_EVENT = KrollObject.MSG_LAST_ID + 107;
 	protected static final int MSG_FIRE_SYNC_EVENT = KrollObject.MSG_LAST_ID + 108;
-	protected static final int MSG_LAST_ID = MSG_FIRE_SYNC_EVENT;
+	protected static final int MSG_FLUSH_PROPERTY_CHANGES = KrollObject.MSG_LAST_ID + 109;
+	protected static final int MSG_LAST_ID = MSG_FLUSH_PROPERTY_CHANGES;
 	protected static final String PROPERTY_NAME = "name";
 	protected static final String PROPERTY_HAS_JAVA_LISTENER = "_hasJavaListener";
 
 	protected static AtomicInteger proxyCounter = new AtomicInteger();
+
+	// When enabled, property changes made off the UI thread are collected per proxy
+	// and delivered to the model listener in one batch on the next main loop iteration,
+	// or before the proxy handles any other main thread message, whichever comes first.
+	private static volatile boolean coalescePropertyChanges = false;
+	private static AtomicLong propertyChangeCount = new AtomicLong();
+	private static AtomicLong propertyChangeMessageCount = new AtomicLong();
+
 	protected AtomicInteger listenerIdGenerator;
 
 	protected Map<String, HashMap<Integer, KrollEventCallback>> eventListeners;
@@ -77,6 +88,10 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport
 	protected Handler mainHandler = null;
 	protected Handler runtimeHandler = null;
 
+	// Pending property changes keyed by name, each entry is {name, oldValue, newValue}.
+	// Guarded by itself, a flush message is pending whenever the map is non-empty.
+	private final LinkedHashMap<String, Object[]> pendingPropertyChanges = new LinkedHashMap<String, Object[]>();
+
 	public static final String PROXY_ID_PREFIX = "proxy$";
 
 
@@ -247,7 +262,16 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport
 	public Handler getMainHandler()
 	{
 		if (mainHandler == null) {
-			mainHandler = new Handler(TiMessenger.getMainMessenger().getLooper(), this);
+			mainHandler = new Handler(TiMessenger.getMainMessenger().getLooper(), new Handler.Callback() {
+				public boolean handleMessage(Message msg)
+				{
+					// Changes queued before this message was sent must reach the UI first
+					if (msg.what != MSG_FLUSH_PROPERTY_CHANGES) {
+						flushPropertyChanges();
+					}
+					return KrollProxy.this.handleMessage(msg);
+				}
+			});
 		}
 
 		return mainHandler;
@@ -500,11 +524,96 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport
 			if (TiApplication.isUIThread()) {
 				modelListener.propertyChanged(name, oldValue, newValue, this);
 
+			} else if (coalescePropertyChanges) {
+				queuePropertyChange(name, oldValue, newValue);
+
 			} else {
 				KrollPropertyChange pch = new KrollPropertyChange(name, oldValue, newValue);
 				getMainHandler().obtainMessage(MSG_MODEL_PROPERTY_CHANGE, pch).sendToTarget();
+				propertyChangeCount.incrementAndGet();
+				propertyChangeMessageCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Queues a property change to be delivered with the next batch for this proxy.
+	 * Repeated writes to the same property collapse into one change that keeps
+	 * the first old value and the latest new value.
+	 */
+	private void queuePropertyChange(String name, Object oldValue, Object newValue)
+	{
+		propertyChangeCount.incrementAndGet();
+
+		boolean scheduleFlush;
+		synchronized (pendingPropertyChanges) {
+			scheduleFlush = pendingPropertyChanges.isEmpty();
+
+			Object[] change = pendingPropertyChanges.get(name);
+			if (change == null) {
+				pendingPropertyChanges.put(name, new Object[] { name, oldValue, newValue });
+
+			} else {
+				change[INDEX_VALUE] = newValue;
+			}
+		}
+
+		if (scheduleFlush) {
+			getMainHandler().sendEmptyMessage(MSG_FLUSH_PROPERTY_CHANGES);
+			propertyChangeMessageCount.incrementAndGet();
+		}
+	}
+
+	private void flushPropertyChanges()
+	{
+		Object[][] changes;
+		synchronized (pendingPropertyChanges) {
+			if (pendingPropertyChanges.isEmpty()) {
+				return;
 			}
+
+			changes = pendingPropertyChanges.values().toArray(new Object[pendingPropertyChanges.size()][]);
+			pendingPropertyChanges.clear();
 		}
+
+		firePropertiesChanged(changes);
+	}
+
+	/**
+	 * Enables or disables coalescing of property changes fired off the UI thread.
+	 * Controlled by the "ti.android.coalescepropertychanges" application property.
+	 * @param enabled whether changes should be batched per proxy.
+	 */
+	public static void setPropertyChangeCoalescing(boolean enabled)
+	{
+		coalescePropertyChanges = enabled;
+	}
+
+	public static boolean isPropertyChangeCoalescing()
+	{
+		return coalescePropertyChanges;
+	}
+
+	/**
+	 * @return the number of property changes fired off the UI thread since the last reset.
+	 */
+	public static long getPropertyChangeCount()
+	{
+		return propertyChangeCount.get();
+	}
+
+	/**
+	 * @return the number of main thread messages posted to deliver property changes since the last reset.
+	 */
+	public static long getPropertyChangeMessageCount()
+	{
+		return propertyChangeMessageCount.get();
+	}
+
+	public static void resetPropertyChangeCounts()
+	{
+		propertyChangeCount.set(0);
+		propertyChangeMessageCount.set(0);
 	}
 
 	public void onHasListenersChanged(String event, boolean hasListeners)
@@ -588,8 +697,20 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport
 			return;
 		}
 
+		if (coalescePropertyChanges) {
+			for (int i = 0; i < changesLength; ++i) {
+				Object[] change = changes[i];
+				if (change.length == 3 && change[INDEX_NAME] instanceof String) {
+					queuePropertyChange((String) change[INDEX_NAME], change[INDEX_OLD_VALUE], change[INDEX_VALUE]);
+				}
+			}
+			return;
+		}
+
 		Message message = getMainHandler().obtainMessage(MSG_MODEL_PROPERTIES_CHANGED, changes);
 		message.sendToTarget();
+		propertyChangeCount.addAndGet(changesLength);
+		propertyChangeMessageCount.incrementAndGet();
 	}
 
 	public ActivityProxy getActivityProxy()
@@ -656,6 +777,11 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport
 
 				return true;
 			}
+			case MSG_FLUSH_PROPERTY_CHANGES: {
+				flushPropertyChanges();
+
+				return true;
+			}
 			case MSG_INIT_KROLL_OBJECT: {
 				initKrollObject();
 				((AsyncResult) msg.obj).setResult(null);
@@ -67,6 +67,8 @@ public abstract class TiApplication extends Application implements Handler.Callb
 	private static final String PROPERTY_COMPILE_JS = "ti.android.compilejs";
 	private static final String PROPERTY_ENABLE_COVERAGE = "ti.android.enablecoverage";
 	private static final String PROPERTY_DEFAULT_UNIT = "ti.ui.defaultunit";
+	private static final String PROPERTY_COALESCE_PROPERTY_CHANGES = "ti.android.coalescepropertychanges";
+	private static final String PROPERTY_SCRIPT_CACHE = "ti.android.rhino.scriptcache";
 	private static long lastAnalyticsTriggered = 0;
 	private static long mainThreadId = 0;
 
@@ -357,6 +359,7 @@ public abstract class TiApplication extends Application implements Handler.Callb
 		}
 
 		TiConfig.LOGD = systemProperties.getBool("ti.android.debug", false);
+		KrollProxy.setPropertyChangeCoalescing(systemProperties.getBool(PROPERTY_COALESCE_PROPERTY_CHANGES, false));
 
 		startExternalStorageMonitor();
 		
@@ -681,6 +684,14 @@ public abstract class TiApplication extends Application implements Handler.Callb
 		return getSystemProperties().getString(PROPERTY_DEFAULT_UNIT, "system");
 	}
 
+	/**
+	 * @return whether compiled scripts should be persisted so later launches can skip compilation.
+	 */
+	public boolean isScriptCacheEnabled()
+	{
+		return getSystemProperties().getBool(PROPERTY_SCRIPT_CACHE, false);
+	}
+
 	public int getThreadStackSize()
 	{
 		return getSystemProperties().getInt(PROPERTY_THREAD_STACK_SIZE, DEFAULT_THREAD_STACK_SIZE);
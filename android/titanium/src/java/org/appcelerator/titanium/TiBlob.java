@@ -1,6 +1,6 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
@@ -11,9 +11,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
 
-import org.apache.commons.codec.binary.Base64;
 import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.Log;
@@ -21,6 +25,8 @@ import org.appcelerator.kroll.common.TiConfig;
 import org.appcelerator.kroll.util.KrollStreamHelper;
 import org.appcelerator.titanium.io.TiBaseFile;
 import org.appcelerator.titanium.io.TitaniumBlob;
+import org.appcelerator.titanium.util.TiBase64Helper;
+import org.appcelerator.titanium.util.TiConvert;
 import org.appcelerator.titanium.util.TiMimeTypeHelper;
 
 import android.graphics.Bitmap;
@@ -59,11 +65,34 @@ public class TiBlob extends KrollProxy
 	 */
 	public static final int TYPE_STRING = 3;
 
+	/**
+	 * Image encodings accepted by {@link #setImageEncoding(String, Object)}.
+	 */
+	public static final String IMAGE_FORMAT_PNG = "png";
+	public static final String IMAGE_FORMAT_JPEG = "jpeg";
+	public static final String IMAGE_FORMAT_WEBP = "webp";
+
+	private static final int DEFAULT_IMAGE_QUALITY = 100;
+	private static final int COPY_BUFFER_SIZE = 8 * 1024;
+	// Appended files up to this length are copied, larger ones are read when needed
+	private static final int MAX_COPIED_FILE_LENGTH = 64 * 1024;
+
 	private int type;
 	private Object data;
 	private String mimetype;
 	private int width, height;
 
+	// Image blobs keep the bitmap and only encode it into data when bytes are requested.
+	private Bitmap image;
+	private CompressFormat imageFormat = CompressFormat.PNG;
+	private int imageQuality = DEFAULT_IMAGE_QUALITY;
+
+	// Data and image blobs keep appended content as a list of chunks following data,
+	// either byte arrays or large files that are only read when needed, so appending
+	// doesn't copy what's already there. The chunks are joined when getBytes() is called.
+	private ArrayList<Object> chunks;
+	private int chunksLength;
+
 	private TiBlob(int type, Object data, String mimetype)
 	{
 		super();
@@ -113,20 +142,18 @@ public class TiBlob extends KrollProxy
 	}
 
 	/**
-	 * Creates a blob from a bitmap.
+	 * Creates a blob from a bitmap. The bitmap is kept as the blob's data and is only
+	 * encoded (as PNG, unless {@link #setImageEncoding(String, Object)} says otherwise)
+	 * once the blob's bytes are requested, so the bitmap must not be recycled while the
+	 * blob is in use.
 	 * @param image the image used to create blob.
 	 * @return new instance of TiBlob.
 	 * @module.api
 	 */
 	public static TiBlob blobFromImage(Bitmap image)
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		byte data[] = new byte[0];
-		if (image.compress(CompressFormat.PNG, 100, bos)) {
-			data = bos.toByteArray();
-		}
-
-		TiBlob blob = new TiBlob(TYPE_IMAGE, data, "image/bitmap");
+		TiBlob blob = new TiBlob(TYPE_IMAGE, null, "image/bitmap");
+		blob.image = image;
 		blob.width = image.getWidth();
 		blob.height = image.getHeight();
 		return blob;
@@ -180,7 +207,7 @@ public class TiBlob extends KrollProxy
 			case TYPE_DATA:
 			case TYPE_IMAGE:
 				//TODO deal with mimetypes.
-				bytes = (byte[]) data;
+				bytes = joinChunks();
 				break;
 			case TYPE_FILE:	
 				InputStream stream = getInputStream();
@@ -217,7 +244,10 @@ public class TiBlob extends KrollProxy
 				return (int) fileSize;
 			case TYPE_DATA:
 			case TYPE_IMAGE:
-				return ((byte[])data).length;
+				synchronized (this) {
+					byte[] bytes = type == TYPE_IMAGE ? getImageBytes() : (byte[]) data;
+					return bytes.length + chunksLength;
+				}
 			default:
 				// this is probably overly expensive.. is there a better way?
 				return getBytes().length;
@@ -225,7 +255,8 @@ public class TiBlob extends KrollProxy
 	}
 
 	/**
-	 * @return An InputStream for reading the data of this blob.
+	 * @return An InputStream for reading the data of this blob. Appended chunks are
+	 * read in turn, without joining them first.
 	 * @module.api
 	 */
 	public InputStream getInputStream()
@@ -238,6 +269,19 @@ public class TiBlob extends KrollProxy
 				Log.e(LCAT, e.getMessage(), e);
 				return null;
 			}
+			case TYPE_DATA:
+			case TYPE_IMAGE:
+				synchronized (this) {
+					byte[] bytes = type == TYPE_IMAGE ? getImageBytes() : (byte[]) data;
+					if (chunks == null) {
+						return new ByteArrayInputStream(bytes);
+					}
+
+					ArrayList<Object> streamChunks = new ArrayList<Object>(chunks.size() + 1);
+					streamChunks.add(bytes);
+					streamChunks.addAll(chunks);
+					return new SequenceInputStream(new ChunkEnumeration(streamChunks));
+				}
 			default:
 				return new ByteArrayInputStream(getBytes());
 		}
@@ -257,13 +301,29 @@ public class TiBlob extends KrollProxy
 				break;
 			case TYPE_IMAGE:
 			case TYPE_DATA :
-				byte[] dataBytes = (byte[]) data;
-				byte[] appendBytes = blob.getBytes();
-				byte[] newData = new byte[dataBytes.length + appendBytes.length];
-				System.arraycopy(dataBytes, 0, newData, 0, dataBytes.length);
-				System.arraycopy(appendBytes, 0, newData, dataBytes.length, appendBytes.length);
+				// Large files are read when this blob is, everything else is captured now.
+				int chunkLength = blob.getLength();
+				Object chunk;
+				if (blob.getType() == TYPE_FILE && chunkLength > MAX_COPIED_FILE_LENGTH) {
+					chunk = new FileChunk(blob, chunkLength);
+				} else {
+					byte[] bytes = blob.getBytes();
+					chunk = bytes;
+					chunkLength = bytes.length;
+				}
 
-				data = newData;
+				synchronized (this) {
+					if (type == TYPE_IMAGE) {
+						data = getImageBytes();
+						// The appended bytes no longer describe the bitmap
+						image = null;
+					}
+					if (chunks == null) {
+						chunks = new ArrayList<Object>();
+					}
+					chunks.add(chunk);
+					chunksLength += chunkLength;
+				}
 				break;
 			case TYPE_FILE :
 				throw new IllegalStateException("Not yet implemented. TYPE_FILE");
@@ -309,14 +369,301 @@ public class TiBlob extends KrollProxy
 	}
 
 	/**
-	 * @return the blob's data.
+	 * @return the blob's data. Image blobs return their encoded bytes.
 	 * @module.api
 	 */
 	public Object getData()
 	{
+		if (type == TYPE_IMAGE || type == TYPE_DATA) {
+			return joinChunks();
+		}
 		return data;
 	}
 
+	/**
+	 * Returns the bitmap backing an image blob without encoding it. The bitmap is shared
+	 * with the blob, so callers must copy it before modifying or recycling it.
+	 * @return the bitmap, or null if this blob isn't backed by one.
+	 * @module.api
+	 */
+	public Bitmap getImage()
+	{
+		Bitmap image = this.image;
+		if (image == null || image.isRecycled()) {
+			return null;
+		}
+		return image;
+	}
+
+	/**
+	 * Sets the format and quality an image blob is encoded with when its bytes are requested.
+	 * Bytes that were already encoded with a different format or quality are discarded.
+	 * @param format one of "png", "jpeg" or "webp". WebP requires Android 4.0 and falls back to PNG.
+	 * @param quality 0-100, ignored by PNG. Defaults to 100.
+	 */
+	@Kroll.method
+	public synchronized void setImageEncoding(String format, @Kroll.argument(optional=true) Object quality)
+	{
+		if (type != TYPE_IMAGE || image == null) {
+			Log.w(LCAT, "setImageEncoding is only supported for blobs created from an image.");
+			return;
+		}
+
+		CompressFormat newFormat = toCompressFormat(format);
+		int newQuality = quality == null ? DEFAULT_IMAGE_QUALITY : Math.max(0, Math.min(100, TiConvert.toInt(quality)));
+
+		if (newFormat != imageFormat || newQuality != imageQuality) {
+			imageFormat = newFormat;
+			imageQuality = newQuality;
+			data = null;
+		}
+		mimetype = "image/" + imageFormat.name().toLowerCase();
+	}
+
+	/**
+	 * Writes the content of this blob to out. Image blobs that haven't been encoded yet
+	 * are compressed straight into the stream.
+	 * @param out the stream to write to. It isn't closed.
+	 * @throws IOException if writing fails.
+	 * @module.api
+	 */
+	public void writeTo(OutputStream out) throws IOException
+	{
+		if (type == TYPE_IMAGE) {
+			synchronized (this) {
+				if (data == null && getImage() != null) {
+					if (!image.compress(imageFormat, imageQuality, out)) {
+						throw new IOException("Unable to encode image as " + imageFormat.name());
+					}
+					return;
+				}
+			}
+		}
+
+		InputStream in = getInputStream();
+		if (in == null) {
+			throw new IOException("Unable to open blob for reading");
+		}
+		try {
+			byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the base64 encoding of this blob to out, reading the blob a block at a time.
+	 * @param out the stream to write to. It isn't closed.
+	 * @throws IOException if reading the blob or writing fails.
+	 * @module.api
+	 */
+	public void writeBase64(OutputStream out) throws IOException
+	{
+		InputStream in = getInputStream();
+		if (in == null) {
+			throw new IOException("Unable to open blob for reading");
+		}
+		try {
+			TiBase64Helper.encode(in, out);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Decodes the base64 text held by this blob and writes the bytes to out, reading
+	 * the blob a block at a time.
+	 * @param out the stream to write to. It isn't closed.
+	 * @throws IOException if reading the blob or writing fails.
+	 * @module.api
+	 */
+	public void writeBase64Decoded(OutputStream out) throws IOException
+	{
+		InputStream in = getInputStream();
+		if (in == null) {
+			throw new IOException("Unable to open blob for reading");
+		}
+		try {
+			TiBase64Helper.decode(in, out);
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Joins data and any appended chunks into a single array, which then replaces them.
+	 */
+	private synchronized byte[] joinChunks()
+	{
+		byte[] bytes = type == TYPE_IMAGE ? getImageBytes() : (byte[]) data;
+		if (chunks == null) {
+			return bytes;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + chunksLength);
+		out.write(bytes, 0, bytes.length);
+		for (Object chunk : chunks) {
+			if (chunk instanceof byte[]) {
+				byte[] chunkBytes = (byte[]) chunk;
+				out.write(chunkBytes, 0, chunkBytes.length);
+
+			} else {
+				try {
+					((FileChunk) chunk).writeTo(out);
+				} catch (IOException e) {
+					// Dropping the file's content would silently corrupt the blob
+					throw new IllegalStateException("Unable to read appended blob: " + e.getMessage());
+				}
+			}
+		}
+
+		data = out.toByteArray();
+		chunks = null;
+		chunksLength = 0;
+		return (byte[]) data;
+	}
+
+	private synchronized byte[] getImageBytes()
+	{
+		if (data == null) {
+			byte[] bytes = new byte[0];
+			Bitmap image = getImage();
+			if (image != null) {
+				long start = System.currentTimeMillis();
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				if (image.compress(imageFormat, imageQuality, bos)) {
+					bytes = bos.toByteArray();
+				}
+				if (DBG) {
+					Log.d(LCAT, "Encoded " + width + "x" + height + " image as " + imageFormat.name() + " (" + bytes.length
+						+ " bytes) in " + (System.currentTimeMillis() - start) + "ms");
+				}
+
+			} else if (this.image != null) {
+				Log.w(LCAT, "Unable to encode image blob, its bitmap has been recycled.");
+			}
+			data = bytes;
+		}
+		return (byte[]) data;
+	}
+
+	/*
+	 * Opens the stream of each chunk only once the previous one has been read.
+	 */
+	private static class ChunkEnumeration implements Enumeration<InputStream>
+	{
+		private final ArrayList<Object> chunks;
+		private int index = 0;
+
+		ChunkEnumeration(ArrayList<Object> chunks)
+		{
+			this.chunks = chunks;
+		}
+
+		public boolean hasMoreElements()
+		{
+			return index < chunks.size();
+		}
+
+		public InputStream nextElement()
+		{
+			if (index >= chunks.size()) {
+				throw new NoSuchElementException();
+			}
+
+			Object chunk = chunks.get(index++);
+			if (chunk instanceof byte[]) {
+				return new ByteArrayInputStream((byte[]) chunk);
+			}
+
+			try {
+				return ((FileChunk) chunk).getInputStream();
+
+			} catch (final IOException e) {
+				// Reported when the stream is read, rather than skipping the file's content
+				return new InputStream() {
+					@Override
+					public int read() throws IOException
+					{
+						throw e;
+					}
+				};
+			}
+		}
+	}
+
+	/*
+	 * A file appended to a data blob, read only when needed. The file's length and
+	 * modification time are recorded when it is appended, and reading a file that
+	 * has changed since fails instead of returning different content.
+	 */
+	private static class FileChunk
+	{
+		private final TiBlob blob;
+		private final long length;
+		private final long modified;
+
+		FileChunk(TiBlob blob, long length)
+		{
+			this.blob = blob;
+			this.length = length;
+			this.modified = getModified();
+		}
+
+		InputStream getInputStream() throws IOException
+		{
+			checkUnchanged();
+			InputStream in = blob.getInputStream();
+			if (in == null) {
+				throw new IOException("Unable to open appended file");
+			}
+			return in;
+		}
+
+		void writeTo(OutputStream out) throws IOException
+		{
+			checkUnchanged();
+			blob.writeTo(out);
+		}
+
+		private void checkUnchanged() throws IOException
+		{
+			if (blob.getLength() != length || getModified() != modified) {
+				throw new IOException("Appended file " + blob.getNativePath() + " changed or was deleted after it was appended");
+			}
+		}
+
+		private long getModified()
+		{
+			File file = ((TiBaseFile) blob.getData()).getNativeFile();
+			return file != null ? file.lastModified() : 0;
+		}
+	}
+
+	private static CompressFormat toCompressFormat(String format)
+	{
+		if (IMAGE_FORMAT_JPEG.equalsIgnoreCase(format) || "jpg".equalsIgnoreCase(format)) {
+			return CompressFormat.JPEG;
+
+		} else if (IMAGE_FORMAT_WEBP.equalsIgnoreCase(format)) {
+			try {
+				// Looked up by name since WEBP was only added in API level 14
+				return CompressFormat.valueOf("WEBP");
+			} catch (IllegalArgumentException e) {
+				Log.w(LCAT, "WebP encoding is not supported on this device, using PNG.");
+				return CompressFormat.PNG;
+			}
+
+		} else if (format != null && !IMAGE_FORMAT_PNG.equalsIgnoreCase(format)) {
+			Log.w(LCAT, "Unknown image format " + format + ", using PNG.");
+		}
+		return CompressFormat.PNG;
+	}
+
 	/**
 	 * @return The type of this Blob.
 	 * @see TiBlob#TYPE_DATA
@@ -402,6 +749,13 @@ public class TiBlob extends KrollProxy
 	@Kroll.method
 	public String toBase64()
 	{
-		return new String(Base64.encodeBase64(getBytes()));
+		// Encode block by block rather than copying the whole blob into one array first
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) TiBase64Helper.getEncodedLength(getLength()));
+		try {
+			writeBase64(out);
+		} catch (IOException e) {
+			Log.e(LCAT, "Unable to encode blob: " + e.getMessage(), e);
+		}
+		return new String(out.toByteArray());
 	}
 }
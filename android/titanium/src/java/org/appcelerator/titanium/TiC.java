@@ -811,6 +811,11 @@ public class TiC
 	 */
 	public static final String PROPERTY_FILE = "file";
 
+	/**
+	 * @module.api
+	 */
+	public static final String PROPERTY_FILTER_ANCHORED = "filterAnchored";
+
 	/**
 	 * @module.api
 	 */
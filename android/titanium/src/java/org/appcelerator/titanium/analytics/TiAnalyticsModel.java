@@ -1,12 +1,13 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
 package org.appcelerator.titanium.analytics;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.titanium.util.TiPlatformHelper;
@@ -26,6 +27,9 @@ public class TiAnalyticsModel extends SQLiteOpenHelper{
 	private static final String DB_NAME = "tianalytics.db";
 	private static final int DB_VERSION = 4;
 
+	// Ids per delete statement, keeps statements short when deleting a large batch
+	private static final int DELETE_CHUNK_SIZE = 500;
+
 	public TiAnalyticsModel(Context context)
 	{
 		super(context, DB_NAME, null, DB_VERSION);
@@ -170,22 +174,34 @@ public class TiAnalyticsModel extends SQLiteOpenHelper{
 		}
 	}
 
+	/**
+	 * Deletes the events with the given ids in a single transaction.
+	 */
 	public void deleteEvents(int records[])
 	{
 		if (records.length > 0) {
 			SQLiteDatabase db = null;
 			try {
 				db = getWritableDatabase();
-				StringBuilder sb = new StringBuilder(256);
-				sb.append("delete from Events where _id in (");
-				for (int i = 0; i < records.length; i++) {
-					if (i > 0) {
-						sb.append(",");
+				db.beginTransaction();
+				try {
+					for (int start = 0; start < records.length; start += DELETE_CHUNK_SIZE) {
+						int end = Math.min(records.length, start + DELETE_CHUNK_SIZE);
+						StringBuilder sb = new StringBuilder(256);
+						sb.append("delete from Events where _id in (");
+						for (int i = start; i < end; i++) {
+							if (i > start) {
+								sb.append(",");
+							}
+							sb.append(records[i]);
+						}
+						sb.append(")");
+						db.execSQL(sb.toString());
 					}
-					sb.append(records[i]);
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
 				}
-				sb.append(")");
-				db.execSQL(sb.toString());
 			} catch (SQLException e) {
 				Log.e(LCAT, "Error deleting events :" + e);
 			} finally {
@@ -228,7 +244,17 @@ public class TiAnalyticsModel extends SQLiteOpenHelper{
 	}
 
 	public HashMap<Integer,JSONObject> getEventsAsJSON(int limit) {
-		HashMap<Integer, JSONObject> result = new HashMap<Integer,JSONObject>(limit);
+		return getEventsAsJSON(limit, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the oldest events, in order, up to limit events or until their payloads
+	 * add up to more than maxPayloadLength characters. At least one event is returned
+	 * when there are any, however large its payload.
+	 */
+	public HashMap<Integer,JSONObject> getEventsAsJSON(int limit, int maxPayloadLength) {
+		HashMap<Integer, JSONObject> result = new LinkedHashMap<Integer,JSONObject>();
+		int payloadLength = 0;
 
 		SQLiteDatabase db = null;
 		Cursor c = null;
@@ -256,12 +282,17 @@ public class TiAnalyticsModel extends SQLiteOpenHelper{
 				json.put("sid", c.getString(6));
 				json.put("aguid", c.getString(7));
 				boolean isJSON = c.getInt(8) == 1 ? true : false;
+				String payload = c.getString(9);
 				if (isJSON) {
-					json.put("data", new JSONObject(c.getString(9)));
+					json.put("data", new JSONObject(payload));
 				} else {
-					json.put("data", c.getString(9));
+					json.put("data", payload);
 				}
 
+				payloadLength += payload != null ? payload.length() : 0;
+				if (payloadLength > maxPayloadLength && !result.isEmpty()) {
+					break;
+				}
 				result.put(seq, json);
 			}
 		} catch (JSONException e) {
@@ -1,25 +1,36 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
 package org.appcelerator.titanium.analytics;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiConfig;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -33,16 +44,31 @@ import android.os.IBinder;
 public class TiAnalyticsService extends Service
 {
 	private final static String LCAT = "TiAnalyticsSvc";
+	private final static boolean DBG = TiConfig.LOGD;
 
-	private final static int BUCKET_SIZE_FAST_NETWORK = 10;
+	// Events are sent in batches of up to this many events or payload characters, whichever comes first
+	private final static int BUCKET_SIZE_FAST_NETWORK = 500;
 	@SuppressWarnings("unused")
-	private final static int BUCKET_SIZE_SLOW_NETWORK = 5;
+	private final static int BUCKET_SIZE_SLOW_NETWORK = 100;
+	private final static int MAX_BATCH_PAYLOAD = 256 * 1024;
+
+	// A failed batch is retried after 2, 4, 8 and 16 seconds before giving up until the next start
+	private final static int MAX_ATTEMPTS = 5;
+	private final static long INITIAL_BACKOFF = 2000;
+
+	private final static int CONNECTION_TIMEOUT = 5000;
+	private final static int SOCKET_TIMEOUT = 30000;
 
 	private final static String ANALYTICS_URL = "https://api.appcelerator.net/p/v2/mobile-track";
 
 	private static AtomicBoolean sending;
 
+	// Shared by every batch and every start of the service so the connection is kept alive
+	private static HttpClient httpClient;
+	private static boolean gzipRequests = true;
+
 	private ConnectivityManager connectivityManager;
+	private volatile int lastStartId;
 	public TiAnalyticsService() {
 		if (sending == null) {
 			this.sending = new AtomicBoolean(false);
@@ -68,8 +94,11 @@ public class TiAnalyticsService extends Service
 	public void onStart(Intent intent, final int startId) {
 		super.onStart(intent, startId);
 
+		// The sending thread stops the service with the latest id once it runs out of events
+		lastStartId = startId;
 		if (!sending.compareAndSet(false, true)) {
 			Log.i(LCAT, "Send already in progress, skipping intent");
+			return;
 		}
 
 		final TiAnalyticsService self = this;
@@ -82,20 +111,18 @@ public class TiAnalyticsService extends Service
 
 					if (connectivityManager == null) {
 						Log.w(LCAT, "Connectivity manager not available.");
-						stopSelf(startId);
 						return;
 					}
 					TiAnalyticsModel model = new TiAnalyticsModel(self);
 					if (!model.hasEvents()) {
 						Log.i(LCAT, "No events to send.");
-						stopSelf(startId);
 						return;
 					}
 
 					while(model.hasEvents()) {
 						if(canSend())
 						{
-							HashMap<Integer,JSONObject> events = model.getEventsAsJSON(BUCKET_SIZE_FAST_NETWORK);
+							HashMap<Integer,JSONObject> events = model.getEventsAsJSON(BUCKET_SIZE_FAST_NETWORK, MAX_BATCH_PAYLOAD);
 
 							int len = events.size();
 							int[] eventIds = new int[len];
@@ -110,41 +137,18 @@ public class TiAnalyticsService extends Service
 								eventIds[i] = id;
 								records.put(events.get(id));
 							}
-							boolean deleteEvents = true;
 							if (records.length() > 0) {
 								String jsonData = records.toString() + "\n";
 
 								Log.i(LCAT, "Sending " + records.length() + " analytics events.");
-						   		try {
-							   		HttpPost httpPost = new HttpPost(ANALYTICS_URL);
-							   		StringEntity entity = new StringEntity(jsonData);
-							   		entity.setContentType("text/json");
-							   		httpPost.setEntity(entity);
-
-							   		HttpParams httpParams = new BasicHttpParams();
-							   		HttpConnectionParams.setConnectionTimeout(httpParams, 5000); //TODO use property
-							   		//HttpConnectionParams.setSoTimeout(httpParams, 15000); //TODO use property
-							   		HttpClient client = new DefaultHttpClient(httpParams);
-
-							   		ResponseHandler<String> responseHandler = new BasicResponseHandler();
-							   		client.getParams().setBooleanParameter("http.protocol.expect-continue", false);
-
-						   			@SuppressWarnings("unused")
-									String response = client.execute(httpPost, responseHandler);
-						   		} catch (Throwable t) {
-						   			Log.e(LCAT, "Error posting events: " + t.getMessage(), t);
-						   			deleteEvents = false;
-						   			records = null;
-						   			break;
-						   		}
+								if (!sendWithBackoff(jsonData)) {
+									// events are kept and sent on the next start
+									break;
+								}
 							}
 
 							records = null;
-
-							if (deleteEvents) {
-								model.deleteEvents(eventIds);
-							}
-
+							model.deleteEvents(eventIds);
 							events.clear();
 						} else {
 							Log.i(LCAT, "Network unavailable, can't send analytics");
@@ -153,15 +157,14 @@ public class TiAnalyticsService extends Service
 						}
 					}
 
-					Log.w(LCAT, "Stopping Analytics Service");
-					stopSelf(startId);
 				} catch (Throwable t) {
 					Log.e(LCAT, "Unhandle exception in analytics thread: ", t);
-					stopSelf(startId);
 				} finally {
 					if (!sending.compareAndSet(true, false)) {
 						Log.w(LCAT, "Expected to be in a sending state. Sending was already false.");
 					}
+					Log.w(LCAT, "Stopping Analytics Service");
+					stopSelf(lastStartId);
 				}
 			}
 		});
@@ -169,6 +172,88 @@ public class TiAnalyticsService extends Service
 		t.start();
 	}
 
+	/*
+	 * Posts a batch, retrying with exponential backoff while the network is available.
+	 * Returns whether the batch was delivered.
+	 */
+	private boolean sendWithBackoff(String jsonData) throws InterruptedException
+	{
+		long backoff = INITIAL_BACKOFF;
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+			try {
+				post(jsonData);
+				return true;
+
+			} catch (HttpResponseException e) {
+				if (gzipRequests && e.getStatusCode() == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) {
+					// The server doesn't accept compressed requests, send them as-is from now on.
+					// Other client errors are about the batch itself and are retried as they are.
+					Log.w(LCAT, "Compressed analytics rejected with status " + e.getStatusCode() + ", sending uncompressed");
+					gzipRequests = false;
+					continue;
+				}
+				Log.e(LCAT, "Error posting events: " + e.getMessage(), e);
+
+			} catch (Throwable t) {
+				Log.e(LCAT, "Error posting events: " + t.getMessage(), t);
+			}
+
+			if (attempt == MAX_ATTEMPTS || !canSend()) {
+				break;
+			}
+			if (DBG) {
+				Log.d(LCAT, "Retrying in " + backoff + "ms");
+			}
+			Thread.sleep(backoff);
+			backoff *= 2;
+		}
+		return false;
+	}
+
+	private void post(String jsonData) throws IOException
+	{
+		byte[] data = jsonData.getBytes("UTF-8");
+		boolean gzip = gzipRequests;
+		if (gzip) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4);
+			GZIPOutputStream out = new GZIPOutputStream(bytes);
+			out.write(data);
+			out.close();
+			if (DBG) {
+				Log.d(LCAT, "Compressed " + data.length + " bytes of events to " + bytes.size());
+			}
+			data = bytes.toByteArray();
+		}
+
+		HttpPost httpPost = new HttpPost(ANALYTICS_URL);
+		ByteArrayEntity entity = new ByteArrayEntity(data);
+		entity.setContentType("text/json");
+		if (gzip) {
+			entity.setContentEncoding("gzip");
+		}
+		httpPost.setEntity(entity);
+
+		ResponseHandler<String> responseHandler = new BasicResponseHandler();
+		getHttpClient().execute(httpPost, responseHandler);
+	}
+
+	private static synchronized HttpClient getHttpClient()
+	{
+		if (httpClient == null) {
+			HttpParams httpParams = new BasicHttpParams();
+			HttpConnectionParams.setConnectionTimeout(httpParams, CONNECTION_TIMEOUT);
+			HttpConnectionParams.setSoTimeout(httpParams, SOCKET_TIMEOUT);
+			httpParams.setBooleanParameter("http.protocol.expect-continue", false);
+
+			SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+			registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+			httpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(httpParams, registry), httpParams);
+		}
+		return httpClient;
+	}
+
 	private boolean canSend() {
 		boolean result = false;
 
@@ -441,7 +441,7 @@ public abstract class TiBaseFile
 	protected void copyStream(Reader r, Writer w) throws IOException {
 		char[] buf = new char[8096];
 		int count = 0;
-		while((count = r.read(buf, 0, count)) != -1) {
+		while((count = r.read(buf, 0, buf.length)) != -1) {
 			w.write(buf, 0, count);
 		}
 	}
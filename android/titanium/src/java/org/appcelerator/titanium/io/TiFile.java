@@ -393,7 +393,15 @@ public class TiFile extends TiBaseFile
 				if (binary) {
 					copyStream(blob.getInputStream(), outstream);
 				} else {
-					outwriter.write(new String(blob.getBytes(),"UTF-8"));
+					BufferedReader ir = null;
+					try {
+						ir = new BufferedReader(new InputStreamReader(blob.getInputStream(), "utf-8"));
+						copyStream(ir, outwriter);
+					} finally {
+						if (ir != null) {
+							ir.close();
+						}
+					}
 				}
 			}
 		}
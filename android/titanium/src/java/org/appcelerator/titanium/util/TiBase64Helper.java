@@ -0,0 +1,129 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Streaming base64 encoding and decoding.
+ *
+ * Input is processed in blocks that are a multiple of 3 bytes (when encoding)
+ * or 4 characters (when decoding), so the output of each block can be written
+ * out as-is and the whole stream never has to be held in memory.
+ */
+public class TiBase64Helper
+{
+	// Multiples of 3 and 4 so blocks encode and decode without padding in between.
+	private static final int ENCODE_BLOCK_SIZE = 3 * 1024;
+	private static final int DECODE_BLOCK_SIZE = 4 * 1024;
+
+	/**
+	 * Base64 encodes everything read from in and writes it to out, without line breaks.
+	 * Neither stream is closed.
+	 * @return the number of characters written.
+	 */
+	public static long encode(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] block = new byte[ENCODE_BLOCK_SIZE];
+		long written = 0;
+		int count;
+		while ((count = readFully(in, block)) > 0) {
+			byte[] chunk = block;
+			if (count < block.length) {
+				chunk = new byte[count];
+				System.arraycopy(block, 0, chunk, 0, count);
+			}
+
+			byte[] encoded = Base64.encodeBase64(chunk);
+			out.write(encoded);
+			written += encoded.length;
+
+			if (count < block.length) {
+				break;
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Decodes the base64 text read from in and writes the bytes to out. Characters
+	 * outside of the base64 alphabet (such as line breaks) are skipped. Neither stream is closed.
+	 * @return the number of bytes written.
+	 */
+	public static long decode(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] buffer = new byte[DECODE_BLOCK_SIZE];
+		byte[] block = new byte[DECODE_BLOCK_SIZE];
+		int blockLength = 0;
+		long written = 0;
+		int count;
+
+		while ((count = in.read(buffer)) != -1) {
+			for (int i = 0; i < count; i++) {
+				byte b = buffer[i];
+				if (!isBase64(b)) {
+					continue;
+				}
+
+				block[blockLength++] = b;
+				if (blockLength == block.length) {
+					written += writeDecoded(block, blockLength, out);
+					blockLength = 0;
+				}
+			}
+		}
+
+		if (blockLength > 0) {
+			written += writeDecoded(block, blockLength, out);
+		}
+		return written;
+	}
+
+	/**
+	 * @return the length of the base64 encoding of length bytes.
+	 */
+	public static long getEncodedLength(long length)
+	{
+		return ((length + 2) / 3) * 4;
+	}
+
+	private static int writeDecoded(byte[] block, int length, OutputStream out) throws IOException
+	{
+		byte[] chunk = block;
+		if (length < block.length) {
+			chunk = new byte[length];
+			System.arraycopy(block, 0, chunk, 0, length);
+		}
+
+		byte[] decoded = Base64.decodeBase64(chunk);
+		out.write(decoded);
+		return decoded.length;
+	}
+
+	private static int readFully(InputStream in, byte[] buffer) throws IOException
+	{
+		int total = 0;
+		while (total < buffer.length) {
+			int count = in.read(buffer, total, buffer.length - total);
+			if (count == -1) {
+				break;
+			}
+			total += count;
+		}
+		return total;
+	}
+
+	private static boolean isBase64(byte b)
+	{
+		return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9')
+			|| b == '+' || b == '/' || b == '=';
+	}
+}
@@ -152,9 +152,9 @@ public class TiDownloadManager implements Handler.Callback
 		public void run()
 		{
 			try {
-				// all we want to do is instigate putting this into the cache, and this
-				// is enough for that:
-				InputStream stream = uri.toURL().openStream();
+				// all we want to do is instigate putting this into the cache (or
+				// revalidating a stale entry), and this is enough for that:
+				InputStream stream = TiResponseCache.openStream(uri);
 				KrollStreamHelper.pump(stream, null);
 				stream.close();
 
@@ -172,8 +172,12 @@ public class TiFileHelper
 				} catch (URISyntaxException uriException) {
 				}
 
-				URL u = new URL(path);
-				InputStream lis = u.openStream();
+				InputStream lis;
+				try {
+					lis = TiResponseCache.openStream(new URI(path));
+				} catch (URISyntaxException uriException) {
+					lis = new URL(path).openStream();
+				}
 				ByteArrayOutputStream bos = null;
 				try {
 					bos = new ByteArrayOutputStream(8192);
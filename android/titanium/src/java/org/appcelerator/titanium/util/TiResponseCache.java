@@ -1,32 +1,35 @@
 package org.appcelerator.titanium.util;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.FileWriter;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.CacheRequest;
 import java.net.CacheResponse;
+import java.net.HttpURLConnection;
 import java.net.ResponseCache;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLConnection;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.kroll.common.TiConfig;
 import org.appcelerator.titanium.TiApplication;
@@ -36,15 +39,20 @@ public class TiResponseCache extends ResponseCache
 	private static final boolean DBG = TiConfig.LOGD;
 	private static final String TAG = "TiResponseCache";
 
-	private static final String HEADER_SUFFIX = ".hdr";
-	private static final String BODY_SUFFIX   = ".bdy";
 	private static final String CACHE_SIZE_KEY = "ti.android.cache.size.max";
 	private static final int DEFAULT_CACHE_SIZE = 25 * 1024 * 1024; // 25MB
 	private static final int INITIAL_DELAY = 10000;
 	private static final int CLEANUP_DELAY = 60000;
 	private static final String LCAT = "TiResponseCache"; 
+	// Internal header recording when the response was stored, stripped before headers are handed out
+	private static final String STORED_AT_HEADER = "x-ti-cache-stored-at";
+	// Heuristic freshness for responses with only a Last-Modified header, see RFC 2616 13.2.4
+	private static final double HEURISTIC_FRESHNESS_FACTOR = 0.1;
+	private static final Pattern MAX_AGE_PATTERN = Pattern.compile("(?:^|[,\\s])max-age\\s*=\\s*\"?(\\d+)");
 	private static HashMap<String, ArrayList<CompleteListener>> completeListeners = new HashMap<String, ArrayList<CompleteListener>>();
 	private static long maxCacheSize = 0;
+	// Hashes of entries whose body is currently being written
+	private static HashSet<String> pendingWrites = new HashSet<String>();
 
 	private static ScheduledExecutorService cleanupExecutor = null;
 	
@@ -55,48 +63,22 @@ public class TiResponseCache extends ResponseCache
 
 	private static class TiCacheCleanup implements Runnable
 	{
-		private File cacheDir;
+		private TiResponseCache cache;
 		private long maxSize;
-		public TiCacheCleanup(File cacheDir, long maxSize)
+		public TiCacheCleanup(TiResponseCache cache, long maxSize)
 		{
-			this.cacheDir  = cacheDir;
+			this.cache = cache;
 			this.maxSize = maxSize;
 		}
 
 		// TODO @Override
 		public void run()
 		{
-			// Build up a list of access times
-			HashMap<Long, File> lastTime = new HashMap<Long, File>();
-			for (File hdrFile : cacheDir.listFiles(new FilenameFilter() {
-					// TODO @Override
-					public boolean accept(File dir, String name) {
-						return name.endsWith(HEADER_SUFFIX);
-					}
-				}))
-			{
-				lastTime.put(hdrFile.lastModified(), hdrFile);
-			}
-			
-			// Ensure that the cache is under the required size
-			List<Long> sz = new ArrayList<Long>(lastTime.keySet());
-			Collections.sort(sz);
-			Collections.reverse(sz);
-			long cacheSize = 0;
-			for (Long last : sz) {
-				File hdrFile = lastTime.get(last);
-				String h = hdrFile.getName().substring(0, hdrFile.getName().lastIndexOf('.')); // Hash
-				File bdyFile = new File(cacheDir, h + BODY_SUFFIX);
-				
-				cacheSize += hdrFile.length();
-				cacheSize += bdyFile.length();
-				if (cacheSize > this.maxSize) {
-					hdrFile.delete();
-					bdyFile.delete();
-				}
-			}
+			// Ensure that the cache is under the required size, evicting the least
+			// recently used entries first, and persist any pending journal lines.
+			// The index is read on every run since setCacheDir replaces it.
+			cache.index.trimToSize(maxSize);
 		}
-		
 	}
 	
 	private static class TiCacheResponse extends CacheResponse {
@@ -127,11 +109,13 @@ public class TiResponseCache extends ResponseCache
 	private static class TiCacheOutputStream extends FileOutputStream
 	{
 		private URI uri;
-		public TiCacheOutputStream(URI uri, File file)
+		private TiCacheRequest request;
+		public TiCacheOutputStream(URI uri, File file, TiCacheRequest request)
 			throws FileNotFoundException
 		{
 			super(file);
 			this.uri = uri;
+			this.request = request;
 		}
 
 		@Override
@@ -139,22 +123,31 @@ public class TiResponseCache extends ResponseCache
 			throws IOException
 		{
 			super.close();
+			request.commit();
+			finishPendingWrite(uri);
 			fireCacheCompleted(uri);
 		}
 	}
 
 	private static class TiCacheRequest extends CacheRequest
 	{
+		private TiResponseCache cache;
 		private URI uri;
+		private String hash;
 		private File bFile, hFile;
+		private Map<String, List<String>> headers;
 		private long contentLength;
 
-		public TiCacheRequest(URI uri, File bFile, File hFile, long contentLength)
+		public TiCacheRequest(TiResponseCache cache, URI uri, String hash, File bFile, File hFile,
+			Map<String, List<String>> headers, long contentLength)
 		{
 			super();
+			this.cache = cache;
 			this.uri = uri;
+			this.hash = hash;
 			this.bFile = bFile;
 			this.hFile = hFile;
+			this.headers = headers;
 			this.contentLength = contentLength;
 		}
 
@@ -162,7 +155,16 @@ public class TiResponseCache extends ResponseCache
 		public OutputStream getBody()
 			throws IOException
 		{
-			return new TiCacheOutputStream(uri, bFile);
+			return new TiCacheOutputStream(uri, bFile, this);
+		}
+
+		/**
+		 * Adds the completely written entry to the index.
+		 */
+		public void commit()
+		{
+			cache.index.put(hash, headers, hFile.length(), bFile.length());
+			cache.index.trimToSize(maxCacheSize);
 		}
 
 		@Override
@@ -173,9 +175,9 @@ public class TiResponseCache extends ResponseCache
 			// whenever the file is closed, successful writes or not
 			if (bFile.length() != this.contentLength) {
 				Log.e(LCAT, "Failed to add item to the cache!");
-				if (bFile.exists()) bFile.delete();
-				if (hFile.exists()) hFile.delete();
+				cache.index.remove(hash);
 			}
+			finishPendingWrite(uri);
 		}
 	}
 
@@ -184,12 +186,67 @@ public class TiResponseCache extends ResponseCache
 		TiResponseCache rc = (TiResponseCache) TiResponseCache.getDefault();
 		if (rc == null) return false;
 		if (rc.cacheDir == null) return false;
-		
+
 		String hash = DigestUtils.shaHex(uri.toString());
-		File hFile = new File(rc.cacheDir, hash + HEADER_SUFFIX);
-		File bFile = new File(rc.cacheDir, hash + BODY_SUFFIX);
-		if (!bFile.exists() || !hFile.exists()) return false;
-		return true;
+		TiResponseCacheIndex.Entry entry = rc.index.peek(hash);
+		if (entry == null) return false;
+
+		// Stale entries must be revalidated, see openStream()
+		try {
+			return isFresh(rc.index.getHeaders(entry));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Opens a stream to the given URI, revalidating a stale cached response
+	 * with a conditional request (If-None-Match / If-Modified-Since). When the
+	 * server answers 304 Not Modified the stored headers are refreshed and the
+	 * cached body is returned without downloading it again.
+	 * @param uri the URI to open.
+	 * @return a stream of the response body.
+	 * @throws IOException if the request fails.
+	 */
+	public static InputStream openStream(URI uri) throws IOException
+	{
+		URLConnection conn = uri.toURL().openConnection();
+		TiResponseCache rc = (TiResponseCache) TiResponseCache.getDefault();
+		if (rc == null || rc.cacheDir == null || !(conn instanceof HttpURLConnection)) {
+			return conn.getInputStream();
+		}
+
+		String hash = DigestUtils.shaHex(uri.toString());
+		TiResponseCacheIndex.Entry entry = rc.index.peek(hash);
+		if (entry == null) {
+			return conn.getInputStream();
+		}
+
+		Map<String, List<String>> headers = rc.index.getHeaders(entry);
+		String etag = getHeader(headers, "etag");
+		String lastModified = getHeader(headers, "last-modified");
+		if (etag != null) {
+			conn.setRequestProperty("If-None-Match", etag);
+		}
+		if (lastModified != null) {
+			conn.setRequestProperty("If-Modified-Since", lastModified);
+		}
+
+		HttpURLConnection httpConn = (HttpURLConnection) conn;
+		if (httpConn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			rc.refreshHeaders(hash, makeLowerCaseHeaders(httpConn.getHeaderFields()));
+			httpConn.disconnect();
+
+			InputStream cached = openCachedStream(uri);
+			if (cached != null) {
+				return cached;
+			}
+
+			// The body went away while revalidating, fetch it unconditionally
+			return uri.toURL().openStream();
+		}
+
+		return httpConn.getInputStream();
 	}
 
 	public static InputStream openCachedStream(URI uri)
@@ -204,17 +261,15 @@ public class TiResponseCache extends ResponseCache
 		}
 		
 		String hash = DigestUtils.shaHex(uri.toString());
-		File hFile = new File(rc.cacheDir, hash + HEADER_SUFFIX);
-		File bFile = new File(rc.cacheDir, hash + BODY_SUFFIX);
-
-		if (!bFile.exists() || !hFile.exists()) {
+		if (rc.index.get(hash) == null) {
 			return null;
 		}
 
 		try {
-			return new FileInputStream(bFile);
+			return new FileInputStream(rc.index.getBodyFile(hash));
 		} catch (FileNotFoundException e) {
-			// Fallback to URL download?
+			// The body was removed behind our back, drop the entry and fallback to URL download
+			rc.index.remove(hash);
 			return null;
 		}
 	}
@@ -231,11 +286,13 @@ public class TiResponseCache extends ResponseCache
 	}
 
 	private File cacheDir = null;
+	private volatile TiResponseCacheIndex index = null;
 
 	public TiResponseCache(File cachedir, TiApplication tiApp) {
 		super();
 		assert cachedir.isDirectory() : "cachedir MUST be a directory";
 		cacheDir = cachedir;
+		index = new TiResponseCacheIndex(cacheDir, getPendingWrites());
 
 		maxCacheSize = tiApp.getSystemProperties().getInt(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE) * 1024;
 		if(DBG) {
@@ -243,7 +300,7 @@ public class TiResponseCache extends ResponseCache
 		}
 
 		cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
-		TiCacheCleanup command = new TiCacheCleanup(cacheDir, maxCacheSize);
+		TiCacheCleanup command = new TiCacheCleanup(this, maxCacheSize);
 		cleanupExecutor.scheduleWithFixedDelay(command, INITIAL_DELAY, CLEANUP_DELAY, TimeUnit.MILLISECONDS);
 	}
 
@@ -253,37 +310,180 @@ public class TiResponseCache extends ResponseCache
 	{
 		if (uri == null || cacheDir == null) return null;
 		
-		// Get our key, which is a hash of the URI
+		// The request explicitly asks to bypass the cache
+		if (rqstHeaders != null) {
+			String requestCacheControl = getHeader(makeLowerCaseHeaders(rqstHeaders), "cache-control");
+			if (requestCacheControl != null && requestCacheControl.matches("^.*(no-cache|no-store).*")) {
+				return null;
+			}
+		}
+
+		// Get our key, which is a hash of the URI, and look it up in the index
 		String hash = DigestUtils.shaHex(uri.toString());
-		
-		// Make our cache files
-		File hFile = new File(cacheDir, hash + HEADER_SUFFIX);
-		File bFile = new File(cacheDir, hash + BODY_SUFFIX);
-		
-		if (!bFile.exists() || !hFile.exists()) {
+		TiResponseCacheIndex.Entry entry = index.get(hash);
+		if (entry == null) {
 			return null;
 		}
 
-		// Read in the headers
-		Map<String, List<String>> headers = new HashMap<String, List<String>>();
-		BufferedReader rdr = new BufferedReader(new FileReader(hFile), 1024);
-		for (String line=rdr.readLine() ; line != null ; line=rdr.readLine()) {
-			String keyval[] = line.split("=", 2);
-			if (!headers.containsKey(keyval[0])) {
-				headers.put(keyval[0], new ArrayList<String>());
+		Map<String, List<String>> headers = index.getHeaders(entry);
+
+		// A stale response has to go to the network, see openStream() for revalidation
+		if (!isFresh(headers)) {
+			if (DBG) {
+				Log.d(LCAT, "Cached response is stale: " + uri);
 			}
-			headers.get(keyval[0]).add(keyval[1]);
+			return null;
 		}
-		rdr.close();
-		
-		// Update the access log
-		hFile.setLastModified(System.currentTimeMillis());
-		
+		headers.remove(STORED_AT_HEADER);
+
 		// Respond with the cache
-		return new TiCacheResponse(headers, new FileInputStream(bFile));
+		try {
+			return new TiCacheResponse(headers, new FileInputStream(index.getBodyFile(hash)));
+		} catch (FileNotFoundException e) {
+			index.remove(hash);
+			return null;
+		}
+	}
+
+	private static String formatHeaders(Map<String, List<String>> headers, boolean skipTransferEncodingHeader)
+	{
+		String newl = System.getProperty("line.separator");
+		StringBuilder sb = new StringBuilder();
+		for (String hdr : headers.keySet()) {
+			if (!skipTransferEncodingHeader || !hdr.equals("transfer-encoding")) {
+				for (String val : headers.get(hdr)) {
+					sb.append(hdr);
+					sb.append("=");
+					sb.append(val);
+					sb.append(newl);
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void writeHeaders(File hFile, String headers) throws IOException
+	{
+		FileWriter hWriter = new FileWriter(hFile);
+		try {
+			hWriter.write(headers);
+		} finally { 
+			hWriter.close();
+		}
+	}
+
+	/**
+	 * Merges the headers of a 304 Not Modified response into the stored
+	 * headers and restarts the freshness lifetime of the entry.
+	 */
+	protected synchronized void refreshHeaders(String hash, Map<String, List<String>> responseHeaders) throws IOException
+	{
+		TiResponseCacheIndex.Entry entry = index.peek(hash);
+		if (entry == null) {
+			return;
+		}
+
+		Map<String, List<String>> headers = index.getHeaders(entry);
+		for (String hdr : responseHeaders.keySet()) {
+			// these describe the (empty) 304 body, not the stored one
+			if (hdr.equals("content-length") || hdr.equals("transfer-encoding")) {
+				continue;
+			}
+			headers.put(hdr, responseHeaders.get(hdr));
+		}
+		setStoredAt(headers, System.currentTimeMillis());
+
+		File hFile = index.getHeaderFile(hash);
+		writeHeaders(hFile, formatHeaders(headers, false));
+		index.updateHeaders(hash, headers, hFile.length());
+
+		if (DBG) {
+			Log.d(LCAT, "Revalidated cached response: " + hash);
+		}
+	}
+
+	private static void setStoredAt(Map<String, List<String>> headers, long time)
+	{
+		List<String> storedAt = new ArrayList<String>(1);
+		storedAt.add(String.valueOf(time));
+		headers.put(STORED_AT_HEADER, storedAt);
+	}
+
+	/**
+	 * @return whether the stored response can be served without revalidation.
+	 */
+	private static boolean isFresh(Map<String, List<String>> headers)
+	{
+		String storedAtValue = getHeader(headers, STORED_AT_HEADER);
+		if (storedAtValue == null) {
+			// Entries written before freshness was tracked are served as before
+			return true;
+		}
+
+		long storedAt;
+		try {
+			storedAt = Long.parseLong(storedAtValue);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+
+		long age = System.currentTimeMillis() - storedAt;
+		return age >= 0 && age < getFreshnessLifetime(headers, storedAt);
+	}
+
+	/**
+	 * Computes how long a response stays fresh in milliseconds from its
+	 * Cache-Control max-age, Expires or Last-Modified headers.
+	 */
+	private static long getFreshnessLifetime(Map<String, List<String>> headers, long storedAt)
+	{
+		String cacheControl = getHeader(headers, "cache-control");
+		if (cacheControl != null) {
+			cacheControl = cacheControl.toLowerCase();
+			if (cacheControl.matches("^.*(no-cache|must-revalidate).*") && !cacheControl.contains("max-age")) {
+				return 0;
+			}
+
+			Matcher maxAge = MAX_AGE_PATTERN.matcher(cacheControl);
+			if (maxAge.find()) {
+				try {
+					return Long.parseLong(maxAge.group(1)) * 1000;
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+
+		long date = parseDate(getHeader(headers, "date"), storedAt);
+
+		String expires = getHeader(headers, "expires");
+		if (expires != null) {
+			// Invalid values such as "0" mean already expired
+			return Math.max(0, parseDate(expires, date) - date);
+		}
+
+		String lastModified = getHeader(headers, "last-modified");
+		if (lastModified != null) {
+			long lastModifiedTime = parseDate(lastModified, date);
+			return Math.max(0, (long) ((date - lastModifiedTime) * HEURISTIC_FRESHNESS_FACTOR));
+		}
+
+		return 0;
+	}
+
+	private static long parseDate(String value, long defaultValue)
+	{
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return DateUtils.parseDate(value).getTime();
+		} catch (DateParseException e) {
+			return defaultValue;
+		}
 	}
 
-	protected String getHeader(Map<String, List<String>> headers, String header)
+	protected static String getHeader(Map<String, List<String>> headers, String header)
 	{
 		List<String> values = headers.get(header);
 		if (values == null || values.size() == 0) {
@@ -292,7 +492,7 @@ public class TiResponseCache extends ResponseCache
 		return values.get(values.size() - 1);
 	}
 
-	protected int getHeaderInt(Map<String, List<String>> headers, String header, int defaultValue)
+	protected static int getHeaderInt(Map<String, List<String>> headers, String header, int defaultValue)
 	{
 		String value = getHeader(headers, header);
 		if (value == null) {
@@ -305,7 +505,7 @@ public class TiResponseCache extends ResponseCache
 		}
 	}
 
-	private Map<String, List<String>> makeLowerCaseHeaders(Map<String, List<String>> origHeaders)
+	private static Map<String, List<String>> makeLowerCaseHeaders(Map<String, List<String>> origHeaders)
 	{
 		Map<String, List<String>> headers = new HashMap<String, List<String>>(origHeaders.size());
 		for (String key : origHeaders.keySet()) {
@@ -329,67 +529,114 @@ public class TiResponseCache extends ResponseCache
 		// Gingerbread 2.3 bug: getHeaderField tries re-opening the InputStream
 		// getHeaderFields() just checks the response itself
 		Map<String, List<String>> headers = makeLowerCaseHeaders(conn.getHeaderFields());
+
+		// Work around an android bug which gives us the wrong URI
+		try {
+			uri = conn.getURL().toURI();
+		} catch (URISyntaxException e) {}
+
+		// Get our key, which is a hash of the URI
+		String hash = DigestUtils.shaHex(uri.toString());
+
+		// Make our cache files
+		File hFile = index.getHeaderFile(hash);
+		File bFile = index.getBodyFile(hash);
+
+		if (conn instanceof HttpURLConnection) {
+			int responseCode = ((HttpURLConnection) conn).getResponseCode();
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				// Revalidated, keep the stored body and only refresh the headers
+				refreshHeaders(hash, headers);
+				return null;
+			}
+			if (responseCode != HttpURLConnection.HTTP_OK) {
+				return null;
+			}
+		}
+
+		// no-cache and must-revalidate responses are stored but revalidated on every use.
+		// private responses may be stored too, since this cache belongs to a single user
 		String cacheControl = getHeader(headers, "cache-control");
-		if (cacheControl != null && cacheControl.matches("^.*(no-cache|no-store|must-revalidate).*")) {
-			return null; // See RFC-2616
+		if (cacheControl != null && cacheControl.matches("^.*no-store.*")) {
+			return null; // See RFC-2616 14.9.1 and 14.9.2
 		}
 
 		boolean skipTransferEncodingHeader = false;
 		String tEncoding = getHeader(headers, "transfer-encoding");
 		if (tEncoding != null && tEncoding.toLowerCase().equals("chunked")) {
 			skipTransferEncodingHeader = true; // don't put "chunked" transfer-encoding into our header file, else the http connection object that gets our header information will think the data starts with a chunk length specification
+			headers.remove("transfer-encoding");
 		}
 		
 		// Form the headers and generate the content length
-		String newl = System.getProperty("line.separator");
 		long contentLength = getHeaderInt(headers, "content-length", 0);
-		StringBuilder sb = new StringBuilder();
-		for (String hdr : headers.keySet()) {
-			if (!skipTransferEncodingHeader || !hdr.equals("transfer-encoding")) {
-				for (String val : headers.get(hdr)) {
-					sb.append(hdr);
-					sb.append("=");
-					sb.append(val);
-					sb.append(newl);
-				}
-			}
-		}
-		if (contentLength + sb.length() > maxCacheSize) {
+		setStoredAt(headers, System.currentTimeMillis());
+		String headerString = formatHeaders(headers, skipTransferEncodingHeader);
+		if (contentLength + headerString.length() > maxCacheSize) {
 			return null;
 		}
-		
-		// Work around an android bug which gives us the wrong URI
-		try {
-			uri = conn.getURL().toURI();
-		} catch (URISyntaxException e) {}
-		
-		// Get our key, which is a hash of the URI
-		String hash = DigestUtils.shaHex(uri.toString());
-		
-		// Make our cache files
-		File hFile = new File(cacheDir, hash + HEADER_SUFFIX); 
-		File bFile = new File(cacheDir, hash + BODY_SUFFIX);
 
-		// Write headers synchronously
-		FileWriter hWriter = new FileWriter(hFile);
-		try {
-			hWriter.write(sb.toString());
-		} finally { 
-			hWriter.close();
-		}
-
-		synchronized (this) {
+		synchronized (pendingWrites) {
 			// Don't add it to the cache if its already being written
+			if (pendingWrites.contains(hash)) {
+				return null;
+			}
+
+			// Replace a stale entry that was refetched in full
+			index.remove(hash);
 			if (!bFile.createNewFile()) {
 				return null;
 			}
-			return new TiCacheRequest(uri, bFile, hFile, contentLength);
+
+			// Write headers synchronously
+			writeHeaders(hFile, headerString);
+
+			pendingWrites.add(hash);
+			return new TiCacheRequest(this, uri, hash, bFile, hFile, headers, contentLength);
 		}
 	}
 	
-	public void setCacheDir(File dir)
+	public synchronized void setCacheDir(File dir)
 	{
+		// Close the old index before loading the journal again, so only one
+		// index ever trims the directory and appends to its journal
+		TiResponseCacheIndex oldIndex = index;
+		if (oldIndex != null) {
+			oldIndex.close();
+		}
+
 		cacheDir = dir;
+		index = new TiResponseCacheIndex(dir, getPendingWrites());
+	}
+
+	/**
+	 * @return the number of bytes used by the cache on disk.
+	 */
+	public long getCacheSize()
+	{
+		return index.getSize();
+	}
+
+	/**
+	 * @return the number of responses stored in the cache.
+	 */
+	public int getCacheCount()
+	{
+		return index.getCount();
+	}
+
+	private static Set<String> getPendingWrites()
+	{
+		synchronized (pendingWrites) {
+			return new HashSet<String>(pendingWrites);
+		}
+	}
+
+	private static void finishPendingWrite(URI uri)
+	{
+		synchronized (pendingWrites) {
+			pendingWrites.remove(DigestUtils.shaHex(uri.toString()));
+		}
 	}
 
 	private static final void fireCacheCompleted(URI uri)
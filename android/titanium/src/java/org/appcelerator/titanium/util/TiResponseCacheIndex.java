@@ -0,0 +1,546 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiConfig;
+
+/**
+ * In-memory index of the entries stored by {@link TiResponseCache}, kept in
+ * least recently used order with the exact number of bytes used on disk.
+ *
+ * The index is persisted to a journal in the cache directory so it can be
+ * loaded once at startup instead of listing and parsing the cache files:
+ * <pre>
+ * P hash bodySize headerSize lastAccess   (entry added or replaced)
+ * A hash lastAccess                       (entry accessed)
+ * R hash                                  (entry removed)
+ * </pre>
+ * The journal is rewritten from the index once it holds too many redundant
+ * lines. Caches created before the journal existed are indexed from the
+ * directory listing on first load. On every load, files the journal doesn't
+ * track (i.e. left by a crash in the middle of a write) are deleted, and
+ * entries whose files are gone are dropped.
+ */
+class TiResponseCacheIndex
+{
+	private static final boolean DBG = TiConfig.LOGD;
+	private static final String LCAT = "TiResponseCacheIndex";
+
+	private static final String JOURNAL_FILE = "journal";
+	private static final String JOURNAL_TMP_FILE = "journal.tmp";
+	private static final String JOURNAL_MAGIC = "TiResponseCache-journal 1";
+	private static final int COMPACT_THRESHOLD = 2000;
+
+	static final String HEADER_SUFFIX = ".hdr";
+	static final String BODY_SUFFIX = ".bdy";
+
+	static class Entry
+	{
+		final String hash;
+		long bodySize;
+		long headerSize;
+		long lastAccess;
+
+		// Parsed lazily from the header file on first use
+		Map<String, List<String>> headers;
+
+		Entry(String hash)
+		{
+			this.hash = hash;
+		}
+
+		long getSize()
+		{
+			return bodySize + headerSize;
+		}
+	}
+
+	private final File cacheDir;
+	// Access ordered, so iteration starts at the least recently used entry
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	private long totalSize = 0;
+	private BufferedWriter journalWriter;
+	private int redundantOps = 0;
+	// Set once another index has taken over the directory
+	private boolean closed = false;
+
+	/**
+	 * @param pendingHashes entries whose files are being written, which are kept on disk.
+	 */
+	TiResponseCacheIndex(File cacheDir, Set<String> pendingHashes)
+	{
+		this.cacheDir = cacheDir;
+
+		synchronized (entries) {
+			File journal = new File(cacheDir, JOURNAL_FILE);
+			if (journal.exists()) {
+				try {
+					readJournal(journal);
+
+				} catch (IOException e) {
+					Log.w(LCAT, "Unable to read cache journal, rebuilding: " + e.getMessage());
+					entries.clear();
+					totalSize = 0;
+					rebuildFromDirectory();
+				}
+
+			} else {
+				rebuildFromDirectory();
+			}
+
+			reconcileDirectory(pendingHashes);
+			rewriteJournal();
+		}
+
+		if (DBG) {
+			Log.d(LCAT, "Loaded " + entries.size() + " cache entries, " + totalSize + " bytes");
+		}
+	}
+
+	File getHeaderFile(String hash)
+	{
+		return new File(cacheDir, hash + HEADER_SUFFIX);
+	}
+
+	File getBodyFile(String hash)
+	{
+		return new File(cacheDir, hash + BODY_SUFFIX);
+	}
+
+	/**
+	 * Looks up an entry and marks it as most recently used.
+	 */
+	Entry get(String hash)
+	{
+		synchronized (entries) {
+			Entry entry = entries.get(hash);
+			if (entry != null) {
+				entry.lastAccess = System.currentTimeMillis();
+				appendJournal("A " + hash + " " + entry.lastAccess, false);
+				redundantOps++;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Looks up an entry without recording an access in the journal. The
+	 * entry still moves to the most recently used position, since a peek
+	 * is normally followed by reading the entry.
+	 */
+	Entry peek(String hash)
+	{
+		synchronized (entries) {
+			return entries.get(hash);
+		}
+	}
+
+	/**
+	 * @return a copy of the entry headers, loading them from disk the first time.
+	 */
+	Map<String, List<String>> getHeaders(Entry entry) throws IOException
+	{
+		synchronized (entries) {
+			if (entry.headers == null) {
+				entry.headers = readHeaders(getHeaderFile(entry.hash));
+			}
+			return new HashMap<String, List<String>>(entry.headers);
+		}
+	}
+
+	/**
+	 * Adds or replaces an entry once its files have been completely written.
+	 */
+	void put(String hash, Map<String, List<String>> headers, long headerSize, long bodySize)
+	{
+		synchronized (entries) {
+			Entry previous = entries.remove(hash);
+			if (previous != null) {
+				totalSize -= previous.getSize();
+				redundantOps++;
+			}
+
+			Entry entry = new Entry(hash);
+			entry.headers = headers;
+			entry.headerSize = headerSize;
+			entry.bodySize = bodySize;
+			entry.lastAccess = System.currentTimeMillis();
+			entries.put(hash, entry);
+			totalSize += entry.getSize();
+
+			appendJournal("P " + hash + " " + bodySize + " " + headerSize + " " + entry.lastAccess, true);
+		}
+	}
+
+	/**
+	 * Replaces the headers of an existing entry, e.g. after revalidation.
+	 */
+	void updateHeaders(String hash, Map<String, List<String>> headers, long headerSize)
+	{
+		synchronized (entries) {
+			Entry entry = entries.get(hash);
+			if (entry == null) {
+				return;
+			}
+
+			totalSize += headerSize - entry.headerSize;
+			entry.headerSize = headerSize;
+			entry.headers = headers;
+			entry.lastAccess = System.currentTimeMillis();
+
+			appendJournal("P " + hash + " " + entry.bodySize + " " + headerSize + " " + entry.lastAccess, true);
+			redundantOps++;
+		}
+	}
+
+	/**
+	 * Removes an entry and deletes its files.
+	 */
+	void remove(String hash)
+	{
+		synchronized (entries) {
+			Entry entry = entries.remove(hash);
+			if (entry != null) {
+				totalSize -= entry.getSize();
+				appendJournal("R " + hash, true);
+				redundantOps += 2;
+			}
+			getHeaderFile(hash).delete();
+			getBodyFile(hash).delete();
+		}
+	}
+
+	/**
+	 * Evicts least recently used entries until the cache fits in maxSize bytes.
+	 */
+	void trimToSize(long maxSize)
+	{
+		synchronized (entries) {
+			if (closed) {
+				return;
+			}
+
+			Iterator<Entry> iterator = entries.values().iterator();
+			while (totalSize > maxSize && iterator.hasNext()) {
+				Entry entry = iterator.next();
+				iterator.remove();
+				totalSize -= entry.getSize();
+				getHeaderFile(entry.hash).delete();
+				getBodyFile(entry.hash).delete();
+				appendJournal("R " + entry.hash, false);
+				redundantOps += 2;
+
+				if (DBG) {
+					Log.d(LCAT, "Evicted cache entry " + entry.hash + ", " + entry.getSize() + " bytes");
+				}
+			}
+			flush();
+		}
+	}
+
+	/**
+	 * Flushes pending journal lines, compacting the journal when needed.
+	 */
+	void flush()
+	{
+		synchronized (entries) {
+			if (closed) {
+				return;
+			}
+			if (redundantOps >= COMPACT_THRESHOLD && redundantOps >= entries.size()) {
+				rewriteJournal();
+				return;
+			}
+
+			if (journalWriter != null) {
+				try {
+					journalWriter.flush();
+				} catch (IOException e) {
+					Log.w(LCAT, "Unable to flush cache journal: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flushes and closes the journal. The index no longer evicts entries or
+	 * writes to the journal afterwards, so a new index can load the directory.
+	 */
+	void close()
+	{
+		synchronized (entries) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			closeJournal();
+		}
+	}
+
+	long getSize()
+	{
+		synchronized (entries) {
+			return totalSize;
+		}
+	}
+
+	int getCount()
+	{
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	static Map<String, List<String>> readHeaders(File hFile) throws IOException
+	{
+		Map<String, List<String>> headers = new HashMap<String, List<String>>();
+		BufferedReader rdr = new BufferedReader(new FileReader(hFile), 1024);
+		try {
+			for (String line=rdr.readLine() ; line != null ; line=rdr.readLine()) {
+				int separator = line.indexOf('=');
+				if (separator < 0) {
+					continue;
+				}
+				String key = line.substring(0, separator);
+				List<String> values = headers.get(key);
+				if (values == null) {
+					values = new ArrayList<String>(1);
+					headers.put(key, values);
+				}
+				values.add(line.substring(separator + 1));
+			}
+		} finally {
+			rdr.close();
+		}
+		return headers;
+	}
+
+	private void readJournal(File journal) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new FileReader(journal), 8192);
+		try {
+			String magic = reader.readLine();
+			if (!JOURNAL_MAGIC.equals(magic)) {
+				throw new IOException("unexpected journal header: " + magic);
+			}
+
+			int lineCount = 0;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				lineCount++;
+				String[] parts = line.split(" ");
+				if (parts.length < 2) {
+					continue;
+				}
+
+				String hash = parts[1];
+				try {
+					if ("P".equals(parts[0]) && parts.length == 5) {
+						Entry previous = entries.remove(hash);
+						if (previous != null) {
+							totalSize -= previous.getSize();
+						}
+						Entry entry = new Entry(hash);
+						entry.bodySize = Long.parseLong(parts[2]);
+						entry.headerSize = Long.parseLong(parts[3]);
+						entry.lastAccess = Long.parseLong(parts[4]);
+						entries.put(hash, entry);
+						totalSize += entry.getSize();
+
+					} else if ("A".equals(parts[0]) && parts.length == 3) {
+						Entry entry = entries.get(hash);
+						if (entry != null) {
+							entry.lastAccess = Long.parseLong(parts[2]);
+						}
+
+					} else if ("R".equals(parts[0])) {
+						Entry entry = entries.remove(hash);
+						if (entry != null) {
+							totalSize -= entry.getSize();
+						}
+					}
+
+				} catch (NumberFormatException e) {
+					// A truncated last line, ignore it
+				}
+			}
+
+			redundantOps = lineCount - entries.size();
+
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void rebuildFromDirectory()
+	{
+		File[] hdrFiles = cacheDir.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(HEADER_SUFFIX);
+			}
+		});
+		if (hdrFiles == null) {
+			return;
+		}
+
+		// The header file modification time used to be the access log
+		Arrays.sort(hdrFiles, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long diff = a.lastModified() - b.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+
+		for (File hdrFile : hdrFiles) {
+			String name = hdrFile.getName();
+			String hash = name.substring(0, name.length() - HEADER_SUFFIX.length());
+			File bdyFile = getBodyFile(hash);
+			if (!bdyFile.exists()) {
+				hdrFile.delete();
+				continue;
+			}
+
+			Entry entry = new Entry(hash);
+			entry.headerSize = hdrFile.length();
+			entry.bodySize = bdyFile.length();
+			entry.lastAccess = hdrFile.lastModified();
+			entries.put(hash, entry);
+			totalSize += entry.getSize();
+		}
+	}
+
+	/*
+	 * Deletes the cache files that aren't part of an entry and drops entries
+	 * missing a file, so the total size matches what is on disk.
+	 */
+	private void reconcileDirectory(Set<String> pendingHashes)
+	{
+		String[] names = cacheDir.list();
+		if (names == null) {
+			return;
+		}
+
+		HashSet<String> headerFiles = new HashSet<String>();
+		HashSet<String> bodyFiles = new HashSet<String>();
+		int deleted = 0;
+		for (String name : names) {
+			String hash;
+			HashSet<String> found;
+			if (name.endsWith(HEADER_SUFFIX)) {
+				hash = name.substring(0, name.length() - HEADER_SUFFIX.length());
+				found = headerFiles;
+			} else if (name.endsWith(BODY_SUFFIX)) {
+				hash = name.substring(0, name.length() - BODY_SUFFIX.length());
+				found = bodyFiles;
+			} else {
+				continue;
+			}
+
+			if (entries.containsKey(hash)) {
+				found.add(hash);
+			} else if (!pendingHashes.contains(hash) && new File(cacheDir, name).delete()) {
+				deleted++;
+			}
+		}
+
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (!headerFiles.contains(entry.hash) || !bodyFiles.contains(entry.hash)) {
+				iterator.remove();
+				totalSize -= entry.getSize();
+				getHeaderFile(entry.hash).delete();
+				getBodyFile(entry.hash).delete();
+				deleted++;
+			}
+		}
+
+		if (DBG && deleted > 0) {
+			Log.d(LCAT, "Deleted " + deleted + " untracked cache files and entries");
+		}
+	}
+
+	private void rewriteJournal()
+	{
+		closeJournal();
+
+		File journal = new File(cacheDir, JOURNAL_FILE);
+		File tmp = new File(cacheDir, JOURNAL_TMP_FILE);
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(tmp), 8192);
+			try {
+				writer.write(JOURNAL_MAGIC);
+				writer.write('\n');
+				for (Entry entry : entries.values()) {
+					writer.write("P " + entry.hash + " " + entry.bodySize + " " + entry.headerSize + " " + entry.lastAccess);
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+
+			if (!tmp.renameTo(journal)) {
+				throw new IOException("unable to rename " + tmp);
+			}
+			redundantOps = 0;
+			journalWriter = new BufferedWriter(new FileWriter(journal, true), 8192);
+
+		} catch (IOException e) {
+			Log.w(LCAT, "Unable to write cache journal: " + e.getMessage());
+			journal.delete();
+		}
+	}
+
+	private void appendJournal(String line, boolean flush)
+	{
+		if (journalWriter == null) {
+			return;
+		}
+
+		try {
+			journalWriter.write(line);
+			journalWriter.write('\n');
+			if (flush) {
+				journalWriter.flush();
+			}
+
+		} catch (IOException e) {
+			Log.w(LCAT, "Unable to append to cache journal: " + e.getMessage());
+			closeJournal();
+		}
+	}
+
+	private void closeJournal()
+	{
+		if (journalWriter != null) {
+			try {
+				journalWriter.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			journalWriter = null;
+		}
+	}
+}
@@ -7,8 +7,8 @@
 package org.appcelerator.titanium.view;
 
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.TreeSet;
 
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.kroll.common.TiConfig;
@@ -51,9 +51,25 @@ public class TiCompositeLayout extends ViewGroup
 
 	public static final int NOT_SET = Integer.MIN_VALUE;
 
-	private TreeSet<View> viewSorter;
+	// Orders children by z-index. Arrays.sort is stable, so children with the same
+	// z-index keep the order they were added in.
+	private static final Comparator<View> Z_INDEX_COMPARATOR = new Comparator<View>()
+	{
+		public int compare(View o1, View o2)
+		{
+			int z1 = getZIndex(o1);
+			int z2 = getZIndex(o2);
+			return z1 < z2 ? -1 : (z1 > z2 ? 1 : 0);
+		}
+	};
+
 	private boolean needsSort;
 	protected LayoutArrangement arrangement;
+
+	// Pass counters, for profiling layouts
+	private int measureCount = 0;
+	private int layoutCount = 0;
+	private int measureCacheHitCount = 0;
 	
 	// Used by horizonal arrangement calculations
 	private int horizontalLayoutTopBuffer = 0;
@@ -108,51 +124,6 @@ public class TiCompositeLayout extends ViewGroup
 	{
 		super(context);
 		this.arrangement = arrangement;
-		this.viewSorter = new TreeSet<View>(new Comparator<View>()
-		{
-
-			public int compare(View o1, View o2)
-			{
-				TiCompositeLayout.LayoutParams p1 = (TiCompositeLayout.LayoutParams) o1.getLayoutParams();
-				TiCompositeLayout.LayoutParams p2 = (TiCompositeLayout.LayoutParams) o2.getLayoutParams();
-
-				int result = 0;
-
-				if (p1.optionZIndex != NOT_SET && p2.optionZIndex != NOT_SET) {
-					if (p1.optionZIndex < p2.optionZIndex) {
-						result = -1;
-					} else if (p1.optionZIndex > p2.optionZIndex) {
-						result = 1;
-					}
-				} else if (p1.optionZIndex != NOT_SET) {
-					if (p1.optionZIndex < 0) {
-						result = -1;
-					}
-					if (p1.optionZIndex > 0) {
-						result = 1;
-					}
-				} else if (p2.optionZIndex != NOT_SET) {
-					if (p2.optionZIndex < 0) {
-						result = 1;
-					}
-					if (p2.optionZIndex > 0) {
-						result = -1;
-					}
-				}
-
-				if (result == 0) {
-					if (p1.index < p2.index) {
-						result = -1;
-					} else if (p1.index > p2.index) {
-						result = 1;
-					} else {
-						throw new IllegalStateException("Ambiguous Z-Order");
-					}
-				}
-
-				return result;
-			}
-		});
 
 		needsSort = true;
 		setOnHierarchyChangeListener(this);
@@ -171,19 +142,109 @@ public class TiCompositeLayout extends ViewGroup
 	}
 
 	public void onChildViewAdded(View parent, View child) {
-		needsSort = true;
+		// Children are usually added in z-order (i.e. none of them set a zIndex), so only
+		// sort when the new child is out of place.
+		if (!needsSort && !isInZOrder(child)) {
+			needsSort = true;
+		}
+		ViewGroup.LayoutParams params = child.getLayoutParams();
+		if (params instanceof LayoutParams) {
+			((LayoutParams) params).clearMeasureCache();
+		}
 		if (DBG && parent != null && child != null) {
 			Log.d(TAG, "Attaching: " + viewToString(child) + " to " + viewToString(parent));
 		}
 	}
 
 	public void onChildViewRemoved(View parent, View child) {
-		needsSort = true;
+		// Removing a child leaves the others in order
 		if (DBG) {
 			Log.d(TAG, "Removing: " + viewToString(child) + " from " + viewToString(parent));
 		}
 	}
 
+	private static int getZIndex(View child)
+	{
+		ViewGroup.LayoutParams params = child.getLayoutParams();
+		if (params instanceof LayoutParams) {
+			int zIndex = ((LayoutParams) params).optionZIndex;
+			// Children without a zIndex are ordered like a zIndex of 0
+			if (zIndex != NOT_SET) {
+				return zIndex;
+			}
+		}
+		return 0;
+	}
+
+	private boolean isInZOrder(View child)
+	{
+		int count = getChildCount();
+		int i = (count > 0 && getChildAt(count - 1) == child) ? count - 1 : indexOfChild(child);
+		if (i < 0) {
+			return false;
+		}
+
+		int zIndex = getZIndex(child);
+		return (i == 0 || getZIndex(getChildAt(i - 1)) <= zIndex)
+			&& (i == count - 1 || zIndex <= getZIndex(getChildAt(i + 1)));
+	}
+
+	/*
+	 * Puts the children in z-order. Children that are already in place aren't detached.
+	 */
+	private void sortChildren()
+	{
+		int count = getChildCount();
+		View[] children = new View[count];
+		boolean sorted = true;
+		for (int i = 0; i < count; i++) {
+			View child = getChildAt(i);
+			children[i] = child;
+			((LayoutParams) child.getLayoutParams()).index = i;
+			if (i > 0 && getZIndex(children[i - 1]) > getZIndex(child)) {
+				sorted = false;
+			}
+		}
+		if (sorted) {
+			return;
+		}
+
+		Arrays.sort(children, Z_INDEX_COMPARATOR);
+		for (int i = 0; i < count; i++) {
+			View child = children[i];
+			if (getChildAt(i) != child) {
+				detachViewFromParent(child);
+				attachViewToParent(child, i, child.getLayoutParams());
+			}
+			((LayoutParams) child.getLayoutParams()).index = i;
+		}
+	}
+
+	/**
+	 * @return the number of times this layout was measured.
+	 */
+	public int getMeasureCount()
+	{
+		return measureCount;
+	}
+
+	/**
+	 * @return the number of times this layout was laid out.
+	 */
+	public int getLayoutCount()
+	{
+		return layoutCount;
+	}
+
+	/**
+	 * @return the number of times a child was measured with cached measure specs,
+	 * rather than computing them again.
+	 */
+	public int getMeasureCacheHitCount()
+	{
+		return measureCacheHitCount;
+	}
+
 	@Override
 	protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
 		return p instanceof TiCompositeLayout.LayoutParams;
@@ -252,6 +313,7 @@ public class TiCompositeLayout extends ViewGroup
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
 	{
+		measureCount++;
 		int childCount = getChildCount();
 		int wFromSpec = MeasureSpec.getSize(widthMeasureSpec);
 		int hFromSpec = MeasureSpec.getSize(heightMeasureSpec);
@@ -313,6 +375,16 @@ public class TiCompositeLayout extends ViewGroup
 	{
 		LayoutParams p = (LayoutParams) child.getLayoutParams();
 
+		// The specs only depend on the space available, the child's layout params and
+		// those of its descendants. Changing any of those requests a layout of the child,
+		// so an unchanged child can skip computing them, which includes walking its
+		// subtree for size / fill conflicts.
+		if (!child.isLayoutRequested() && p.hasMeasureCache(width, wMode, height, hMode)) {
+			measureCacheHitCount++;
+			child.measure(p.cachedWidthSpec, p.cachedHeightSpec);
+			return;
+		}
+
 		int sizeFillConflicts[] = { NOT_SET, NOT_SET };
 		boolean checkedForConflict = false;
 
@@ -364,6 +436,7 @@ public class TiCompositeLayout extends ViewGroup
 		int heightSpec = ViewGroup.getChildMeasureSpec(MeasureSpec.makeMeasureSpec(height, hMode), heightPadding,
 			childDimension);
 
+		p.setMeasureCache(width, wMode, height, hMode, widthSpec, heightSpec);
 		child.measure(widthSpec, heightSpec);
 		// Useful for debugging.
 		// int childWidth = child.getMeasuredWidth();
@@ -439,6 +512,7 @@ public class TiCompositeLayout extends ViewGroup
 	@Override
 	protected void onLayout(boolean changed, int l, int t, int r, int b)
 	{
+		layoutCount++;
 		int count = getChildCount();
 
 		int left = 0;
@@ -447,27 +521,11 @@ public class TiCompositeLayout extends ViewGroup
 		int bottom = b - t;
 
 		if (needsSort) {
-			viewSorter.clear();
 			if (count > 1) { // No need to sort one item.
-				for(int i = 0; i < count; i++) {
-					View child = getChildAt(i);
-					TiCompositeLayout.LayoutParams params =
-						(TiCompositeLayout.LayoutParams) child.getLayoutParams();
-					params.index = i;
-					viewSorter.add(child);
-				}
-
-				detachAllViewsFromParent();
-				int i = 0;
-				for (View child : viewSorter) {
-					attachViewToParent(child, i++, child.getLayoutParams());
-				}
+				sortChildren();
 			}
 			needsSort = false;
 		}
-		// viewSorter is not needed after this. It's a source of
-		// memory leaks if it retains the views it's holding.
-		viewSorter.clear();
 
 		int[] horizontal = new int[2];
 		int[] vertical = new int[2];
@@ -671,6 +729,11 @@ public class TiCompositeLayout extends ViewGroup
 	public static class LayoutParams extends ViewGroup.LayoutParams {
 		protected int index;
 
+		// The measure specs last computed for this child, and the parent size they were computed for
+		private boolean hasCachedSpecs = false;
+		private int cachedWidth, cachedWidthMode, cachedHeight, cachedHeightMode;
+		private int cachedWidthSpec, cachedHeightSpec;
+
 		public int optionZIndex = NOT_SET;
 		public TiDimension optionLeft = null;
 		public TiDimension optionTop = null;
@@ -710,6 +773,32 @@ public class TiCompositeLayout extends ViewGroup
 
 			index = Integer.MIN_VALUE;
 		}
+
+		boolean hasMeasureCache(int width, int widthMode, int height, int heightMode)
+		{
+			return hasCachedSpecs && cachedWidth == width && cachedWidthMode == widthMode
+				&& cachedHeight == height && cachedHeightMode == heightMode;
+		}
+
+		void setMeasureCache(int width, int widthMode, int height, int heightMode, int widthSpec, int heightSpec)
+		{
+			cachedWidth = width;
+			cachedWidthMode = widthMode;
+			cachedHeight = height;
+			cachedHeightMode = heightMode;
+			cachedWidthSpec = widthSpec;
+			cachedHeightSpec = heightSpec;
+			hasCachedSpecs = true;
+		}
+
+		/**
+		 * Drops the cached measure specs of the view these params belong to. Layout params
+		 * are usually changed along with a requestLayout() of the view, which does the same.
+		 */
+		public void clearMeasureCache()
+		{
+			hasCachedSpecs = false;
+		}
 	}
 
 	protected boolean isVerticalArrangement()
@@ -38,6 +38,7 @@ import android.app.Activity;
 import android.content.pm.ApplicationInfo;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
@@ -267,6 +268,11 @@ public class TiDrawableReference
 	 */
 	public Bitmap getBitmap()
 	{
+		Bitmap image = getBlobImage();
+		if (image != null) {
+			return copyBitmap(image);
+		}
+
 		InputStream is = getInputStream();
 		if (is == null) {
 			Log.w(LCAT, "Could not open stream to get bitmap");
@@ -521,6 +527,11 @@ public class TiDrawableReference
 			return getBitmap();
 		}
 
+		Bitmap image = getBlobImage();
+		if (image != null) {
+			return scaleBitmap(image, destWidth, destHeight);
+		}
+
 		InputStream is = getInputStream();
 		if (is == null) {
 			Log.w(LCAT, "Could not open stream to get bitmap");
@@ -657,6 +668,15 @@ public class TiDrawableReference
 		Bounds bounds = new Bounds();
 		if (isTypeNull()) { return bounds; }
 
+		Bitmap image = getBlobImage();
+		if (image != null) {
+			// No need to encode the bitmap just to read its bounds back
+			bounds.width = image.getWidth();
+			bounds.height = image.getHeight();
+			boundsCache.put(hash, bounds);
+			return bounds;
+		}
+
 		InputStream stream = getInputStream();
 
 		try {
@@ -683,6 +703,67 @@ public class TiDrawableReference
 		return bounds;
 	}
 
+	/**
+	 * Returns the bitmap backing a blob created from an image, so it can be used
+	 * without a round trip through its encoded bytes.
+	 */
+	private Bitmap getBlobImage()
+	{
+		if (isTypeBlob() && blob != null) {
+			return blob.getImage();
+		}
+		return null;
+	}
+
+	/*
+	 * The blob keeps its bitmap, and views recycle theirs when the image changes,
+	 * so blob bitmaps are always handed out as copies.
+	 */
+	private Bitmap copyBitmap(Bitmap image)
+	{
+		try {
+			oomOccurred = false;
+			Config config = image.getConfig();
+			return image.copy(config != null ? config : Config.ARGB_8888, false);
+
+		} catch (OutOfMemoryError e) {
+			oomOccurred = true;
+			Log.e(LCAT, "Unable to copy bitmap. Not enough memory: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	private Bitmap scaleBitmap(Bitmap image, int destWidth, int destHeight)
+	{
+		if (image.getNinePatchChunk() != null) {
+			// Don't scale nine-patches
+			return copyBitmap(image);
+		}
+
+		DisplayMetrics displayMetrics = new DisplayMetrics();
+		displayMetrics.setToDefaults();
+		if (anyDensityFalse && displayMetrics.density != 1f) {
+			destWidth = (int) (destWidth * displayMetrics.density + 0.5f);
+			destHeight = (int) (destHeight * displayMetrics.density + 0.5f);
+		}
+		if (destWidth == image.getWidth() && destHeight == image.getHeight()) {
+			// createScaledBitmap may return the source itself
+			return copyBitmap(image);
+		}
+
+		try {
+			oomOccurred = false;
+			Bitmap b = Bitmap.createScaledBitmap(image, destWidth, destHeight, true);
+			b.setDensity(displayMetrics.densityDpi);
+			return b;
+
+		} catch (OutOfMemoryError e) {
+			oomOccurred = true;
+			Log.e(LCAT, "Unable to scale bitmap. Not enough memory: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
 	/**
 	 * Based on the underlying type of reference this is, figures out how to get
 	 * an InputStream for it.  E.g., if a blob, calls blob.getInputStream, if 
@@ -8,6 +8,7 @@
 package ti.modules.titanium;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.appcelerator.kroll.KrollDict;
@@ -23,7 +24,15 @@ import org.appcelerator.titanium.util.TiConvert;
 import ti.modules.titanium.codec.CodecModule;
 
 /**
- * A proxy that wraps a primitive byte array buffer
+ * A proxy that wraps a byte buffer.
+ *
+ * The bytes live in a {@link ByteBuffer} whose capacity may exceed the
+ * length of the proxy, so appending and growing are amortised instead of
+ * reallocating on every call. A proxy created by {@link #slice(Object[])}
+ * is a view over a range of another proxy's storage; both see each other's
+ * writes until either one grows. Growing shared storage always copies, so a
+ * slice can't write past its range into its parent's bytes, and a parent
+ * can't zero bytes a slice still views.
  */
 @Kroll.proxy(creatableInModule=TitaniumModule.class, propertyAccessors = {
 	TiC.PROPERTY_BYTE_ORDER,
@@ -35,20 +44,51 @@ public class BufferProxy extends KrollProxy
 	private static final String LCAT = "BufferProxy";
 	private static final boolean DBG = TiConfig.LOGD;
 
-	private byte[] buffer;
+	private static final int MIN_GROWTH = 64;
+
+	// Storage for this proxy, data starts at offset and spans length bytes.
+	private ByteBuffer buffer;
+	private int offset;
+	private int length;
+	private boolean direct;
+	// Set once storage has been handed to a slice, cleared when we reallocate.
+	private boolean shared;
 
 	public BufferProxy()
 	{
+		this(0);
 	}
 
 	public BufferProxy(int bufferSize)
 	{
-		buffer = new byte[bufferSize];
+		this(bufferSize, false);
+	}
+
+	/**
+	 * @param bufferSize the initial length of the buffer in bytes.
+	 * @param direct whether the storage should be allocated outside of the Java heap.
+	 * @module.api
+	 */
+	public BufferProxy(int bufferSize, boolean direct)
+	{
+		this.direct = direct;
+		buffer = allocate(bufferSize);
+		length = bufferSize;
 	}
 
 	public BufferProxy(byte[] existingBuffer)
 	{
-		buffer = existingBuffer;
+		buffer = ByteBuffer.wrap(existingBuffer);
+		length = existingBuffer.length;
+	}
+
+	private BufferProxy(BufferProxy parent, int start, int sliceLength)
+	{
+		buffer = parent.buffer;
+		direct = parent.direct;
+		offset = parent.offset + start;
+		length = sliceLength;
+		shared = true;
 	}
 
 	@Override
@@ -56,7 +96,9 @@ public class BufferProxy extends KrollProxy
 	{
 		// If no arguments are provided in create, allocate an empty buffer.
 		if (args.length == 0) {
-			buffer = new byte[0];
+			buffer = allocate(0);
+			offset = 0;
+			length = 0;
 		} else {
 			super.handleCreationArgs(createdInModule, args);
 		}
@@ -79,7 +121,9 @@ public class BufferProxy extends KrollProxy
 			setProperty(TiC.PROPERTY_BYTE_ORDER, CodecModule.getByteOrder(null));
 		}
 
-		buffer = new byte[length];
+		buffer = allocate(length);
+		offset = 0;
+		this.length = length;
 		Object value = dict.get(TiC.PROPERTY_VALUE);
 		if (value instanceof Number) {
 			encodeNumber((Number) value, dict);
@@ -95,12 +139,12 @@ public class BufferProxy extends KrollProxy
 			throw new IllegalArgumentException("data is a Number, but no type was given");
 		}
 
-		if (buffer.length == 0) {
-			buffer = new byte[CodecModule.getWidth(type)];
+		if (length == 0) {
+			resize(CodecModule.getWidth(type));
 		}
 
 		int byteOrder = CodecModule.getByteOrder(dict.get(TiC.PROPERTY_BYTE_ORDER));
-		CodecModule.encodeNumber(value, type, buffer, 0, byteOrder);
+		CodecModule.encodeNumber(value, type, getByteBuffer(), 0, byteOrder);
 	}
 
 	protected void encodeString(String value, KrollDict dict)
@@ -113,10 +157,12 @@ public class BufferProxy extends KrollProxy
 		String charset = CodecModule.getCharset(type);
 		try {
 			byte bytes[] = value.getBytes(charset);
-			if (buffer.length == 0) {
-				buffer = bytes;
+			if (length == 0) {
+				buffer = ByteBuffer.wrap(bytes);
+				offset = 0;
+				length = bytes.length;
 			} else {
-				System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+				write(0, bytes, 0, bytes.length);
 			}
 		} catch (UnsupportedEncodingException e) {
 			Log.w(LCAT, e.getMessage(), e);
@@ -125,25 +171,69 @@ public class BufferProxy extends KrollProxy
 	}
 
 	/**
+	 * Returns the contents of this buffer as a byte array of exactly {@link #getLength()} bytes.
+	 * When the storage is a heap array of exactly that length it is returned, so writes to
+	 * the array are reflected in the buffer. Otherwise a copy is returned, and the storage
+	 * keeps its spare capacity for later appends. Use {@link #getByteBuffer()} to avoid the copy.
 	 * @return The native buffer for this proxy
 	 * @module.api
 	 */
 	public byte[] getBuffer()
 	{
-		return buffer;
+		if (buffer.hasArray() && buffer.arrayOffset() == 0 && offset == 0 && buffer.array().length == length) {
+			return buffer.array();
+		}
+
+		byte[] copy = new byte[length];
+		getByteBuffer().get(copy);
+		return copy;
+	}
+
+	/**
+	 * Returns a view over the bytes of this buffer. The view starts at index 0,
+	 * has a limit of {@link #getLength()} and shares storage with this proxy
+	 * until the buffer is grown past its capacity.
+	 * @return a view of this buffer's contents.
+	 * @module.api
+	 */
+	public ByteBuffer getByteBuffer()
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.limit(offset + length);
+		view.position(offset);
+		return view.slice();
+	}
+
+	/**
+	 * @return The number of bytes this buffer can grow to without reallocating.
+	 * @module.api
+	 */
+	public int getCapacity()
+	{
+		return shared ? length : buffer.capacity() - offset;
+	}
+
+	/**
+	 * @return whether this buffer's storage is shared with a slice or the buffer it was sliced from.
+	 */
+	public boolean isShared()
+	{
+		return shared;
 	}
 
 	@Override
 	public Object getIndexedProperty(int index)
 	{
-		return buffer[index] & 0xFF;
+		checkIndex(index);
+		return buffer.get(offset + index) & 0xFF;
 	}
 
 	@Override
 	public void setIndexedProperty(int index, Object value)
 	{
 		if (value instanceof Number) {
-			buffer[index] = ((Number)value).byteValue();
+			checkIndex(index);
+			buffer.put(offset + index, ((Number)value).byteValue());
 		} else {
 			super.setIndexedProperty(index, value);
 		}
@@ -186,11 +276,31 @@ public class BufferProxy extends KrollProxy
 	 */
 	public int write(int position, byte[] sourceBuffer, int sourceOffset, int sourceLength)
 	{
-		if ((position + sourceLength) > buffer.length) {
-			buffer = copyOf(buffer, (position + sourceLength));
+		if ((position + sourceLength) > length) {
+			resize(position + sourceLength);
 		}
 
-		System.arraycopy(sourceBuffer, sourceOffset, buffer, position, sourceLength);
+		ByteBuffer dest = buffer.duplicate();
+		dest.position(offset + position);
+		dest.put(sourceBuffer, sourceOffset, sourceLength);
+
+		return sourceLength;
+	}
+
+	/**
+	 * Writes the remaining bytes of source at position, growing this buffer if needed.
+	 * @return the number of bytes written.
+	 */
+	public int write(int position, ByteBuffer source)
+	{
+		int sourceLength = source.remaining();
+		if ((position + sourceLength) > length) {
+			resize(position + sourceLength);
+		}
+
+		ByteBuffer dest = buffer.duplicate();
+		dest.position(offset + position);
+		dest.put(source);
 
 		return sourceLength;
 	}
@@ -198,24 +308,28 @@ public class BufferProxy extends KrollProxy
 	@Kroll.method
 	public int append(Object[] args)
 	{
-		int destLength = buffer.length;
+		int destLength = length;
 		BufferProxy src = (BufferProxy) args[0];
-		byte[] sourceBuffer = src.getBuffer();
+		int srcLength = src.getLength();
 
 		int offset = 0;
 		if (args.length > 1 && args[1] != null) {
 			offset = TiConvert.toInt(args[1]);
 		}
 
-		int sourceLength = sourceBuffer.length;
+		int sourceLength = srcLength;
 		if (args.length > 2 && args[2] != null) {
 			sourceLength = TiConvert.toInt(args[2]);
 		}
 
-		validateOffsetAndLength(offset, sourceLength, sourceBuffer.length);
+		validateOffsetAndLength(offset, sourceLength, srcLength);
+
+		// Take the source view before growing, in case we are appending to ourselves.
+		ByteBuffer source = src.getRange(offset, sourceLength);
+		ensureCapacity(destLength + sourceLength);
+		length = destLength + sourceLength;
+		putRange(destLength, source);
 
-		buffer = copyOf(buffer, (destLength + sourceLength));
-		System.arraycopy(sourceBuffer, offset, buffer, destLength, sourceLength);
 		return sourceLength;
 	}
 
@@ -226,7 +340,7 @@ public class BufferProxy extends KrollProxy
 			throw new IllegalArgumentException("At least 2 arguments required for insert: src, offset");
 		}
 		BufferProxy sourceBufferProxy = (BufferProxy) args[0];
-		byte[] sourceBuffer = sourceBufferProxy.getBuffer();
+		int srcLength = sourceBufferProxy.getLength();
 		int offset = TiConvert.toInt(args[1]);
 
 		int sourceOffset = 0;
@@ -234,20 +348,29 @@ public class BufferProxy extends KrollProxy
 			sourceOffset = TiConvert.toInt(args[2]);
 		}
 
-		int sourceLength = sourceBuffer.length;
+		int sourceLength = srcLength;
 		if (args.length > 3 && args[3] != null) {
 			sourceLength = TiConvert.toInt(args[3]);
 		}
 
-		validateOffsetAndLength(sourceOffset, sourceLength, sourceBuffer.length);
+		validateOffsetAndLength(sourceOffset, sourceLength, srcLength);
+		if (offset < 0 || offset > length) {
+			throw new IndexOutOfBoundsException("insert offset " + offset + " is outside of the buffer length: " + length);
+		}
 
-		byte[] preInsertBuffer = copyOf(buffer, offset);
-		byte[] postInsertBuffer = copyOfRange(buffer, offset, buffer.length);
+		ByteBuffer source = sourceBufferProxy.getRange(sourceOffset, sourceLength);
+		if (sourceBufferProxy.buffer == buffer) {
+			// Shifting our own contents would clobber the source, copy it out first.
+			byte[] copy = new byte[sourceLength];
+			source.get(copy);
+			source = ByteBuffer.wrap(copy);
+		}
 
-		buffer = new byte[(preInsertBuffer.length + sourceLength + postInsertBuffer.length)];
-		System.arraycopy(preInsertBuffer, 0, buffer, 0, preInsertBuffer.length);
-		System.arraycopy(sourceBuffer, sourceOffset, buffer, preInsertBuffer.length, sourceLength);
-		System.arraycopy(postInsertBuffer, 0, buffer, (preInsertBuffer.length + sourceLength), postInsertBuffer.length);
+		int oldLength = length;
+		ensureCapacity(oldLength + sourceLength);
+		length = oldLength + sourceLength;
+		move(offset, offset + sourceLength, oldLength - offset);
+		putRange(offset, source);
 
 		return sourceLength;
 	}
@@ -260,7 +383,7 @@ public class BufferProxy extends KrollProxy
 		}
 
 		BufferProxy sourceBufferProxy = (BufferProxy) args[0];
-		byte[] sourceBuffer = sourceBufferProxy.getBuffer();
+		int srcLength = sourceBufferProxy.getLength();
 
 		int offset = 0;
 		if (args.length > 1 && args[1] != null) {
@@ -272,14 +395,24 @@ public class BufferProxy extends KrollProxy
 			sourceOffset = TiConvert.toInt(args[2]);
 		}
 
-		int sourceLength = sourceBuffer.length;
+		int sourceLength = srcLength;
 		if (args.length > 3 && args[3] != null) {
 			sourceLength = TiConvert.toInt(args[3]);
 		}
 
-		validateOffsetAndLength(sourceOffset, sourceLength, sourceBuffer.length);
+		validateOffsetAndLength(sourceOffset, sourceLength, srcLength);
+		if (offset < 0 || offset + sourceLength > length) {
+			throw new IndexOutOfBoundsException("offset of " + offset + " and length of " + sourceLength + " is larger than the buffer length: " + length);
+		}
+
+		ByteBuffer source = sourceBufferProxy.getRange(sourceOffset, sourceLength);
+		if (sourceBufferProxy.buffer == buffer) {
+			byte[] copy = new byte[sourceLength];
+			source.get(copy);
+			source = ByteBuffer.wrap(copy);
+		}
+		putRange(offset, source);
 
-		System.arraycopy(sourceBuffer, sourceOffset, buffer, offset, sourceLength);
 		return sourceLength;
 	}
 
@@ -291,14 +424,46 @@ public class BufferProxy extends KrollProxy
 			offset = TiConvert.toInt(args[0]);
 		}
 
-		int length = buffer.length;
+		int length = this.length;
 		if (args.length > 1 && args[1] != null) {
 			length = TiConvert.toInt(args[1]);
 		}
 
-		validateOffsetAndLength(offset, length, buffer.length);
+		validateOffsetAndLength(offset, length, this.length);
+
+		byte[] copy = new byte[length];
+		getRange(offset, length).get(copy);
+		return new BufferProxy(copy);
+	}
+
+	/**
+	 * Creates a buffer that shares storage with this one, covering the bytes
+	 * from start up to (but not including) end.
+	 */
+	@Kroll.method
+	public BufferProxy slice(Object[] args)
+	{
+		int start = 0;
+		if (args.length > 0 && args[0] != null) {
+			start = TiConvert.toInt(args[0]);
+		}
+
+		int end = length;
+		if (args.length > 1 && args[1] != null) {
+			end = TiConvert.toInt(args[1]);
+		}
+
+		if (start < 0 || end < start || end > length) {
+			throw new IllegalArgumentException("slice of " + start + " to " + end + " is outside of the buffer length: " + length);
+		}
 
-		return new BufferProxy(copyOfRange(buffer, offset, offset+length));
+		shared = true;
+		BufferProxy slice = new BufferProxy(this, start, end - start);
+		Object byteOrder = getProperty(TiC.PROPERTY_BYTE_ORDER);
+		if (byteOrder != null) {
+			slice.setProperty(TiC.PROPERTY_BYTE_ORDER, byteOrder);
+		}
+		return slice;
 	}
 
 	@Kroll.method
@@ -314,38 +479,44 @@ public class BufferProxy extends KrollProxy
 			offset = TiConvert.toInt(args[1]);
 		}
 
-		int length = buffer.length;
+		int length = this.length;
 		if (args.length > 2 && args[2] != null) {
 			length = TiConvert.toInt(args[2]);
 		}
 
-		validateOffsetAndLength(offset, length, buffer.length);
+		validateOffsetAndLength(offset, length, this.length);
 
-		Arrays.fill(buffer, offset, (offset + length), (byte)fillByte);
+		fillRange(offset, length, (byte)fillByte);
 	}
 
 	@Kroll.method
 	public void clear()
 	{
-		Arrays.fill(buffer, (byte)0);
+		fillRange(0, length, (byte)0);
 	}
 
 	@Kroll.method
 	public void release()
 	{
-		buffer = new byte[0];
+		buffer = allocate(0);
+		offset = 0;
+		length = 0;
+		shared = false;
 	}
 
 	@Kroll.method
 	public String toString()
 	{
-		return new String(buffer);
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + offset, length);
+		}
+		return new String(getBuffer());
 	}
 
 	@Kroll.method
 	public TiBlob toBlob()
 	{
-		return TiBlob.blobFromData(buffer);
+		return TiBlob.blobFromData(getBuffer());
 	}
 
 	/**
@@ -355,7 +526,7 @@ public class BufferProxy extends KrollProxy
 	@Kroll.getProperty @Kroll.method
 	public int getLength()
 	{
-		return buffer.length;
+		return length;
 	}
 
 	/**
@@ -370,9 +541,99 @@ public class BufferProxy extends KrollProxy
 		resize(length);
 	}
 
+	/**
+	 * Grows or shrinks this buffer. Shrinking keeps the storage so the buffer can grow
+	 * back without reallocating, bytes exposed by growing are always zero.
+	 * @param length The new length of this buffer proxy in bytes
+	 * @module.api
+	 */
 	public void resize(int length)
 	{
-		buffer = copyOf(buffer, length);
+		if (length < 0) {
+			throw new IllegalArgumentException("Invalid buffer length: " + length);
+		}
+
+		int oldLength = this.length;
+		ensureCapacity(length);
+		this.length = length;
+		if (length > oldLength) {
+			fillRange(oldLength, length - oldLength, (byte)0);
+		}
+	}
+
+	private ByteBuffer allocate(int capacity)
+	{
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	private void ensureCapacity(int minLength)
+	{
+		// Bytes past the length of shared storage may belong to another proxy
+		if (minLength <= getCapacity()) {
+			return;
+		}
+
+		int capacity = Math.max(minLength, length + Math.max(length >> 1, MIN_GROWTH));
+		ByteBuffer newBuffer = allocate(capacity);
+		ByteBuffer contents = getByteBuffer();
+		newBuffer.put(contents);
+		newBuffer.clear();
+
+		buffer = newBuffer;
+		offset = 0;
+		shared = false;
 	}
-}
 
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + " is outside of the buffer length: " + length);
+		}
+	}
+
+	private ByteBuffer getRange(int start, int count)
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.limit(offset + start + count);
+		view.position(offset + start);
+		return view;
+	}
+
+	private void putRange(int position, ByteBuffer source)
+	{
+		ByteBuffer dest = buffer.duplicate();
+		dest.position(offset + position);
+		dest.put(source);
+	}
+
+	private void move(int from, int to, int count)
+	{
+		if (count <= 0) {
+			return;
+		}
+
+		if (buffer.hasArray()) {
+			byte[] array = buffer.array();
+			int base = buffer.arrayOffset() + offset;
+			System.arraycopy(array, base + from, array, base + to, count);
+
+		} else {
+			byte[] temp = new byte[count];
+			getRange(from, count).get(temp);
+			putRange(to, ByteBuffer.wrap(temp));
+		}
+	}
+
+	private void fillRange(int start, int count, byte value)
+	{
+		if (buffer.hasArray()) {
+			int base = buffer.arrayOffset() + offset + start;
+			Arrays.fill(buffer.array(), base, base + count, value);
+
+		} else {
+			for (int i = offset + start, end = offset + start + count; i < end; i++) {
+				buffer.put(i, value);
+			}
+		}
+	}
+}
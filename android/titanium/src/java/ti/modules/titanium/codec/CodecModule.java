@@ -7,6 +7,7 @@
 package ti.modules.titanium.codec;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import org.appcelerator.kroll.KrollDict;
@@ -64,42 +65,42 @@ public class CodecModule extends KrollModule
 			position = TiConvert.toInt(args, TiC.PROPERTY_POSITION);
 		}
 
-		byte buffer[] = dest.getBuffer();
-		return encodeNumber(src, type, buffer, position, byteOrder);
+		return encodeNumber(src, type, dest.getByteBuffer(), position, byteOrder);
 	}
 
 	public static int encodeNumber(Number src, String type, byte dest[], int position, int byteOrder)
 	{
+		return encodeNumber(src, type, ByteBuffer.wrap(dest), position, byteOrder);
+	}
+
+	/**
+	 * Encodes src directly into dest at the given absolute position.
+	 * The position and limit of dest are left untouched.
+	 * @return the position following the encoded value.
+	 */
+	public static int encodeNumber(Number src, String type, ByteBuffer dest, int position, int byteOrder)
+	{
+		// Integral types truncate the long value so unsigned values that don't
+		// fit the signed Java type still encode to the expected bits.
 		long l = src.longValue();
+		dest.order(toByteOrder(byteOrder));
 		if (type.equals(TYPE_BYTE)) {
-			dest[position] = (byte)(l & 0xFF);
+			dest.put(position, (byte) l);
 			return position+1;
 		} else if (type.equals(TYPE_SHORT)) {
-			int bits = byteOrder == BIG_ENDIAN ? 8 : 0;
-			int step = byteOrder == BIG_ENDIAN ? -8 : 8;
-			for (int i = position; i < position+2; i++, bits += step) {
-				dest[i] = (byte)((l >>> bits) & 0xFF);
-			}
+			dest.putShort(position, (short) l);
 			return position+2;
-		} else if (type.equals(TYPE_INT) || type.equals(TYPE_FLOAT)) {
-			if (type.equals(TYPE_FLOAT)) {
-				l = Float.floatToIntBits(src.floatValue());
-			}
-			int bits = byteOrder == BIG_ENDIAN ? 24 : 0;
-			int step = byteOrder == BIG_ENDIAN ? -8 : 8;
-			for (int j = position; j < position+4; j++, bits += step) {
-				dest[j] = (byte)((l >>> bits) & 0xFF);
-			}
+		} else if (type.equals(TYPE_INT)) {
+			dest.putInt(position, (int) l);
 			return position+4;
-		} else if (type.equals(TYPE_LONG) || type.equals(TYPE_DOUBLE)) {
-			if (type.equals(TYPE_DOUBLE)) {
-				l = Double.doubleToLongBits(src.doubleValue());
-			}
-			int bits = byteOrder == BIG_ENDIAN ? 56 : 0;
-			int step = byteOrder == BIG_ENDIAN ? -8 : 8;
-			for (int i = position; i < position+8; i++, bits += step) {
-				dest[i] = (byte)((l >>> bits) & 0xFF);
-			}
+		} else if (type.equals(TYPE_FLOAT)) {
+			dest.putFloat(position, src.floatValue());
+			return position+4;
+		} else if (type.equals(TYPE_LONG)) {
+			dest.putLong(position, l);
+			return position+8;
+		} else if (type.equals(TYPE_DOUBLE)) {
+			dest.putDouble(position, src.doubleValue());
 			return position+8;
 		}
 		return position;
@@ -124,43 +125,21 @@ public class CodecModule extends KrollModule
 			position = TiConvert.toInt(args, TiC.PROPERTY_POSITION);
 		}
 
-		byte src[] = buffer.getBuffer();
+		ByteBuffer src = buffer.getByteBuffer();
+		src.order(toByteOrder(byteOrder));
 		if (type.equals(TYPE_BYTE)) {
-			return src[position];
-		}
-		else if (type.equals(TYPE_SHORT)) {
-			short s1 = (short) (src[position] & 0xFF);
-			short s2 = (short) (src[position + 1] & 0xFF);
-			switch (byteOrder) {
-				case BIG_ENDIAN:
-					return ((s1 << 8) + s2);
-				case LITTLE_ENDIAN:
-					return ((s2 << 8) + s1);
-			}
-		} else if (type.equals(TYPE_INT) || type.equals(TYPE_FLOAT)) {
-			int bits = 0;
-			int shiftBits = byteOrder == BIG_ENDIAN ? 24 : 0;
-			int step = byteOrder == BIG_ENDIAN ? -8 : 8;
-			for (int i = 0; i < 4; i++, shiftBits += step) {
-				int part = (int) (src[position + i] & 0xFF);
-				bits += (part << shiftBits);
-			}
-			if (type.equals(TYPE_FLOAT)) {
-				return Float.intBitsToFloat(bits);
-			}
-			return bits;
-		} else if (type.equals(TYPE_LONG) || type.equals(TYPE_DOUBLE)) {
-			long bits = 0;
-			int shiftBits = byteOrder == BIG_ENDIAN ? 56 : 0;
-			int step = byteOrder == BIG_ENDIAN ? -8 : 8;
-			for (int i = 0; i < 8; i++, shiftBits += step) {
-				long part = (long) (src[position + i] & 0xFF);
-				bits += (part << shiftBits);
-			}
-			if (type.equals(TYPE_DOUBLE)) {
-				return Double.longBitsToDouble(bits);
-			}
-			return bits;
+			return src.get(position);
+		} else if (type.equals(TYPE_SHORT)) {
+			// shorts have always been decoded as unsigned values
+			return src.getShort(position) & 0xFFFF;
+		} else if (type.equals(TYPE_INT)) {
+			return src.getInt(position);
+		} else if (type.equals(TYPE_FLOAT)) {
+			return src.getFloat(position);
+		} else if (type.equals(TYPE_LONG)) {
+			return src.getLong(position);
+		} else if (type.equals(TYPE_DOUBLE)) {
+			return src.getDouble(position);
 		}
 		return 0;
 	}
@@ -192,7 +171,7 @@ public class CodecModule extends KrollModule
 		}
 
 		String charset = validateCharset(args);
-		byte destBuffer[] = dest.getBuffer();
+		ByteBuffer destBuffer = dest.getByteBuffer();
 		validatePositionAndLength(srcPosition, srcLength, src.length());
 
 		if (srcPosition != 0 || srcLength != src.length()) {
@@ -201,7 +180,8 @@ public class CodecModule extends KrollModule
 
 		try {
 			byte encoded[] = src.getBytes(charset);
-			System.arraycopy(encoded, 0, destBuffer, destPosition, encoded.length);
+			destBuffer.position(destPosition);
+			destBuffer.put(encoded);
 
 			return destPosition + encoded.length;
 		} catch (UnsupportedEncodingException e) {
@@ -218,22 +198,28 @@ public class CodecModule extends KrollModule
 		}
 
 		BufferProxy src = (BufferProxy) args.get(TiC.PROPERTY_SOURCE);
-		byte buffer[] = src.getBuffer();
+		ByteBuffer buffer = src.getByteBuffer();
 
 		int position = 0;
 		if (args.containsKey(TiC.PROPERTY_POSITION)) {
 			position = TiConvert.toInt(args, TiC.PROPERTY_POSITION);
 		}
-		int length = buffer.length;
+		int length = buffer.limit();
 		if (args.containsKey(TiC.PROPERTY_LENGTH)) {
 			length = TiConvert.toInt(args, TiC.PROPERTY_LENGTH);
 		}
 
-		validatePositionAndLength(position, length, buffer.length);
+		validatePositionAndLength(position, length, buffer.limit());
 		String charset = validateCharset(args);
 
 		try {
-			return new String(buffer, position, length, charset);
+			if (buffer.hasArray()) {
+				return new String(buffer.array(), buffer.arrayOffset() + position, length, charset);
+			}
+			byte bytes[] = new byte[length];
+			buffer.position(position);
+			buffer.get(bytes);
+			return new String(bytes, charset);
 		} catch (UnsupportedEncodingException e) {
 			Log.w(TAG, e.getMessage(), e);
 			throw new IllegalArgumentException("Unsupported Encoding: " + charset);
@@ -279,6 +265,11 @@ public class CodecModule extends KrollModule
 		}
 	}
 
+	public static ByteOrder toByteOrder(int byteOrder)
+	{
+		return byteOrder == BIG_ENDIAN ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+	}
+
 	public static String getCharset(String charset)
 	{
 		// These are taken from http://download.oracle.com/javase/1.4.2/docs/api/java/nio/charset/Charset.html
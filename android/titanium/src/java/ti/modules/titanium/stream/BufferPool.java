@@ -0,0 +1,66 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+
+package ti.modules.titanium.stream;
+
+import java.util.ArrayList;
+
+import ti.modules.titanium.BufferProxy;
+
+/**
+ * A small pool of equally sized {@link BufferProxy} chunks used by pump.
+ * Buffers that were shrunk after a short read keep their storage, so they
+ * are grown back to the chunk size and reused without reallocating.
+ */
+class BufferPool
+{
+	private static final int MAX_POOLED_BUFFERS = 8;
+
+	private final int chunkSize;
+	private final ArrayList<BufferProxy> buffers = new ArrayList<BufferProxy>(MAX_POOLED_BUFFERS);
+	private int allocated = 0;
+	private int reused = 0;
+
+	BufferPool(int chunkSize)
+	{
+		this.chunkSize = chunkSize;
+	}
+
+	synchronized BufferProxy acquire()
+	{
+		int size = buffers.size();
+		if (size > 0) {
+			reused++;
+			return buffers.remove(size - 1);
+		}
+
+		allocated++;
+		return new BufferProxy(chunkSize);
+	}
+
+	synchronized void release(BufferProxy buffer)
+	{
+		// A slice the application made would see the next chunk's data
+		if (buffer.isShared() || buffer.getCapacity() < chunkSize || buffers.size() >= MAX_POOLED_BUFFERS) {
+			return;
+		}
+		if (buffer.getLength() != chunkSize) {
+			buffer.resize(chunkSize);
+		}
+		buffers.add(buffer);
+	}
+
+	synchronized int getAllocatedCount()
+	{
+		return allocated;
+	}
+
+	synchronized int getReusedCount()
+	{
+		return reused;
+	}
+}
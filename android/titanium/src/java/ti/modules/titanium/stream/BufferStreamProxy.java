@@ -7,15 +7,13 @@
 
 package ti.modules.titanium.stream;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.kroll.annotations.Kroll;
-import org.appcelerator.kroll.common.Log;
 import org.appcelerator.kroll.common.TiConfig;
 import org.appcelerator.titanium.io.TiStream;
-import org.appcelerator.titanium.util.TiStreamHelper;
 
 import ti.modules.titanium.BufferProxy;
 
@@ -105,22 +103,28 @@ public class BufferStreamProxy extends KrollProxy implements TiStream
 			throw new IllegalArgumentException("Invalid number of arguments");
 		}
 
-		ByteArrayInputStream bufferInputStream = new ByteArrayInputStream(buffer.getBuffer(), position, (buffer.getLength() - position));
-		int bytesRead;
-
-		try {
-			bytesRead = TiStreamHelper.read(bufferInputStream, bufferProxy, offset, length);
+		// Copy straight between the buffers' storage rather than through a trimmed copy of it.
+		ByteBuffer source = buffer.getByteBuffer();
+		if (position >= source.limit()) {
+			return -1;
+		}
 
-			if (bytesRead > -1) {
-				position += bytesRead;
-			}
+		ByteBuffer dest = bufferProxy.getByteBuffer();
+		if ((offset + length) > dest.limit()) {
+			length = dest.limit() - offset;
+		}
+		int bytesRead = Math.min(length, source.limit() - position);
+		if (bytesRead <= 0) {
+			return 0;
+		}
 
-			return bytesRead;
+		source.limit(position + bytesRead);
+		source.position(position);
+		dest.position(offset);
+		dest.put(source);
+		position += bytesRead;
 
-		} catch (IOException e) {
-			Log.e(LCAT, "Unable to read from buffer stream, IO error", e);
-			throw new IOException("Unable to read from buffer stream, IO error");
-		}
+		return bytesRead;
 	}
 
 	@Kroll.method
@@ -175,7 +179,10 @@ public class BufferStreamProxy extends KrollProxy implements TiStream
 			throw new IllegalArgumentException("Invalid number of arguments");
 		}
 
-		int bytesWritten = buffer.write(position, bufferProxy.getBuffer(), offset, length);
+		ByteBuffer source = bufferProxy.getByteBuffer();
+		source.limit(offset + length);
+		source.position(offset);
+		int bytesWritten = buffer.write(position, source);
 		position += bytesWritten;
 
 		return bytesWritten;
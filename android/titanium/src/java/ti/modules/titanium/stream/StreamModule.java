@@ -8,12 +8,23 @@
 package ti.modules.titanium.stream;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollFunction;
 import org.appcelerator.kroll.KrollModule;
 import org.appcelerator.kroll.annotations.Kroll;
+import org.appcelerator.kroll.common.Log;
 import org.appcelerator.kroll.common.TiConfig;
+import org.appcelerator.titanium.TiApplication;
 import org.appcelerator.titanium.TiBlob;
 import org.appcelerator.titanium.io.TiStream;
 
@@ -30,6 +41,133 @@ public class StreamModule extends KrollModule
 	private static final String LCAT = "StreamModule";
 	private static final boolean DBG = TiConfig.LOGD;
 
+	private static final String PROPERTY_RECYCLE_PUMP_BUFFERS = "ti.android.stream.recyclepumpbuffers";
+
+	private static final int EXECUTOR_CORE_THREADS = 2;
+	private static final int EXECUTOR_MAX_THREADS = 16;
+	private static final int EXECUTOR_KEEP_ALIVE = 60;
+
+	// Pump chunk pools shared by every pump, keyed by chunk size, most recently used last
+	private static final int MAX_PUMP_POOLS = 4;
+
+	private static ThreadPoolExecutor executor;
+	private static final Map<Integer, BufferPool> pumpPools = new LinkedHashMap<Integer, BufferPool>(MAX_PUMP_POOLS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, BufferPool> eldest)
+		{
+			return size() > MAX_PUMP_POOLS;
+		}
+	};
+	private static final Map<TiStream, StreamStats> streamStats = new WeakHashMap<TiStream, StreamStats>();
+
+	/**
+	 * Throughput counters for a single stream. Updated from the stream worker
+	 * threads and read from the JS thread, so all access is synchronized on
+	 * the {@link #streamStats} map.
+	 */
+	private static class StreamStats
+	{
+		long bytesRead;
+		long bytesWritten;
+		long firstActivity;
+		long lastActivity;
+
+		void update(int read, int written)
+		{
+			long now = System.currentTimeMillis();
+			if (firstActivity == 0) {
+				firstActivity = now;
+			}
+			lastActivity = now;
+			if (read > 0) {
+				bytesRead += read;
+			}
+			if (written > 0) {
+				bytesWritten += written;
+			}
+		}
+	}
+
+	private static class StreamThreadFactory implements ThreadFactory
+	{
+		private AtomicInteger counter = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			return new Thread(runnable, "TiStream-" + counter.incrementAndGet());
+		}
+	}
+
+	/*
+	 * Stream operations usually block on I/O (e.g. pumping a socket until it
+	 * closes), so work is handed directly to an idle thread rather than queued
+	 * behind a long running operation. Once the pool is saturated we fall back
+	 * to a dedicated thread, which is the behavior prior to the pool.
+	 */
+	private static synchronized ThreadPoolExecutor getExecutor()
+	{
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(EXECUTOR_CORE_THREADS, EXECUTOR_MAX_THREADS, EXECUTOR_KEEP_ALIVE,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new StreamThreadFactory(),
+				new RejectedExecutionHandler() {
+					public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor)
+					{
+						Log.w(LCAT, "Stream thread pool is saturated, running operation on a dedicated thread");
+						new Thread(runnable, "TiStream-overflow").start();
+					}
+				});
+		}
+		return executor;
+	}
+
+	private static void execute(Runnable runnable)
+	{
+		getExecutor().execute(runnable);
+	}
+
+	private static void recordThroughput(TiStream stream, int bytesRead, int bytesWritten)
+	{
+		if (bytesRead <= 0 && bytesWritten <= 0) {
+			return;
+		}
+
+		synchronized (streamStats) {
+			StreamStats stats = streamStats.get(stream);
+			if (stats == null) {
+				stats = new StreamStats();
+				streamStats.put(stream, stats);
+			}
+			stats.update(bytesRead, bytesWritten);
+		}
+	}
+
+	private static boolean isRecyclingPumpBuffers()
+	{
+		TiApplication app = TiApplication.getInstance();
+		if (app == null) {
+			return false;
+		}
+		return app.getSystemProperties().getBool(PROPERTY_RECYCLE_PUMP_BUFFERS, false);
+	}
+
+	/*
+	 * Returns the pool of maxChunkSize chunks shared by all pumps, so pumps started one
+	 * after another (i.e. per socket message) reuse the chunks of earlier ones.
+	 */
+	private static BufferPool getPumpPool(int maxChunkSize)
+	{
+		synchronized (pumpPools) {
+			BufferPool pool = pumpPools.get(maxChunkSize);
+			if (pool == null) {
+				pool = new BufferPool(maxChunkSize);
+				pumpPools.put(maxChunkSize, pool);
+			}
+			return pool;
+		}
+	}
+
 	@Kroll.method
 	public Object createStream(KrollDict params)
 	//public Object createStream(Object container)
@@ -125,7 +263,7 @@ public class StreamModule extends KrollModule
 		final int flength = length;
 		final KrollFunction fResultsCallback = resultsCallback;
 
-		new Thread(new Runnable() {
+		execute(new Runnable() {
 			public void run()
 			{
 				int bytesRead = -1;
@@ -134,7 +272,7 @@ public class StreamModule extends KrollModule
 
 				try {
 					bytesRead = fsourceStream.read(new Object[] {fbuffer, foffset, flength});
-
+					recordThroughput(fsourceStream, bytesRead, 0);
 
 				} catch (IOException e) {
 					e.printStackTrace();
@@ -144,7 +282,7 @@ public class StreamModule extends KrollModule
 
 				fResultsCallback.callAsync(getKrollObject(), buildRWCallbackArgs(fsourceStream, bytesRead, errorState, errorDescription));
 			}
-		}).start();
+		});
 	}
 
 	@Kroll.method
@@ -197,7 +335,7 @@ public class StreamModule extends KrollModule
 			final BufferProxy fbuffer = bufferArg;
 			final KrollFunction fResultsCallback = resultsCallback;
 
-			new Thread(new Runnable() {
+			execute(new Runnable() {
 				public void run()
 				{
 					int offset = 0;
@@ -218,7 +356,7 @@ public class StreamModule extends KrollModule
 
 					fResultsCallback.callAsync(getKrollObject(), buildRWCallbackArgs(fsourceStream, fbuffer.getLength(), errorState, errorDescription));
 				}
-			}).start();
+			});
 
 			return null; // TODO KrollProxy.UNDEFINED;
 		}
@@ -235,6 +373,7 @@ public class StreamModule extends KrollModule
 			}
 
 			totalBytesRead += bytesRead;
+			recordThroughput(sourceStream, bytesRead, 0);
 			buffer.resize(1024 + totalBytesRead);
 			offset += bytesRead;
 		}
@@ -310,7 +449,7 @@ public class StreamModule extends KrollModule
 		final int flength = length;
 		final KrollFunction fResultsCallback = resultsCallback;
 
-		new Thread(new Runnable() {
+		execute(new Runnable() {
 			public void run()
 			{
 				int bytesWritten = -1;
@@ -319,6 +458,7 @@ public class StreamModule extends KrollModule
 
 				try {
 					bytesWritten = foutputStream.write(new Object[] {fbuffer, foffset, flength});
+					recordThroughput(foutputStream, 0, bytesWritten);
 
 				} catch (IOException e) {
 					e.printStackTrace();
@@ -328,7 +468,7 @@ public class StreamModule extends KrollModule
 
 				fResultsCallback.callAsync(getKrollObject(), buildRWCallbackArgs(foutputStream, bytesWritten, errorState, errorDescription));
 			}
-		}).start();
+		});
 	}
 
 	@Kroll.method
@@ -385,7 +525,7 @@ public class StreamModule extends KrollModule
 			final int fmaxChunkSize = maxChunkSize;
 			final KrollFunction fResultsCallback = resultsCallback;
 
-			new Thread(new Runnable() {
+			execute(new Runnable() {
 				public void run()
 				{
 					int totalBytesWritten = 0;
@@ -402,7 +542,7 @@ public class StreamModule extends KrollModule
 
 					fResultsCallback.callAsync(getKrollObject(), buildWriteStreamCallbackArgs(finputStream, foutputStream, totalBytesWritten, errorState, errorDescription));
 				}
-			}).start();
+			});
 
 			return 0;
 		}
@@ -421,6 +561,8 @@ public class StreamModule extends KrollModule
 
 			int bytesWritten = outputStream.write(new Object[] {buffer, 0, bytesRead});
 			totalBytesWritten += bytesWritten;
+			recordThroughput(inputStream, bytesRead, 0);
+			recordThroughput(outputStream, 0, bytesWritten);
 			buffer.clear();
 		}
 
@@ -478,15 +620,12 @@ public class StreamModule extends KrollModule
 			final KrollFunction fHandler = handler;
 			final int fmaxChunkSize = maxChunkSize;
 
-			new Thread(
-					new Runnable()
-					{
-						public void run()
-						{
-							pump(finputStream, fHandler, fmaxChunkSize);
-						}
-					}
-				) {}.start();
+			execute(new Runnable() {
+				public void run()
+				{
+					pump(finputStream, fHandler, fmaxChunkSize);
+				}
+			});
 
 		} else {
 			pump(inputStream, handler, maxChunkSize);
@@ -499,12 +638,17 @@ public class StreamModule extends KrollModule
 		int errorState = 0;
 		String errorDescription = "";
 
+		// Chunks are only handed back to the shared pool when the application has
+		// promised not to hold on to the buffer passed to its handler.
+		BufferPool pool = isRecyclingPumpBuffers() ? getPumpPool(maxChunkSize) : null;
+
 		try {
 			while (true) {
-				BufferProxy buffer = new BufferProxy(maxChunkSize);
+				BufferProxy buffer = pool != null ? pool.acquire() : new BufferProxy(maxChunkSize);
 				int bytesRead = inputStream.read(new Object[] {buffer, 0, maxChunkSize});
 				if (bytesRead != -1) {
 					totalBytesRead += bytesRead;
+					recordThroughput(inputStream, bytesRead, 0);
 				}
 
 				if (bytesRead != buffer.getLength()) {
@@ -517,6 +661,9 @@ public class StreamModule extends KrollModule
 				}
 
 				handler.call(getKrollObject(), buildPumpCallbackArgs(inputStream, buffer, bytesRead, totalBytesRead, errorState, errorDescription));
+				if (pool != null) {
+					pool.release(buffer);
+				}
 				buffer = null;
 
 				if (bytesRead == -1) {
@@ -529,6 +676,35 @@ public class StreamModule extends KrollModule
 			errorDescription = e.getMessage();
 			handler.call(getKrollObject(), buildPumpCallbackArgs(inputStream, new BufferProxy(), 0, totalBytesRead, errorState, errorDescription));
 		}
+
+		if (DBG && pool != null) {
+			Log.d(LCAT, "Pump finished, " + maxChunkSize + " byte chunk pool has allocated " + pool.getAllocatedCount()
+				+ " buffers, reused " + pool.getReusedCount());
+		}
+	}
+
+	@Kroll.method
+	public KrollDict getStreamStats(TiStream stream)
+	{
+		KrollDict result = new KrollDict();
+		long bytesRead = 0;
+		long bytesWritten = 0;
+		long elapsed = 0;
+
+		synchronized (streamStats) {
+			StreamStats stats = streamStats.get(stream);
+			if (stats != null) {
+				bytesRead = stats.bytesRead;
+				bytesWritten = stats.bytesWritten;
+				elapsed = stats.lastActivity - stats.firstActivity;
+			}
+		}
+
+		result.put("bytesRead", bytesRead);
+		result.put("bytesWritten", bytesWritten);
+		result.put("elapsed", elapsed);
+		result.put("bytesPerSecond", elapsed > 0 ? ((bytesRead + bytesWritten) * 1000) / elapsed : 0);
+		return result;
 	}
 
 	private KrollDict buildRWCallbackArgs(TiStream sourceStream, int bytesProcessed, int errorState, String errorDescription)
@@ -9,5 +9,47 @@ describe("Android Ti.Database tests", {
 
 		valueOf(rs.getFieldByName("longdata")).shouldBe(longData);
 		valueOf(rs.getFieldByName("doubledata")).shouldBe(doubleData);
-	}
+	},
+
+	// ti.android.database.wal is on for this suite, so the writer and readers use
+	// separate connections
+	executeAsyncReportsChangesWithWal: asyncTest({
+		start: function(callback) {
+			var db = Ti.Database.open("test_executeAsyncWal");
+			db.execute("drop table if exists people");
+			db.execute("create table people (id integer primary key, name text)");
+			db.execute("insert into people (name) values (?)", "first");
+
+			db.executeAsync("insert into people (name) values (?)", ["second"], function(e) {
+				try {
+					valueOf(e.success).shouldBeTrue();
+					valueOf(e.rowsAffected).shouldBe(1);
+					valueOf(e.lastInsertRowId).shouldBe(2);
+
+					db.executeAsync("update people set name = ?", ["everyone"], function(e) {
+						try {
+							valueOf(e.success).shouldBeTrue();
+							valueOf(e.rowsAffected).shouldBe(2);
+							valueOf(db.rowsAffected).shouldBe(2);
+							valueOf(db.lastInsertRowId).shouldBe(2);
+
+							db.execute("insert into people (name) values (?)", "third");
+							valueOf(db.rowsAffected).shouldBe(1);
+							valueOf(db.lastInsertRowId).shouldBe(3);
+
+							db.close();
+							db.remove();
+							callback.passed();
+						} catch (err) {
+							callback.failed(err);
+						}
+					});
+				} catch (err) {
+					callback.failed(err);
+				}
+			});
+		},
+		timeout: 10000,
+		timeoutError: "Timed out waiting for executeAsync"
+	})
 });
\ No newline at end of file
@@ -326,6 +326,43 @@ describe("Ti.Buffer tests", {
 		valueOf(buffer[3]).shouldBe(0x12);
 	},
 
+	testSliceGrowth: function() {
+		var buffer = Ti.createBuffer({ length: 8 });
+		for (var i = 0; i < 8; i++) {
+			buffer[i] = i + 1;
+		}
+
+		var slice = buffer.slice(0, 4);
+		valueOf(slice.length).shouldBe(4);
+		slice[0] = 100;
+		valueOf(buffer[0]).shouldBe(100);
+
+		// Growing the slice must not write into the rest of its parent
+		var extra = Ti.createBuffer({ length: 2 });
+		extra[0] = 50;
+		extra[1] = 51;
+		slice.append(extra);
+		valueOf(slice.length).shouldBe(6);
+		valueOf(slice[4]).shouldBe(50);
+		valueOf(slice[5]).shouldBe(51);
+		valueOf(buffer[4]).shouldBe(5);
+		valueOf(buffer[5]).shouldBe(6);
+
+		slice.length = 8;
+		valueOf(slice[7]).shouldBe(0);
+		for (var i = 1; i < 8; i++) {
+			valueOf(buffer[i]).shouldBe(i + 1);
+		}
+
+		// Nor may the parent zero bytes a slice still views when it shrinks and grows
+		var tail = buffer.slice(4, 8);
+		buffer.length = 4;
+		buffer.length = 8;
+		valueOf(buffer[4]).shouldBe(0);
+		valueOf(tail[0]).shouldBe(5);
+		valueOf(tail[3]).shouldBe(8);
+	},
+
 	options: {
 		forceBuild: true
 	}
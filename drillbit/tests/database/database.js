@@ -382,5 +382,64 @@ describe("Ti.Database tests", {
 				db.remove();
 				}
 			}
+	},
+	// Compares fetchAll with reading the same rows through next/isValidRow/field,
+	// and logs the time each takes.
+	testResultSetFetchRows: function() {
+		var db = Ti.Database.open('Test');
+		try {
+			db.execute('DROP TABLE IF EXISTS fetchtest');
+			db.execute('CREATE TABLE fetchtest (id INTEGER, name TEXT, price REAL, note TEXT)');
+
+			var batch = [];
+			for (var i = 0; i < 2000; i++) {
+				batch.push([i, 'item ' + i, i + 0.5, i % 10 == 0 ? null : 'note']);
+			}
+			var affected = db.executeBatch('INSERT INTO fetchtest VALUES (?, ?, ?, ?)', batch);
+			valueOf(affected.length).shouldBe(2000);
+			valueOf(affected[0]).shouldBe(1);
+
+			var start = new Date().getTime();
+			var rs = db.execute('SELECT * FROM fetchtest ORDER BY id');
+			var fieldRows = [];
+			while (rs.isValidRow()) {
+				var row = [];
+				for (var c = 0; c < rs.fieldCount; c++) {
+					row.push(rs.field(c));
+				}
+				fieldRows.push(row);
+				rs.next();
+			}
+			rs.close();
+			var fieldTime = new Date().getTime() - start;
+
+			start = new Date().getTime();
+			rs = db.execute('SELECT * FROM fetchtest ORDER BY id');
+			var fetchedRows = rs.fetchAll();
+			valueOf(rs.isValidRow()).shouldBeFalse();
+			rs.close();
+			var fetchTime = new Date().getTime() - start;
+
+			Ti.API.info('Read ' + fieldRows.length + ' rows in ' + fieldTime + 'ms with field(), ' + fetchTime + 'ms with fetchAll()');
+
+			valueOf(fetchedRows.length).shouldBe(fieldRows.length);
+			for (var r = 0; r < fieldRows.length; r++) {
+				for (var c = 0; c < 4; c++) {
+					valueOf(fetchedRows[r][c]).shouldBe(fieldRows[r][c]);
+				}
+			}
+
+			rs = db.execute('SELECT id FROM fetchtest ORDER BY id');
+			var first = rs.fetchRows(3);
+			valueOf(first.length).shouldBe(3);
+			valueOf(first[2][0]).shouldBe(2);
+			valueOf(rs.field(0)).shouldBe(3);
+			valueOf(rs.fetchAll().length).shouldBe(1997);
+			valueOf(rs.fetchRows(5).length).shouldBe(0);
+			rs.close();
+		} finally {
+			db.close();
+			db.remove();
+		}
 	}
-});
\ No newline at end of file
+});
@@ -114,5 +114,83 @@ describe("Ti.Network.Socket.TCP tests", {
 		},
 		timeout: 10000,
 		timeoutError: "Timed out waiting for socket I/O"
+	}),
+
+	// Non-blocking sockets share one selector thread, which must outlive a handler
+	// that throws, here accepting with an invalid timeout option
+	testNonBlockingSurvivesFailedAccept: asyncTest({
+		start: function(callback) {
+			var failingListener = Ti.Network.Socket.createTCP({
+				host:'localhost',
+				port:40406,
+				nonBlocking:true
+			});
+			var failingConnector = Ti.Network.Socket.createTCP({
+				host:'localhost',
+				port:40406,
+				nonBlocking:true
+			});
+			var listener = Ti.Network.Socket.createTCP({
+				host:'localhost',
+				port:40407,
+				nonBlocking:true
+			});
+			var connector = Ti.Network.Socket.createTCP({
+				host:'localhost',
+				port:40407,
+				nonBlocking:true
+			});
+
+			var acceptPassed = false;
+			var connectPassed = false;
+			function finish() {
+				if (acceptPassed && connectPassed) {
+					failingListener.close();
+					failingConnector.close();
+					listener.close();
+					connector.close();
+					callback.passed();
+				}
+			}
+
+			listener.accepted = function(e) {
+				try {
+					valueOf(e.inbound.state).shouldBe(Ti.Network.Socket.CONNECTED);
+					e.inbound.close();
+					acceptPassed = true;
+					finish();
+				} catch (err) {
+					callback.failed(err);
+				}
+			};
+			connector.connected = function(e) {
+				try {
+					valueOf(e.socket.state).shouldBe(Ti.Network.Socket.CONNECTED);
+					connectPassed = true;
+					finish();
+				} catch (err) {
+					callback.failed(err);
+				}
+			};
+
+			failingConnector.connected = function(e) {
+				// Give the selector time to run the failing accept first
+				setTimeout(function() {
+					try {
+						listener.listen();
+						listener.accept({});
+						connector.connect();
+					} catch (err) {
+						callback.failed(err);
+					}
+				}, 500);
+			};
+
+			valueOf(function() { failingListener.listen(); }).shouldNotThrowException();
+			valueOf(function() { failingListener.accept({ timeout:"not a number" }); }).shouldNotThrowException();
+			valueOf(function() { failingConnector.connect(); }).shouldNotThrowException();
+		},
+		timeout: 10000,
+		timeoutError: "Timed out waiting for sockets to connect after a failed accept"
 	})
 });